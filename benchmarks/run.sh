@@ -0,0 +1,18 @@
+#!/bin/bash
+
+# Builds the solver and the JMH benchmarks, then runs them with the GC
+# profiler and writes the results as JSON to benchmarks/results.
+# Extra arguments are passed to JMH, e.g. a benchmark name pattern:
+#   benchmarks/run.sh BoardStateBenchmark
+set -e
+cd "$(dirname "$0")/.."
+
+echo "Building solver..."
+mvn -B -q install
+echo "Building benchmarks..."
+mvn -B -q -f benchmarks/pom.xml package
+
+mkdir -p benchmarks/results
+RESULT="benchmarks/results/jmh-$(date +%Y%m%d-%H%M%S).json"
+java -jar benchmarks/target/benchmarks.jar -prof gc -rf json -rff "$RESULT" "$@"
+echo "Results written to $RESULT"
@@ -0,0 +1,90 @@
+package com.sokoban.benchmark;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sokoban.heuristic.DistanceKernels;
+import com.sokoban.heuristic.Heuristic;
+import com.sokoban.heuristic.ImprovedManhattanHeuristic;
+import com.sokoban.heuristic.ManhattanHeuristic;
+import com.sokoban.model.BoardState;
+
+/**
+ * Benchmarks the Manhattan heuristics scoring the children of an expansion
+ * as one batch, with scalar and vectorized distance kernels, on levels with
+ * more than ten boxes. Each operation scores the children of one state.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class BatchHeuristicBenchmark {
+    @Param({ "test/TestCase3_Complex.txt", "test/TestCase7_ManyBoxes.txt" })
+    public String level;
+
+    @Param({ "manhattan", "improvedManhattan" })
+    public String heuristic;
+
+    @Param({ "scalar", "vector" })
+    public String kernel;
+
+    private Heuristic scorer;
+    private List<List<BoardState>> batches;
+    private int next;
+
+    @Setup
+    public void setup() {
+        if (kernel.equals("vector") && !DistanceKernels.isVectorAvailable())
+            throw new IllegalStateException("The jdk.incubator.vector module is not enabled");
+        boolean vectorize = kernel.equals("vector");
+        scorer = heuristic.equals("manhattan") ? new ManhattanHeuristic(vectorize)
+                : new ImprovedManhattanHeuristic(vectorize);
+
+        batches = new ArrayList<List<BoardState>>();
+        for (BoardState state : Levels.sampleStates(Levels.load(level), 1024)) {
+            List<BoardState> children = new ArrayList<BoardState>(4);
+            for (Point direction : Levels.DIRECTIONS) {
+                if (state.canMove(direction))
+                    children.add(state.getMove(direction));
+            }
+            if (!children.isEmpty())
+                batches.add(children);
+        }
+    }
+
+    @Benchmark
+    public int scoreBatch() {
+        next = next + 1 < batches.size() ? next + 1 : 0;
+        List<BoardState> batch = batches.get(next);
+        scorer.scoreAll(batch);
+        return batch.get(0).getCost();
+    }
+
+    @Benchmark
+    public int scoreEach() {
+        next = next + 1 < batches.size() ? next + 1 : 0;
+        List<BoardState> batch = batches.get(next);
+        int cost = 0;
+        for (BoardState state : batch) {
+            scorer.score(state);
+            cost += state.getCost();
+        }
+        return cost;
+    }
+}
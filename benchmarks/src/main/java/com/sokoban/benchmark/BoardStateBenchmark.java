@@ -0,0 +1,93 @@
+package com.sokoban.benchmark;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sokoban.model.BoardState;
+
+/**
+ * Benchmarks move generation, hashing and equality of board states, cycling
+ * over states sampled from a level.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardStateBenchmark {
+    private static final int SAMPLES = 1024;
+
+    @Param({ "resources/Level3.txt", "test/TestCase3_Complex.txt" })
+    public String level;
+
+    private BoardState[] states;
+    // Equal to states, but distinct objects
+    private BoardState[] copies;
+    // Legal moves from the sampled states
+    private BoardState[] moveFrom;
+    private Point[] moveDirection;
+    private int next;
+
+    @Setup
+    public void setup() {
+        BoardState initial = Levels.load(level);
+        states = Levels.sampleStates(initial, SAMPLES).toArray(new BoardState[0]);
+        copies = Levels.sampleStates(initial, SAMPLES).toArray(new BoardState[0]);
+
+        List<BoardState> from = new ArrayList<BoardState>();
+        List<Point> directions = new ArrayList<Point>();
+        for (BoardState state : states) {
+            for (Point direction : Levels.DIRECTIONS) {
+                if (state.canMove(direction)) {
+                    from.add(state);
+                    directions.add(direction);
+                }
+            }
+        }
+        moveFrom = from.toArray(new BoardState[0]);
+        moveDirection = directions.toArray(new Point[0]);
+    }
+
+    private int next(int length) {
+        next = next + 1 < length ? next + 1 : 0;
+        return next;
+    }
+
+    @Benchmark
+    public boolean canMove() {
+        int i = next(states.length);
+        return states[i].canMove(Levels.DIRECTIONS[i & 3]);
+    }
+
+    @Benchmark
+    public BoardState getMove() {
+        int i = next(moveFrom.length);
+        return moveFrom[i].getMove(moveDirection[i]);
+    }
+
+    @Benchmark
+    public int hashCodeOf() {
+        return states[next(states.length)].hashCode();
+    }
+
+    @Benchmark
+    public boolean equalsCopy() {
+        int i = next(states.length);
+        return states[i].equals(copies[i]);
+    }
+}
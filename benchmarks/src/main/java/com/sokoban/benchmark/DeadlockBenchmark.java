@@ -0,0 +1,60 @@
+package com.sokoban.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sokoban.model.BoardState;
+import com.sokoban.util.DeadlockDetector;
+import com.sokoban.util.LevelAnalysis;
+
+/**
+ * Benchmarks deadlock detection, with and without the precomputed dead
+ * squares of the level analysis.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeadlockBenchmark {
+    @Param({ "resources/Level3.txt", "test/TestCase3_Complex.txt" })
+    public String level;
+
+    private BoardState[] states;
+    private LevelAnalysis analysis;
+    private int next;
+
+    @Setup
+    public void setup() {
+        BoardState initial = Levels.load(level);
+        states = Levels.sampleStates(initial, 1024).toArray(new BoardState[0]);
+        analysis = new LevelAnalysis(initial);
+    }
+
+    private BoardState nextState() {
+        next = next + 1 < states.length ? next + 1 : 0;
+        return states[next];
+    }
+
+    @Benchmark
+    public boolean hasDeadlock() {
+        return DeadlockDetector.hasDeadlock(nextState());
+    }
+
+    @Benchmark
+    public boolean hasDeadlockWithAnalysis() {
+        return DeadlockDetector.hasDeadlock(nextState(), analysis);
+    }
+}
@@ -0,0 +1,61 @@
+package com.sokoban.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sokoban.heuristic.BoxGoalHeuristic;
+import com.sokoban.heuristic.Heuristic;
+import com.sokoban.heuristic.ImprovedManhattanHeuristic;
+import com.sokoban.heuristic.ManhattanHeuristic;
+import com.sokoban.model.BoardState;
+
+/**
+ * Benchmarks each heuristic on states sampled from a level.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeuristicBenchmark {
+    @Param({ "resources/Level3.txt", "test/TestCase3_Complex.txt" })
+    public String level;
+
+    @Param({ "boxGoal", "manhattan", "improvedManhattan" })
+    public String heuristic;
+
+    private Heuristic scorer;
+    private BoardState[] states;
+    private int next;
+
+    @Setup
+    public void setup() {
+        states = Levels.sampleStates(Levels.load(level), 1024).toArray(new BoardState[0]);
+        if (heuristic.equals("boxGoal"))
+            scorer = new BoxGoalHeuristic();
+        else if (heuristic.equals("manhattan"))
+            scorer = new ManhattanHeuristic();
+        else
+            scorer = new ImprovedManhattanHeuristic();
+    }
+
+    @Benchmark
+    public int score() {
+        next = next + 1 < states.length ? next + 1 : 0;
+        BoardState state = states[next];
+        scorer.score(state);
+        return state.getCost();
+    }
+}
@@ -0,0 +1,71 @@
+package com.sokoban.benchmark;
+
+import java.awt.Point;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.sokoban.model.BoardState;
+import com.sokoban.model.Direction;
+
+/**
+ * Loads the benchmark levels and samples board states from them.
+ * Level paths are relative to the project root, which is the working
+ * directory unless the sokoban.root system property is set.
+ */
+final class Levels {
+    static final Point[] DIRECTIONS = {
+            Direction.UP, Direction.RIGHT, Direction.DOWN, Direction.LEFT
+    };
+
+    private Levels() {
+    }
+
+    /**
+     * Loads a level.
+     *
+     * @param path The level path relative to the project root
+     * @return The initial board state
+     */
+    static BoardState load(String path) {
+        File file = new File(System.getProperty("sokoban.root", "."), path);
+        try {
+            return BoardState.parseBoardInput(file.getPath());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot load " + file.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Samples states in breadth-first order from a level, so the same level
+     * always gives the same states.
+     *
+     * @param level The initial board state
+     * @param count The maximum number of states
+     * @return The states
+     */
+    static List<BoardState> sampleStates(BoardState level, int count) {
+        List<BoardState> states = new ArrayList<BoardState>(count);
+        Set<BoardState> seen = new HashSet<BoardState>();
+        ArrayDeque<BoardState> queue = new ArrayDeque<BoardState>();
+        queue.add(level);
+        seen.add(level);
+        while (!queue.isEmpty() && states.size() < count) {
+            BoardState state = queue.poll();
+            states.add(state);
+            for (Point direction : DIRECTIONS) {
+                if (state.canMove(direction)) {
+                    BoardState next = state.getMove(direction);
+                    if (seen.add(next))
+                        queue.add(next);
+                }
+            }
+        }
+        return states;
+    }
+}
@@ -0,0 +1,64 @@
+package com.sokoban.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sokoban.main.SolverOptions;
+import com.sokoban.model.BoardState;
+import com.sokoban.model.NoSolutionException;
+import com.sokoban.solver.AbstractSolver;
+
+/**
+ * Benchmarks full solves of every level with every solver. Each invocation
+ * solves the level once from scratch; unsolvable levels and timeouts are
+ * measured up to the point the search gives up.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SolveBenchmark {
+    @Param({ "resources/Level1.txt", "resources/Level2.txt", "resources/Level3.txt", "resources/Level4.txt",
+            "test/TestCase1_Simple.txt", "test/TestCase2_Unsolvable.txt", "test/TestCase3_Complex.txt",
+            "test/TestCase4_AlreadySolved.txt", "test/TestCase5_EdgeCase.txt" })
+    public String level;
+
+    @Param({ "-b", "-d", "-id", "-u", "-ab", "-gb", "-am", "-gm", "-ai", "-gi" })
+    public String solver;
+
+    // Timeout of a single solve in milliseconds
+    @Param({ "30000" })
+    public long timeoutMillis;
+
+    private BoardState initial;
+    private SolverOptions options;
+
+    @Setup
+    public void setup() {
+        initial = Levels.load(level);
+        options = new SolverOptions(solver);
+    }
+
+    @Benchmark
+    public String solve() {
+        AbstractSolver search = options.createSolver(initial, timeoutMillis);
+        try {
+            return search.search();
+        } catch (NoSolutionException e) {
+            return null;
+        }
+    }
+}
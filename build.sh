@@ -7,7 +7,8 @@ mkdir -p bin
 
 # Compile the source files
 echo "Compiling..."
-javac -d bin src/com/sokoban/main/*.java src/com/sokoban/model/*.java src/com/sokoban/solver/*.java src/com/sokoban/heuristic/*.java src/com/sokoban/util/*.java
+# The Vector API is an incubating module and must be added explicitly
+javac --add-modules jdk.incubator.vector -d bin src/com/sokoban/main/*.java src/com/sokoban/model/*.java src/com/sokoban/solver/*.java src/com/sokoban/heuristic/*.java src/com/sokoban/util/*.java src/com/sokoban/jfr/*.java
 
 # Check if compilation was successful
 if [ $? -eq 0 ]; then
@@ -25,6 +26,7 @@ if [ $? -eq 0 ]; then
     
     echo "JAR file created: SokobanSolver.jar"
     echo "To run the program: java -jar SokobanSolver.jar [-option] [Sokoban input file] [-t timeout]"
+    echo "Add --add-modules jdk.incubator.vector before -jar to vectorize the heuristics"
 else
     echo "Compilation failed!"
 fi
@@ -0,0 +1,97 @@
+package com.sokoban.heuristic;
+
+import com.sokoban.model.BoardState;
+import com.sokoban.model.LevelTopology;
+
+/**
+ * The boxes off goals and the empty goals of a state, with their rows and
+ * columns in separate arrays for the distance kernels. One instance is
+ * reused for every state of a batch from the same level.
+ *
+ * The goal arrays are padded up to a multiple of the kernel's lanes with
+ * goals far off the board, which are farther from every box than any real
+ * goal.
+ */
+final class BoxGoalCoordinates {
+    // Farther from every cell than any other cell, without overflowing sums
+    private static final int FAR = 1 << 29;
+
+    final LevelTopology topology;
+    final int lanes;
+    final int[] boxCells;
+    final int[] boxRows;
+    final int[] boxColumns;
+    final int[] goalRows;
+    final int[] goalColumns;
+    int boxCount;
+    int goalCount;
+    // goalCount rounded up to a multiple of lanes
+    int paddedGoalCount;
+
+    /**
+     * Creates empty coordinates for states of a level.
+     *
+     * @param topology The topology of the level
+     * @param boxes    The number of boxes of the level
+     * @param lanes    The lanes of the kernel
+     */
+    BoxGoalCoordinates(LevelTopology topology, int boxes, int lanes) {
+        this.topology = topology;
+        this.lanes = lanes;
+        int goals = topology.getGoalCount();
+        boxCells = new int[boxes];
+        boxRows = new int[boxes];
+        boxColumns = new int[boxes];
+        goalRows = new int[pad(goals)];
+        goalColumns = new int[pad(goals)];
+    }
+
+    /**
+     * Checks if these coordinates can hold a state.
+     *
+     * @param state The board state
+     * @return True if the state is of the same level
+     */
+    boolean fits(BoardState state) {
+        return state.getTopology() == topology && state.getBoxCount() <= boxCells.length;
+    }
+
+    /**
+     * Fills in the boxes off goals and the empty goals of a state.
+     *
+     * @param state The board state
+     */
+    void load(BoardState state) {
+        boxCount = 0;
+        for (int i = 0; i < state.getBoxCount(); i++) {
+            int box = state.getBoxCell(i);
+            if (!topology.isGoal(box)) {
+                boxCells[boxCount] = box;
+                boxRows[boxCount] = topology.getRow(box);
+                boxColumns[boxCount] = topology.getColumn(box);
+                boxCount++;
+            }
+        }
+        goalCount = 0;
+        for (int g = 0; g < topology.getGoalCount(); g++) {
+            int goal = topology.getGoal(g);
+            if (!state.hasBox(goal)) {
+                goalRows[goalCount] = topology.getRow(goal);
+                goalColumns[goalCount] = topology.getColumn(goal);
+                goalCount++;
+            }
+        }
+        paddedGoalCount = pad(goalCount);
+        for (int j = goalCount; j < paddedGoalCount; j++) {
+            goalRows[j] = FAR;
+            goalColumns[j] = FAR;
+        }
+    }
+
+    /**
+     * Rounds a goal count up to a multiple of the lanes.
+     */
+    private int pad(int count) {
+        return (count + lanes - 1) / lanes * lanes;
+    }
+}
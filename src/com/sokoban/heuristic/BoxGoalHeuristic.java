@@ -1,9 +1,5 @@
 package com.sokoban.heuristic;
 
-import java.awt.Point;
-import java.util.HashSet;
-import java.util.Set;
-
 import com.sokoban.model.BoardState;
 
 /**
@@ -18,15 +14,9 @@ public class BoxGoalHeuristic implements Heuristic {
      */
     @Override
     public void score(BoardState state) {
-        Set<Point> goals = state.getGoals();
-        Set<Point> boxes = state.getBoxes();
-
-        // Find the intersection of goals and boxes (boxes on goals)
-        Set<Point> intersection = new HashSet<Point>(goals);
-        intersection.retainAll(boxes);
-
         // Difference because lower costs are better
         // Cost = total goals - boxes on goals
-        state.setCost(goals.size() - intersection.size());
+        int onGoals = state.getBoxCount() - state.getBoxesOffGoal();
+        state.setCost(state.getTopology().getGoalCount() - onGoals);
     }
 }
@@ -0,0 +1,43 @@
+package com.sokoban.heuristic;
+
+/**
+ * Computes Manhattan distances from one cell to many goals at once. Goal
+ * coordinates are given as separate arrays of rows and columns, so an
+ * implementation can load several goals per instruction.
+ *
+ * Counts are always a multiple of {@link #lanes()}; callers pad the
+ * coordinate arrays with goals far enough away that they never win a
+ * minimum.
+ */
+interface DistanceKernel {
+    /**
+     * @return The number of goals handled per step
+     */
+    int lanes();
+
+    /**
+     * Finds the distance to the closest goal.
+     *
+     * @param row     The row of the cell
+     * @param column  The column of the cell
+     * @param rows    The rows of the goals
+     * @param columns The columns of the goals
+     * @param count   The number of goals, a multiple of lanes()
+     * @return The smallest distance, or Integer.MAX_VALUE if count is 0
+     */
+    int minDistance(int row, int column, int[] rows, int[] columns, int count);
+
+    /**
+     * Writes the distance to every goal and finds the closest.
+     *
+     * @param row     The row of the cell
+     * @param column  The column of the cell
+     * @param rows    The rows of the goals
+     * @param columns The columns of the goals
+     * @param count   The number of goals, a multiple of lanes()
+     * @param out     The array to write the distances to
+     * @param offset  The index of the first distance in out
+     * @return The smallest distance, or Integer.MAX_VALUE if count is 0
+     */
+    int distances(int row, int column, int[] rows, int[] columns, int count, int[] out, int offset);
+}
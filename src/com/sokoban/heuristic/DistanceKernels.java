@@ -0,0 +1,51 @@
+package com.sokoban.heuristic;
+
+/**
+ * Chooses how the Manhattan heuristics compute distances. The vectorized
+ * kernel needs the incubating jdk.incubator.vector module, which is only
+ * resolved when the JVM is started with
+ * {@code --add-modules jdk.incubator.vector}; without it the scalar kernel
+ * is used and scores are the same.
+ */
+public final class DistanceKernels {
+    private static final DistanceKernel SCALAR = new ScalarDistanceKernel();
+    private static final DistanceKernel VECTOR = loadVector();
+
+    private DistanceKernels() {
+    }
+
+    /**
+     * @return True if the Vector API is enabled, so heuristics are
+     *         vectorized
+     */
+    public static boolean isVectorAvailable() {
+        return VECTOR != null;
+    }
+
+    /**
+     * Gets a kernel.
+     *
+     * @param vectorize Whether to use the Vector API when it is available
+     * @return The kernel
+     */
+    static DistanceKernel get(boolean vectorize) {
+        return vectorize && VECTOR != null ? VECTOR : SCALAR;
+    }
+
+    /**
+     * Loads the vectorized kernel by name, so its class is never linked
+     * when the module is missing.
+     *
+     * @return The kernel, or null if the module is not enabled
+     */
+    private static DistanceKernel loadVector() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty())
+            return null;
+        try {
+            return (DistanceKernel) Class.forName("com.sokoban.heuristic.VectorDistanceKernel")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.sokoban.heuristic;
 
+import java.util.List;
+
 import com.sokoban.model.BoardState;
 
 /**
@@ -14,4 +16,16 @@ public interface Heuristic {
      * @param state The board state to score
      */
     void score(BoardState state);
+
+    /**
+     * Scores the children of one expansion together, so an implementation
+     * can share its working arrays across the batch. The default scores
+     * each state in turn.
+     *
+     * @param states The board states to score
+     */
+    default void scoreAll(List<BoardState> states) {
+        for (BoardState state : states)
+            score(state);
+    }
 }
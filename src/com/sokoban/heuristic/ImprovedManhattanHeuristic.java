@@ -1,19 +1,38 @@
 package com.sokoban.heuristic;
 
-import java.awt.Point;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 import com.sokoban.model.BoardState;
+import com.sokoban.model.LevelTopology;
 
 /**
  * An improved Manhattan heuristic that considers box-box interactions
  * and assigns boxes to goals optimally.
+ *
+ * The distance matrix is filled a row per box by a {@link DistanceKernel},
+ * vectorized when the Vector API is enabled.
  */
 public class ImprovedManhattanHeuristic implements Heuristic {
+    private final DistanceKernel kernel;
+
+    /**
+     * Constructs the heuristic, vectorized if the Vector API is enabled.
+     */
+    public ImprovedManhattanHeuristic() {
+        this(true);
+    }
+
+    /**
+     * Constructs the heuristic.
+     *
+     * @param vectorize Whether to use the Vector API when it is enabled
+     */
+    public ImprovedManhattanHeuristic(boolean vectorize) {
+        this.kernel = DistanceKernels.get(vectorize);
+    }
+
     /**
      * Scores a board state using an improved Manhattan distance heuristic.
      *
@@ -21,30 +40,51 @@ public class ImprovedManhattanHeuristic implements Heuristic {
      */
     @Override
     public void score(BoardState state) {
-        Set<Point> goals = state.getGoals();
-        Set<Point> boxes = state.getBoxes();
-
-        // Boxes on a goal are cost 0 so don't check them
-        Set<Point> boxesOnGoals = new HashSet<>(goals);
-        boxesOnGoals.retainAll(boxes);
+        BoxGoalCoordinates coordinates = new BoxGoalCoordinates(state.getTopology(), state.getBoxCount(),
+                kernel.lanes());
+        score(state, coordinates, new int[state.getBoxCount() * coordinates.goalRows.length]);
+    }
 
-        Set<Point> remainingGoals = new HashSet<>(goals);
-        remainingGoals.removeAll(boxesOnGoals);
+    /**
+     * Scores a batch of states, reusing one set of coordinate arrays and one
+     * distance matrix.
+     *
+     * @param states The board states to score
+     */
+    @Override
+    public void scoreAll(List<BoardState> states) {
+        BoxGoalCoordinates coordinates = null;
+        int[] distances = null;
+        for (BoardState state : states) {
+            if (coordinates == null || !coordinates.fits(state)) {
+                coordinates = new BoxGoalCoordinates(state.getTopology(), state.getBoxCount(), kernel.lanes());
+                distances = new int[state.getBoxCount() * coordinates.goalRows.length];
+            }
+            score(state, coordinates, distances);
+        }
+    }
 
-        Set<Point> remainingBoxes = new HashSet<>(boxes);
-        remainingBoxes.removeAll(boxesOnGoals);
+    /**
+     * Scores a board state.
+     *
+     * @param state       The board state to score
+     * @param coordinates The arrays to load the state into
+     * @param distances   The array for the distance matrix
+     */
+    private void score(BoardState state, BoxGoalCoordinates coordinates, int[] distances) {
+        coordinates.load(state);
 
         // If no remaining boxes or goals, cost is 0
-        if (remainingBoxes.isEmpty() || remainingGoals.isEmpty()) {
+        if (coordinates.boxCount == 0 || coordinates.goalCount == 0) {
             state.setCost(0);
             return;
         }
 
         // Calculate optimal assignment of boxes to goals
-        int cost = calculateOptimalAssignment(remainingBoxes, remainingGoals);
+        int cost = calculateOptimalAssignment(coordinates, distances);
 
         // Add penalty for box-box interactions
-        cost += calculateBoxInteractionPenalty(remainingBoxes, state);
+        cost += calculateBoxInteractionPenalty(coordinates.boxCells, coordinates.boxCount, state);
 
         state.setCost(cost);
     }
@@ -52,50 +92,42 @@ public class ImprovedManhattanHeuristic implements Heuristic {
     /**
      * Calculates the optimal assignment of boxes to goals using a greedy approach.
      *
-     * @param boxes The set of boxes
-     * @param goals The set of goals
+     * @param coordinates The boxes off goals and the empty goals
+     * @param distances   The array for the distance matrix, by box and then
+     *                    by padded goal
      * @return The total Manhattan distance
      */
-    private int calculateOptimalAssignment(Set<Point> boxes, Set<Point> goals) {
-        // Convert sets to lists for easier manipulation
-        List<Point> boxList = new ArrayList<>(boxes);
-        List<Point> goalList = new ArrayList<>(goals);
-
-        // Calculate all distances
-        int[][] distances = new int[boxList.size()][goalList.size()];
-        for (int i = 0; i < boxList.size(); i++) {
-            for (int j = 0; j < goalList.size(); j++) {
-                distances[i][j] = getManhattanDistance(boxList.get(i), goalList.get(j));
-            }
-        }
+    private int calculateOptimalAssignment(BoxGoalCoordinates coordinates, int[] distances) {
+        int boxCount = coordinates.boxCount;
+        int goalCount = coordinates.goalCount;
+        int stride = coordinates.paddedGoalCount;
 
-        // Greedy assignment - assign each box to its closest goal
-        int totalDistance = 0;
-        boolean[] assignedGoals = new boolean[goalList.size()];
-
-        // Sort boxes by minimum distance to any goal
+        // Calculate all distances, with the minimum distance of each box to
+        // any goal to sort the boxes by
         List<BoxDistancePair> boxDistances = new ArrayList<>();
-        for (int i = 0; i < boxList.size(); i++) {
-            int minDist = Integer.MAX_VALUE;
-            for (int j = 0; j < goalList.size(); j++) {
-                minDist = Math.min(minDist, distances[i][j]);
-            }
+        for (int i = 0; i < boxCount; i++) {
+            int minDist = kernel.distances(coordinates.boxRows[i], coordinates.boxColumns[i],
+                    coordinates.goalRows, coordinates.goalColumns, stride, distances, i * stride);
             boxDistances.add(new BoxDistancePair(i, minDist));
         }
 
+        // Greedy assignment - assign each box to its closest goal
+        int totalDistance = 0;
+        boolean[] assignedGoals = new boolean[goalCount];
+
         // Sort by minimum distance (ascending)
         Collections.sort(boxDistances);
 
         // Assign boxes to goals
         for (BoxDistancePair pair : boxDistances) {
-            int boxIndex = pair.boxIndex;
+            int row = pair.boxIndex * stride;
 
             // Find closest unassigned goal
             int closestGoal = -1;
             int minDist = Integer.MAX_VALUE;
-            for (int j = 0; j < goalList.size(); j++) {
-                if (!assignedGoals[j] && distances[boxIndex][j] < minDist) {
-                    minDist = distances[boxIndex][j];
+            for (int j = 0; j < goalCount; j++) {
+                if (!assignedGoals[j] && distances[row + j] < minDist) {
+                    minDist = distances[row + j];
                     closestGoal = j;
                 }
             }
@@ -113,35 +145,28 @@ public class ImprovedManhattanHeuristic implements Heuristic {
      * Calculates a penalty for box-box interactions.
      * Boxes that are adjacent to each other are harder to move.
      *
-     * @param boxes The set of boxes
-     * @param state The board state
+     * @param boxes    The cells of the boxes off goals
+     * @param boxCount The number of boxes off goals
+     * @param state    The board state
      * @return The interaction penalty
      */
-    private int calculateBoxInteractionPenalty(Set<Point> boxes, BoardState state) {
+    private int calculateBoxInteractionPenalty(int[] boxes, int boxCount, BoardState state) {
+        LevelTopology topology = state.getTopology();
         int penalty = 0;
 
-        for (Point box : boxes) {
-            // Check adjacent positions for other boxes
-            Point[] adjacentPositions = {
-                    new Point(box.x - 1, box.y),
-                    new Point(box.x + 1, box.y),
-                    new Point(box.x, box.y - 1),
-                    new Point(box.x, box.y + 1)
-            };
-
-            for (Point adj : adjacentPositions) {
-                if (boxes.contains(adj)) {
+        for (int i = 0; i < boxCount; i++) {
+            int box = boxes[i];
+            boolean againstWall = false;
+            for (int d = 0; d < 4; d++) {
+                int adj = topology.neighbour(d, box);
+                if (adj == LevelTopology.NONE) {
+                    againstWall = true;
+                } else if (!topology.isGoal(adj) && state.hasBox(adj)) {
                     penalty += 2; // Penalty for adjacent boxes
                 }
             }
 
-            // Check if box is against a wall
-            boolean wallUp = state.pointHas(new Point(box.x - 1, box.y), BoardState.WALL);
-            boolean wallDown = state.pointHas(new Point(box.x + 1, box.y), BoardState.WALL);
-            boolean wallLeft = state.pointHas(new Point(box.x, box.y - 1), BoardState.WALL);
-            boolean wallRight = state.pointHas(new Point(box.x, box.y + 1), BoardState.WALL);
-
-            if (wallUp || wallDown || wallLeft || wallRight) {
+            if (againstWall) {
                 penalty += 1; // Penalty for being against a wall
             }
         }
@@ -149,17 +174,6 @@ public class ImprovedManhattanHeuristic implements Heuristic {
         return penalty;
     }
 
-    /**
-     * Calculates the Manhattan distance between two points.
-     *
-     * @param p1 The first point
-     * @param p2 The second point
-     * @return The Manhattan distance
-     */
-    private static int getManhattanDistance(Point p1, Point p2) {
-        return Math.abs(p1.x - p2.x) + Math.abs(p1.y - p2.y);
-    }
-
     /**
      * Helper class to store box index and its minimum distance to any goal.
      */
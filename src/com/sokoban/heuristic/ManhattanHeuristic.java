@@ -1,8 +1,6 @@
 package com.sokoban.heuristic;
 
-import java.awt.Point;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.List;
 
 import com.sokoban.model.BoardState;
 
@@ -10,8 +8,29 @@ import com.sokoban.model.BoardState;
  * A heuristic that scores based on Manhattan distances between boxes and goals.
  * For each box, it finds the closest goal and adds the Manhattan distance to
  * the score.
+ *
+ * The closest goal is found by a {@link DistanceKernel} over the rows and
+ * columns of the empty goals, vectorized when the Vector API is enabled.
  */
 public class ManhattanHeuristic implements Heuristic {
+    private final DistanceKernel kernel;
+
+    /**
+     * Constructs the heuristic, vectorized if the Vector API is enabled.
+     */
+    public ManhattanHeuristic() {
+        this(true);
+    }
+
+    /**
+     * Constructs the heuristic.
+     *
+     * @param vectorize Whether to use the Vector API when it is enabled
+     */
+    public ManhattanHeuristic(boolean vectorize) {
+        this.kernel = DistanceKernels.get(vectorize);
+    }
+
     /**
      * Scores a board state based on Manhattan distances between boxes and goals.
      *
@@ -19,37 +38,40 @@ public class ManhattanHeuristic implements Heuristic {
      */
     @Override
     public void score(BoardState state) {
-        Set<Point> goals = state.getGoals();
-        Set<Point> boxes = state.getBoxes();
-
-        // Boxes on a goal are cost 0 so don't check them
-        Set<Point> intersection = new HashSet<Point>(goals);
-        intersection.retainAll(boxes);
-        goals.removeAll(intersection);
-        boxes.removeAll(intersection);
+        score(state, new BoxGoalCoordinates(state.getTopology(), state.getBoxCount(), kernel.lanes()));
+    }
 
-        // Calculate the minimum Manhattan distance for each box to any goal
-        int cost = 0;
-        for (Point box : boxes) {
-            int minMarginalCost = Integer.MAX_VALUE;
-            for (Point goal : goals) {
-                int dist = getManhattanDistance(box, goal);
-                if (dist < minMarginalCost)
-                    minMarginalCost = dist;
-            }
-            cost += minMarginalCost;
+    /**
+     * Scores a batch of states, reusing one set of coordinate arrays.
+     *
+     * @param states The board states to score
+     */
+    @Override
+    public void scoreAll(List<BoardState> states) {
+        BoxGoalCoordinates coordinates = null;
+        for (BoardState state : states) {
+            if (coordinates == null || !coordinates.fits(state))
+                coordinates = new BoxGoalCoordinates(state.getTopology(), state.getBoxCount(), kernel.lanes());
+            score(state, coordinates);
         }
-        state.setCost(cost);
     }
 
     /**
-     * Calculates the Manhattan distance between two points.
+     * Scores a board state.
      *
-     * @param p1 The first point
-     * @param p2 The second point
-     * @return The Manhattan distance between p1 and p2
+     * @param state       The board state to score
+     * @param coordinates The arrays to load the state into
      */
-    private static int getManhattanDistance(Point p1, Point p2) {
-        return Math.abs(p1.x - p2.x) + Math.abs(p1.y - p2.y);
+    private void score(BoardState state, BoxGoalCoordinates coordinates) {
+        coordinates.load(state);
+
+        // Calculate the minimum Manhattan distance for each box to any goal;
+        // boxes on a goal are cost 0 and goals holding a box are taken
+        int cost = 0;
+        for (int i = 0; i < coordinates.boxCount; i++) {
+            cost += kernel.minDistance(coordinates.boxRows[i], coordinates.boxColumns[i],
+                    coordinates.goalRows, coordinates.goalColumns, coordinates.paddedGoalCount);
+        }
+        state.setCost(cost);
     }
 }
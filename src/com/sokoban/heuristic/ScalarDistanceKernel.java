@@ -0,0 +1,31 @@
+package com.sokoban.heuristic;
+
+/**
+ * Computes distances one goal at a time. Used when the Vector API is not
+ * available.
+ */
+final class ScalarDistanceKernel implements DistanceKernel {
+    @Override
+    public int lanes() {
+        return 1;
+    }
+
+    @Override
+    public int minDistance(int row, int column, int[] rows, int[] columns, int count) {
+        int min = Integer.MAX_VALUE;
+        for (int j = 0; j < count; j++)
+            min = Math.min(min, Math.abs(row - rows[j]) + Math.abs(column - columns[j]));
+        return min;
+    }
+
+    @Override
+    public int distances(int row, int column, int[] rows, int[] columns, int count, int[] out, int offset) {
+        int min = Integer.MAX_VALUE;
+        for (int j = 0; j < count; j++) {
+            int distance = Math.abs(row - rows[j]) + Math.abs(column - columns[j]);
+            out[offset + j] = distance;
+            min = Math.min(min, distance);
+        }
+        return min;
+    }
+}
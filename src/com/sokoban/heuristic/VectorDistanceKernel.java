@@ -0,0 +1,47 @@
+package com.sokoban.heuristic;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Computes distances to a full vector of goals per step with the incubating
+ * Vector API. Only loaded by {@link DistanceKernels} when the
+ * jdk.incubator.vector module is enabled.
+ */
+final class VectorDistanceKernel implements DistanceKernel {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    @Override
+    public int lanes() {
+        return SPECIES.length();
+    }
+
+    @Override
+    public int minDistance(int row, int column, int[] rows, int[] columns, int count) {
+        IntVector min = IntVector.broadcast(SPECIES, Integer.MAX_VALUE);
+        for (int j = 0; j < count; j += SPECIES.length())
+            min = min.min(distance(row, column, rows, columns, j));
+        return min.reduceLanes(VectorOperators.MIN);
+    }
+
+    @Override
+    public int distances(int row, int column, int[] rows, int[] columns, int count, int[] out, int offset) {
+        IntVector min = IntVector.broadcast(SPECIES, Integer.MAX_VALUE);
+        for (int j = 0; j < count; j += SPECIES.length()) {
+            IntVector distance = distance(row, column, rows, columns, j);
+            distance.intoArray(out, offset + j);
+            min = min.min(distance);
+        }
+        return min.reduceLanes(VectorOperators.MIN);
+    }
+
+    /**
+     * Computes the distances to one vector of goals.
+     */
+    private static IntVector distance(int row, int column, int[] rows, int[] columns, int j) {
+        IntVector dr = IntVector.fromArray(SPECIES, rows, j).sub(row).abs();
+        IntVector dc = IntVector.fromArray(SPECIES, columns, j).sub(column).abs();
+        return dr.add(dc);
+    }
+}
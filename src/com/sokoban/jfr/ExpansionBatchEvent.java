@@ -0,0 +1,32 @@
+package com.sokoban.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Spans a fixed number of state expansions, so a recording shows how the
+ * expansion rate and fringe change over a search.
+ */
+@Name("com.sokoban.ExpansionBatch")
+@Label("Expansion Batch")
+@Category({ "Sokoban", "Search" })
+@Description("A batch of state expansions with the counts of that batch")
+public class ExpansionBatchEvent extends Event {
+    @Label("Expanded")
+    public long expanded;
+
+    @Label("Generated")
+    public long generated;
+
+    @Label("Duplicates")
+    public long duplicates;
+
+    @Label("Deadlock Prunes")
+    public long deadlockPrunes;
+
+    @Label("Fringe")
+    public int fringe;
+}
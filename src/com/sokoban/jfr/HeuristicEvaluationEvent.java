@@ -0,0 +1,32 @@
+package com.sokoban.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A sampled heuristic evaluation. Only a fixed fraction of evaluations is
+ * recorded, so the event stream stays small on long searches. A batch of
+ * children scored together is one event, with the score and boxes of its
+ * first state.
+ */
+@Name("com.sokoban.HeuristicEvaluation")
+@Label("Heuristic Evaluation")
+@Category({ "Sokoban", "Search" })
+@Description("A sampled call of a heuristic")
+public class HeuristicEvaluationEvent extends Event {
+    @Label("Heuristic")
+    public String heuristic;
+
+    @Label("Score")
+    public int score;
+
+    @Label("Boxes")
+    public int boxes;
+
+    @Label("States")
+    @Description("The number of states scored by the call")
+    public int states;
+}
@@ -0,0 +1,25 @@
+package com.sokoban.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded when a level is parsed from text.
+ */
+@Name("com.sokoban.LevelParse")
+@Label("Level Parse")
+@Category({ "Sokoban", "Level" })
+@Description("Parsing of a level from its text format")
+public class LevelParseEvent extends Event {
+    @Label("Rows")
+    public int rows;
+
+    @Label("Columns")
+    public int columns;
+
+    @Label("Boxes")
+    public int boxes;
+}
@@ -0,0 +1,27 @@
+package com.sokoban.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded for each per-level precomputation, such as the tunnel and
+ * goal-room macro detectors.
+ */
+@Name("com.sokoban.Precomputation")
+@Label("Precomputation")
+@Category({ "Sokoban", "Level" })
+@Description("Per-level analysis done before or at the start of a search")
+public class PrecomputationEvent extends Event {
+    @Label("Kind")
+    @Description("What was computed")
+    public String kind;
+
+    @Label("Cells")
+    public int cells;
+
+    @Label("Goals")
+    public int goals;
+}
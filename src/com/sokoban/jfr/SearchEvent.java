@@ -0,0 +1,35 @@
+package com.sokoban.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Spans a whole search, from start to solution, failure, timeout or
+ * cancellation.
+ */
+@Name("com.sokoban.Search")
+@Label("Search")
+@Category({ "Sokoban", "Search" })
+@Description("A complete search for a solution")
+public class SearchEvent extends Event {
+    @Label("Solver")
+    public String solver;
+
+    @Label("Solved")
+    public boolean solved;
+
+    @Label("Expanded")
+    public long expanded;
+
+    @Label("Generated")
+    public long generated;
+
+    @Label("Duplicates")
+    public long duplicates;
+
+    @Label("Peak Fringe")
+    public int peakFringe;
+}
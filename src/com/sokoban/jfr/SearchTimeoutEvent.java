@@ -0,0 +1,27 @@
+package com.sokoban.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Recorded when a search stops because it timed out or was cancelled.
+ */
+@Name("com.sokoban.SearchTimeout")
+@Label("Search Timeout")
+@Category({ "Sokoban", "Search" })
+@Description("A search stopped by its timeout or by cancellation")
+public class SearchTimeoutEvent extends Event {
+    @Label("Reason")
+    public String reason;
+
+    @Label("Timeout")
+    @Timespan(Timespan.MILLISECONDS)
+    public long timeout;
+
+    @Label("Expanded")
+    public long expanded;
+}
@@ -0,0 +1,290 @@
+package com.sokoban.main;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+
+import com.sokoban.model.BoardState;
+import com.sokoban.model.LevelReader;
+import com.sokoban.solver.AbstractSolver;
+import com.sokoban.solver.CancellationToken;
+import com.sokoban.solver.SearchMetrics;
+import com.sokoban.solver.SearchResult;
+import com.sokoban.util.LevelAnalysisCache;
+
+/**
+ * Library entry point that runs solves asynchronously on an executor
+ * supplied by the caller, without any console output.
+ *
+ * Each solve returns a {@link Task} with a CompletableFuture of the
+ * {@link SearchResult} and a Flow.Publisher of {@link Progress} snapshots.
+ * Progress is offered to subscribers without blocking, so a slow subscriber
+ * misses snapshots instead of slowing the search down. Cancelling the future
+ * or the task stops the search at its next timeout check. Level analyses are
+ * cached, so solving the same level again skips the precomputation.
+ *
+ * Usage:
+ * <pre>
+ * AsyncSolver solver = new AsyncSolver(executor);
+ * AsyncSolver.Task task = solver.submit(levelText, "-ai", "-t", "10");
+ * task.getProgress().subscribe(subscriber);
+ * task.getResult().thenAccept(result -&gt; ...);
+ * </pre>
+ */
+public class AsyncSolver {
+    private final Executor executor;
+    private final LevelAnalysisCache analyses;
+    private final long progressIntervalMillis;
+
+    /**
+     * Creates an asynchronous solver with a cache of 256 level analyses and
+     * a progress snapshot every second.
+     *
+     * @param executor The executor that runs the solves and delivers
+     *                 progress
+     */
+    public AsyncSolver(Executor executor) {
+        this(executor, 256, 1000);
+    }
+
+    /**
+     * Creates an asynchronous solver.
+     *
+     * @param executor               The executor that runs the solves and
+     *                               delivers progress
+     * @param cacheSize              The number of level analyses kept
+     * @param progressIntervalMillis The time between progress snapshots in
+     *                               milliseconds
+     */
+    public AsyncSolver(Executor executor, int cacheSize, long progressIntervalMillis) {
+        this.executor = executor;
+        this.analyses = new LevelAnalysisCache(cacheSize);
+        this.progressIntervalMillis = progressIntervalMillis;
+    }
+
+    /**
+     * Solves the first level of text in any format {@link LevelReader}
+     * reads.
+     *
+     * @param level   The level text
+     * @param options The algorithm flag and search parameters, e.g. "-ai",
+     *                "-t", "10"
+     * @return The running solve
+     * @throws IllegalArgumentException If the options are invalid
+     */
+    public Task submit(String level, String... options) {
+        return submit(() -> parse(LevelReader.of(level)), options);
+    }
+
+    /**
+     * Solves the first level read from a stream. The stream is read on the
+     * executor and is not closed.
+     *
+     * @param level   The level stream
+     * @param options The algorithm flag and search parameters
+     * @return The running solve
+     * @throws IllegalArgumentException If the options are invalid
+     */
+    public Task submit(InputStream level, String... options) {
+        return submit(() -> parse(LevelReader.of(level)), options);
+    }
+
+    /**
+     * Solves a parsed level.
+     *
+     * @param level   The initial board state
+     * @param options The algorithm flag and search parameters
+     * @return The running solve
+     * @throws IllegalArgumentException If the options are invalid
+     */
+    public Task submit(BoardState level, String... options) {
+        return submit(() -> level, options);
+    }
+
+    /**
+     * Solves a level and returns only the future of the result.
+     *
+     * @param level   The level text
+     * @param options The algorithm flag and search parameters
+     * @return The future result
+     * @throws IllegalArgumentException If the options are invalid
+     */
+    public CompletableFuture<SearchResult> solve(String level, String... options) {
+        return submit(level, options).getResult();
+    }
+
+    /**
+     * Starts a solve on the executor.
+     *
+     * @param level   Supplies the initial board state on the executor
+     * @param options The algorithm flag and search parameters
+     * @return The running solve
+     */
+    private Task submit(LevelSupplier level, String... options) {
+        SolverOptions solverOptions = SolverOptions.parse(options);
+        Task task = new Task(executor);
+        executor.execute(() -> task.run(level, solverOptions, analyses, progressIntervalMillis));
+        return task;
+    }
+
+    /**
+     * Parses a level, failing if the reader holds none.
+     */
+    private static BoardState parse(LevelReader reader) throws IOException {
+        BoardState level = reader.read();
+        if (level == null)
+            throw new IOException("Missing level");
+        return level;
+    }
+
+    /**
+     * Supplies a level, possibly by reading it.
+     */
+    private interface LevelSupplier {
+        BoardState get() throws IOException;
+    }
+
+    /**
+     * A queued or running solve.
+     */
+    public static class Task {
+        private final CompletableFuture<SearchResult> result = new CompletableFuture<SearchResult>();
+        private final SubmissionPublisher<Progress> progress;
+        private final CancellationToken token = new CancellationToken();
+
+        Task(Executor executor) {
+            progress = new SubmissionPublisher<Progress>(executor, Flow.defaultBufferSize());
+            // Cancelling the future stops the search
+            result.whenComplete((r, e) -> {
+                if (result.isCancelled())
+                    token.cancel();
+            });
+        }
+
+        /**
+         * Runs the solve on the current thread, completing the future.
+         */
+        void run(LevelSupplier level, SolverOptions options, LevelAnalysisCache analyses, long progressMillis) {
+            try {
+                if (token.isCancelled())
+                    throw new CancellationException("Solve cancelled before it started");
+                BoardState board = level.get();
+                AbstractSolver solver = options.createSolver(board, options.getTimeoutMillis(),
+                        analyses.get(board));
+                solver.setCancellationToken(token);
+                solver.getMetrics().setProgressListener(progressMillis,
+                        metrics -> progress.offer(new Progress(metrics), null));
+                SearchResult searchResult = solver.solve();
+                progress.close();
+                result.complete(searchResult);
+            } catch (IOException e) {
+                fail(new UncheckedIOException(e));
+            } catch (RuntimeException | OutOfMemoryError e) {
+                fail(e);
+            }
+        }
+
+        private void fail(Throwable e) {
+            progress.closeExceptionally(e);
+            result.completeExceptionally(e);
+        }
+
+        /**
+         * @return The future result; cancelling it stops the search
+         */
+        public CompletableFuture<SearchResult> getResult() {
+            return result;
+        }
+
+        /**
+         * @return The publisher of progress snapshots, completed when the
+         *         solve ends
+         */
+        public Flow.Publisher<Progress> getProgress() {
+            return progress;
+        }
+
+        /**
+         * Stops the solve. A running search completes the future with a
+         * cancelled result and its statistics; a solve that has not started
+         * fails with a CancellationException.
+         */
+        public void cancel() {
+            token.cancel();
+        }
+    }
+
+    /**
+     * A snapshot of the statistics of a running search.
+     */
+    public static class Progress {
+        private final long elapsedMillis;
+        private final long expanded;
+        private final long generated;
+        private final long duplicates;
+        private final int peakFringe;
+        private final long nodesPerSecond;
+
+        Progress(SearchMetrics metrics) {
+            this.elapsedMillis = metrics.getElapsedMillis();
+            this.expanded = metrics.getExpanded();
+            this.generated = metrics.getGenerated();
+            this.duplicates = metrics.getDuplicates();
+            this.peakFringe = metrics.getPeakFringe();
+            this.nodesPerSecond = metrics.getNodesPerSecond();
+        }
+
+        /**
+         * @return The time since the search started in milliseconds
+         */
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * @return The number of states expanded
+         */
+        public long getExpanded() {
+            return expanded;
+        }
+
+        /**
+         * @return The number of successor states generated
+         */
+        public long getGenerated() {
+            return generated;
+        }
+
+        /**
+         * @return The number of states found to be duplicates
+         */
+        public long getDuplicates() {
+            return duplicates;
+        }
+
+        /**
+         * @return The largest fringe size so far
+         */
+        public int getPeakFringe() {
+            return peakFringe;
+        }
+
+        /**
+         * @return The latest expansion rate
+         */
+        public long getNodesPerSecond() {
+            return nodesPerSecond;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.1fs: expanded %d, generated %d, duplicates %d, peak fringe %d, %d nodes/s",
+                    elapsedMillis / 1000.0, expanded, generated, duplicates, peakFringe, nodesPerSecond);
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package com.sokoban.main;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.sokoban.model.BoardState;
+import com.sokoban.model.LevelReader;
+import com.sokoban.solver.AbstractSolver;
+
+/**
+ * Solves a whole directory of levels or a multi-level collection file in one
+ * JVM, using a pool of worker threads. Levels are read as they are needed, so
+ * solving starts with the first level of a large collection and only the
+ * levels being solved or awaiting a retry are held in memory.
+ *
+ * Every level first gets the base timeout. Time left over by levels that
+ * finish early goes into a shared bank, and levels that timed out are retried
+ * afterwards with their share of the bank added to the base timeout. Results
+ * are streamed as CSV or JSON lines as each level finishes.
+ */
+public class BatchSolver {
+    private final SolverOptions options;
+    private final int workers;
+    private final PrintWriter out;
+    private final boolean json;
+    private final AtomicLong bank;
+
+    /**
+     * Constructs a batch solver.
+     *
+     * @param options The search options used for every level
+     * @param workers The number of worker threads
+     * @param out     Where results are written
+     * @param json    True to write JSON lines, false to write CSV
+     */
+    public BatchSolver(SolverOptions options, int workers, PrintWriter out, boolean json) {
+        this.options = options;
+        this.workers = workers;
+        this.out = out;
+        this.json = json;
+        this.bank = new AtomicLong();
+    }
+
+    /**
+     * Runs batch mode from the command line arguments:
+     * -batch [-option] [directory or collection file] [search parameters]
+     * [-w workers] [-o output file]
+     *
+     * @param args The command line arguments
+     */
+    public static void parseArguments(String[] args) {
+        if (args.length < 3 || !SolverOptions.isAlgorithm(args[1])) {
+            System.out.println("Usage: java -jar SokobanSolver.jar -batch [-option] "
+                    + "[level directory or collection file] [search parameters] "
+                    + "[-w workers] [-o results.csv|results.jsonl]");
+            return;
+        }
+
+        SolverOptions options = new SolverOptions(args[1]);
+        int workers = Runtime.getRuntime().availableProcessors();
+        String output = null;
+        for (int i = 3; i < args.length; i++) {
+            // Numeric values are parsed before the index moves past them,
+            // so a bad value is reported against its option
+            try {
+                if (args[i].equals("-w") && i + 1 < args.length) {
+                    workers = Math.max(1, Integer.parseInt(args[i + 1]));
+                    i++;
+                } else if (args[i].equals("-o") && i + 1 < args.length) {
+                    output = args[++i];
+                } else {
+                    int last = options.parseOption(args, i);
+                    if (last >= 0)
+                        i = last;
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid value for " + args[i] + ", using the default");
+                i++;
+            }
+        }
+
+        try (Stream<Level> levels = streamLevels(new File(args[2]))) {
+            boolean json = output != null && (output.endsWith(".json") || output.endsWith(".jsonl"));
+            PrintWriter out = output == null
+                    ? new PrintWriter(System.out, true)
+                    : new PrintWriter(new FileWriter(output), true);
+            try {
+                long start = System.currentTimeMillis();
+                List<SolveResult> results = new BatchSolver(options, workers, out, json).run(levels);
+                int solved = 0;
+                for (SolveResult result : results) {
+                    if (result.getStatus() == SolveResult.Status.SOLVED)
+                        solved++;
+                }
+                System.out.println("Solved " + solved + " of " + results.size() + " levels in "
+                        + (System.currentTimeMillis() - start) + " milliseconds");
+            } finally {
+                if (output != null)
+                    out.close();
+            }
+        } catch (IOException e) {
+            System.out.println("Could not read levels: " + e.getMessage());
+        } catch (UncheckedIOException e) {
+            System.out.println("Could not read levels: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("Batch interrupted");
+        }
+    }
+
+    /**
+     * Loads the levels of a directory or collection file.
+     *
+     * @param path The directory or file
+     * @return The levels
+     * @throws IOException If a file cannot be read or holds a malformed level
+     */
+    public static List<Level> loadLevels(File path) throws IOException {
+        try (Stream<Level> levels = streamLevels(path)) {
+            return levels.collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Lazily reads the levels of a directory or collection file. A directory
+     * is read file by file in name order; each .txt, .xsb or .sok file may
+     * hold one or more levels. Read errors are thrown as UncheckedIOException
+     * when the stream reaches them, and closing the stream closes the open
+     * file.
+     *
+     * @param path The directory or file
+     * @return The levels
+     * @throws IOException If the directory cannot be listed or the file
+     *                     cannot be opened
+     */
+    public static Stream<Level> streamLevels(File path) throws IOException {
+        if (!path.isDirectory())
+            return streamFile(path);
+        File[] files = path.listFiles((dir, name) -> name.endsWith(".txt") || name.endsWith(".xsb")
+                || name.endsWith(".sok"));
+        if (files == null)
+            throw new IOException("Cannot list " + path);
+        Arrays.sort(files);
+        return Arrays.stream(files).flatMap(file -> {
+            try {
+                return streamFile(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Lazily reads every level of a file. Levels are named after the file,
+     * with their number appended if the file holds more than one, so the
+     * next level is read before a level is returned.
+     *
+     * @param file The file
+     * @return The levels
+     * @throws IOException If the file cannot be opened
+     */
+    private static Stream<Level> streamFile(File file) throws IOException {
+        Stream<BoardState> boards = LevelReader.open(file.toPath()).stream();
+        Iterator<BoardState> remaining = boards.iterator();
+        Iterator<Level> levels = new Iterator<Level>() {
+            private int number;
+
+            @Override
+            public boolean hasNext() {
+                return remaining.hasNext();
+            }
+
+            @Override
+            public Level next() {
+                BoardState board = remaining.next();
+                number++;
+                String name = number == 1 && !remaining.hasNext() ? file.getName()
+                        : file.getName() + "#" + number;
+                return new Level(name, board);
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(levels,
+                Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(boards::close);
+    }
+
+    /**
+     * Solves all levels and writes each result as soon as it is final.
+     * Levels are taken from the stream as workers become free, keeping a
+     * couple of levels per worker queued.
+     *
+     * @param levels The levels to solve
+     * @return The final result of every level, in completion order
+     * @throws InterruptedException If interrupted while waiting for workers
+     */
+    public List<SolveResult> run(Stream<Level> levels) throws InterruptedException {
+        if (!json)
+            write(SolveResult.csvHeader());
+
+        long baseTimeout = options.getTimeoutMillis();
+        List<SolveResult> results = new ArrayList<SolveResult>();
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try (HeapSampler sampler = new HeapSampler(10)) {
+            CompletionService<SolveResult> completion = new ExecutorCompletionService<SolveResult>(pool);
+
+            // First pass: every level gets the base timeout
+            Iterator<Level> unread = levels.iterator();
+            Map<String, Level> queued = new HashMap<String, Level>();
+            Deque<Level> timedOut = new ArrayDeque<Level>();
+            Map<String, SolveResult> firstTimeouts = new LinkedHashMap<String, SolveResult>();
+            while (true) {
+                while (queued.size() < 2 * workers && unread.hasNext()) {
+                    Level level = unread.next();
+                    queued.put(level.getName(), level);
+                    completion.submit(() -> solve(level, baseTimeout, 1, sampler));
+                }
+                if (queued.isEmpty())
+                    break;
+                SolveResult result = take(completion);
+                Level level = queued.remove(result.getLevel());
+                if (result.getStatus() == SolveResult.Status.TIMEOUT) {
+                    timedOut.add(level);
+                    firstTimeouts.put(result.getLevel(), result);
+                } else {
+                    bank.addAndGet(Math.max(0, baseTimeout - result.getElapsedMillis()));
+                    results.add(result);
+                    write(result);
+                }
+            }
+
+            // Second pass: retry timed out levels with their share of the bank
+            int running = 0;
+            while (!timedOut.isEmpty() || running > 0) {
+                while (running < workers && !timedOut.isEmpty()) {
+                    long extra = bank.get() / timedOut.size();
+                    if (extra <= 0)
+                        break;
+                    bank.addAndGet(-extra);
+                    Level level = timedOut.poll();
+                    completion.submit(() -> solve(level, baseTimeout + extra, 2, sampler));
+                    running++;
+                }
+                if (running == 0)
+                    break;
+                SolveResult result = take(completion);
+                running--;
+                long extra = result.getTimeoutMillis() - baseTimeout;
+                long unused = result.getTimeoutMillis() - result.getElapsedMillis();
+                bank.addAndGet(Math.max(0, Math.min(extra, unused)));
+                firstTimeouts.remove(result.getLevel());
+                results.add(result);
+                write(result);
+            }
+
+            // Levels that could not be retried keep their first result
+            for (SolveResult result : firstTimeouts.values()) {
+                results.add(result);
+                write(result);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * Solves one level with the configured options. A solve that fails
+     * gives an ERROR result with its cause, so the other levels still run.
+     *
+     * @param level         The level
+     * @param timeoutMillis The timeout in milliseconds
+     * @param attempt       The attempt number
+     * @param sampler       The heap sampler
+     * @return The result
+     */
+    private SolveResult solve(Level level, long timeoutMillis, int attempt, HeapSampler sampler) {
+        try {
+            AbstractSolver solver = options.createSolver(level.getBoard(), timeoutMillis);
+            return SolveResult.solve(level.getName(), options.getAlgorithm(), solver, timeoutMillis, attempt,
+                    sampler);
+        } catch (RuntimeException | Error e) {
+            return SolveResult.error(level.getName(), options.getAlgorithm(), timeoutMillis, attempt, e);
+        }
+    }
+
+    /**
+     * Waits for the next finished solve.
+     *
+     * @param completion The completion service the solves were submitted to
+     * @return The result of the solve
+     * @throws InterruptedException If interrupted while waiting
+     */
+    private static SolveResult take(CompletionService<SolveResult> completion) throws InterruptedException {
+        try {
+            return completion.take().get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Solve failed", e.getCause());
+        }
+    }
+
+    /**
+     * Writes a result line, and in CSV the cause of a failed solve to
+     * standard error.
+     *
+     * @param result The result
+     */
+    private void write(SolveResult result) {
+        write(json ? result.toJson() : result.toCsv());
+        // The CSV format has no column for it
+        if (!json && result.getError() != null)
+            System.err.println(result.getLevel() + " failed: " + result.getError());
+    }
+
+    /**
+     * Writes a line and flushes it, so results appear as levels finish.
+     *
+     * @param line The line
+     */
+    private synchronized void write(String line) {
+        out.println(line);
+        out.flush();
+    }
+
+    /**
+     * A named level of a batch.
+     */
+    public static class Level {
+        private final String name;
+        private final BoardState board;
+
+        /**
+         * Constructs a level.
+         *
+         * @param name  The level name
+         * @param board The initial board state
+         */
+        public Level(String name, BoardState board) {
+            this.name = name;
+            this.board = board;
+        }
+
+        /**
+         * @return The level name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The initial board state
+         */
+        public BoardState getBoard() {
+            return board;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.sokoban.main;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sokoban.solver.AbstractSolver;
+
+/**
+ * Solves a fixed corpus of levels with every solver and compares the
+ * results against a stored baseline, to catch changes that make real solves
+ * slower or more memory-hungry.
+ *
+ * Solves run one at a time so timings are comparable, and each is repeated
+ * with the best time and heap use kept. Node and fringe counts are
+ * deterministic and compared with the tolerance alone; wall time and peak
+ * heap are noisy and also need to move by more than a fixed amount before
+ * they count as a regression.
+ */
+public class BenchmarkRunner {
+    private static final String[] DEFAULT_CORPUS = { "resources", "test" };
+    // Differences below these are treated as measurement noise
+    private static final long MIN_MILLIS_DELTA = 25;
+    private static final long MIN_HEAP_DELTA = 16L << 20;
+
+    private final List<String> algorithms;
+    private final List<String> searchOptions;
+    private final int repeat;
+    private final double tolerance;
+
+    /**
+     * Constructs a benchmark runner.
+     *
+     * @param algorithms    The algorithm flags to run
+     * @param searchOptions Search parameters applied to every algorithm
+     * @param repeat        The number of runs per level and algorithm
+     * @param tolerance     The allowed relative increase, e.g. 0.1 for 10%
+     */
+    public BenchmarkRunner(List<String> algorithms, List<String> searchOptions, int repeat, double tolerance) {
+        this.algorithms = algorithms;
+        this.searchOptions = searchOptions;
+        this.repeat = repeat;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Runs the benchmark from the command line arguments:
+     * -bench [-corpus path]... [-a algorithms] [search parameters]
+     * [-repeat n] [-tolerance percent] [-baseline file] [-save file]
+     * Exits with status 1 if any result regressed against the baseline.
+     *
+     * @param args The command line arguments
+     */
+    public static void parseArguments(String[] args) {
+        List<String> corpus = new ArrayList<String>();
+        List<String> algorithms = new ArrayList<String>(Arrays.asList(SolverOptions.ALGORITHMS));
+        // Randomized results cannot be compared with a baseline
+        algorithms.removeAll(Arrays.asList(SolverOptions.RANDOMIZED_ALGORITHMS));
+        List<String> searchOptions = new ArrayList<String>();
+        int repeat = 3;
+        double tolerance = 0.10;
+        String baselinePath = null;
+        String savePath = null;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("-corpus") && i + 1 < args.length) {
+                corpus.add(args[++i]);
+            } else if (args[i].equals("-a") && i + 1 < args.length) {
+                algorithms = Arrays.asList(args[++i].split(","));
+            } else if (args[i].equals("-repeat") && i + 1 < args.length) {
+                repeat = Math.max(1, Integer.parseInt(args[++i]));
+            } else if (args[i].equals("-tolerance") && i + 1 < args.length) {
+                tolerance = Double.parseDouble(args[++i]) / 100;
+            } else if (args[i].equals("-baseline") && i + 1 < args.length) {
+                baselinePath = args[++i];
+            } else if (args[i].equals("-save") && i + 1 < args.length) {
+                savePath = args[++i];
+            } else {
+                searchOptions.add(args[i]);
+            }
+        }
+        if (corpus.isEmpty())
+            corpus.addAll(Arrays.asList(DEFAULT_CORPUS));
+        for (String algorithm : algorithms) {
+            if (!SolverOptions.isAlgorithm(algorithm)) {
+                System.out.println("Unknown algorithm: " + algorithm);
+                System.exit(1);
+            }
+        }
+
+        try {
+            List<BatchSolver.Level> levels = loadCorpus(corpus);
+            Map<String, SolveResult> baseline = baselinePath == null ? null : loadResults(new File(baselinePath));
+            BenchmarkRunner runner = new BenchmarkRunner(algorithms, searchOptions, repeat, tolerance);
+            List<SolveResult> results = runner.run(levels);
+            if (savePath != null) {
+                saveResults(results, new File(savePath));
+                System.out.println("Results saved to " + savePath);
+            }
+            if (baseline != null) {
+                List<String> regressions = runner.compare(baseline, results);
+                for (String regression : regressions)
+                    System.out.println("REGRESSION " + regression);
+                System.out.println(regressions.size() + " regressions against " + baselinePath
+                        + " (tolerance " + Math.round(tolerance * 100) + "%)");
+                if (!regressions.isEmpty())
+                    System.exit(1);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Benchmark failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Loads the levels of the corpus, named by their directory and file.
+     *
+     * @param paths The corpus directories and collection files
+     * @return The levels
+     * @throws IOException If a level cannot be read
+     */
+    private static List<BatchSolver.Level> loadCorpus(List<String> paths) throws IOException {
+        List<BatchSolver.Level> levels = new ArrayList<BatchSolver.Level>();
+        for (String path : paths) {
+            File file = new File(path);
+            String prefix = file.isDirectory() ? file.getName() + "/" : "";
+            for (BatchSolver.Level level : BatchSolver.loadLevels(file))
+                levels.add(new BatchSolver.Level(prefix + level.getName(), level.getBoard()));
+        }
+        return levels;
+    }
+
+    /**
+     * Solves every level with every algorithm, printing each result.
+     *
+     * @param levels The levels
+     * @return The best result of each level and algorithm
+     */
+    public List<SolveResult> run(List<BatchSolver.Level> levels) {
+        List<SolveResult> results = new ArrayList<SolveResult>();
+        System.out.println(String.format("%-36s %-4s %-11s %10s %10s %8s %10s %10s",
+                "level", "alg", "status", "nodes", "nodes/s", "millis", "heap MB", "peak fringe"));
+        try (HeapSampler sampler = new HeapSampler(5)) {
+            for (BatchSolver.Level level : levels) {
+                for (String algorithm : algorithms) {
+                    SolveResult result = solve(level, algorithm, sampler);
+                    results.add(result);
+                    System.out.println(String.format("%-36s %-4s %-11s %10d %10d %8d %10d %10d",
+                            level.getName(), algorithm, result.getStatus(), result.getNodesExplored(),
+                            result.getNodesPerSecond(), result.getElapsedMillis(),
+                            result.getPeakHeapBytes() >> 20, result.getPeakFringe()));
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Solves a level repeatedly and keeps the best time and heap use.
+     *
+     * @param level     The level
+     * @param algorithm The algorithm flag
+     * @param sampler   The heap sampler
+     * @return The combined result
+     */
+    private SolveResult solve(BatchSolver.Level level, String algorithm, HeapSampler sampler) {
+        SolverOptions options = new SolverOptions(algorithm);
+        String[] args = searchOptions.toArray(new String[0]);
+        for (int i = 0; i < args.length; i++) {
+            int last = options.parseOption(args, i);
+            if (last < 0)
+                throw new IllegalArgumentException("Unknown search parameter: " + args[i]);
+            i = last;
+        }
+
+        SolveResult best = null;
+        long bestMillis = Long.MAX_VALUE;
+        long bestHeap = Long.MAX_VALUE;
+        for (int run = 0; run < repeat; run++) {
+            // Start every run from a collected heap so peaks are comparable
+            System.gc();
+            AbstractSolver solver = options.createSolver(level.getBoard());
+            SolveResult result = SolveResult.solve(level.getName(), algorithm, solver,
+                    options.getTimeoutMillis(), run + 1, sampler);
+            if (best == null)
+                best = result;
+            bestMillis = Math.min(bestMillis, result.getElapsedMillis());
+            bestHeap = Math.min(bestHeap, result.getPeakHeapBytes());
+        }
+        return new SolveResult(best.getLevel(), algorithm, best.getStatus(), best.getSolution(),
+                best.getNodesExplored(), best.getFringe(), best.getPeakFringe(), bestMillis, bestHeap,
+                best.getTimeoutMillis(), repeat);
+    }
+
+    /**
+     * Compares results against a baseline.
+     *
+     * @param baseline The baseline results by level and algorithm
+     * @param results  The new results
+     * @return A description of each regression
+     */
+    public List<String> compare(Map<String, SolveResult> baseline, List<SolveResult> results) {
+        List<String> regressions = new ArrayList<String>();
+        for (SolveResult result : results) {
+            SolveResult base = baseline.get(key(result));
+            if (base == null)
+                continue;
+            String name = result.getLevel() + " " + result.getAlgorithm();
+            if (base.getStatus() == SolveResult.Status.SOLVED && result.getStatus() != SolveResult.Status.SOLVED) {
+                regressions.add(name + ": status " + base.getStatus() + " -> " + result.getStatus());
+                continue;
+            }
+            // A timed out search says nothing about the other metrics
+            if (base.getStatus() == SolveResult.Status.TIMEOUT || result.getStatus() == SolveResult.Status.TIMEOUT)
+                continue;
+            check(regressions, name, "nodes", base.getNodesExplored(), result.getNodesExplored(), 0);
+            check(regressions, name, "peak fringe", base.getPeakFringe(), result.getPeakFringe(), 0);
+            check(regressions, name, "millis", base.getElapsedMillis(), result.getElapsedMillis(), MIN_MILLIS_DELTA);
+            check(regressions, name, "peak heap bytes", base.getPeakHeapBytes(), result.getPeakHeapBytes(),
+                    MIN_HEAP_DELTA);
+        }
+        return regressions;
+    }
+
+    /**
+     * Records a regression if a metric grew by more than the tolerance and
+     * the noise floor.
+     *
+     * @param regressions The regressions found so far
+     * @param name        The level and algorithm
+     * @param metric      The metric name
+     * @param base        The baseline value
+     * @param value       The new value
+     * @param minDelta    The smallest increase that is not noise
+     */
+    private void check(List<String> regressions, String name, String metric, long base, long value,
+            long minDelta) {
+        if (value > base * (1 + tolerance) && value - base > minDelta) {
+            String change = base == 0 ? "" : String.format(" (+%.1f%%)", 100.0 * (value - base) / base);
+            regressions.add(name + ": " + metric + " " + base + " -> " + value + change);
+        }
+    }
+
+    /**
+     * Loads results from a CSV file written by {@link #saveResults}.
+     *
+     * @param file The CSV file
+     * @return The results by level and algorithm
+     * @throws IOException If the file cannot be read
+     */
+    private static Map<String, SolveResult> loadResults(File file) throws IOException {
+        Map<String, SolveResult> results = new HashMap<String, SolveResult>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line = reader.readLine();
+            if (line == null || !line.equals(SolveResult.csvHeader()))
+                throw new IOException(file + " is not a benchmark result file");
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    SolveResult result = SolveResult.fromCsv(line);
+                    results.put(key(result), result);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Saves results as CSV.
+     *
+     * @param results The results
+     * @param file    The CSV file
+     * @throws IOException If the file cannot be written
+     */
+    private static void saveResults(List<SolveResult> results, File file) throws IOException {
+        try (PrintWriter out = new PrintWriter(new FileWriter(file))) {
+            out.println(SolveResult.csvHeader());
+            for (SolveResult result : results)
+                out.println(result.toCsv());
+        }
+    }
+
+    /**
+     * Gets the key of a result in a baseline.
+     */
+    private static String key(SolveResult result) {
+        return result.getLevel() + " " + result.getAlgorithm();
+    }
+}
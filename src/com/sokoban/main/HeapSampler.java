@@ -0,0 +1,91 @@
+package com.sokoban.main;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Samples heap usage on a background thread to record the peak heap use while
+ * each solve runs. With several solves running at once, each one sees the
+ * peak of the whole JVM during its run.
+ */
+public class HeapSampler implements AutoCloseable {
+    private final MemoryMXBean memory;
+    private final Set<Tracker> active;
+    private final Thread thread;
+    private volatile boolean running;
+
+    /**
+     * Starts sampling heap usage.
+     *
+     * @param intervalMillis The time between samples in milliseconds
+     */
+    public HeapSampler(final long intervalMillis) {
+        memory = ManagementFactory.getMemoryMXBean();
+        active = ConcurrentHashMap.newKeySet();
+        running = true;
+        thread = new Thread(() -> {
+            while (running) {
+                long used = heapUsed();
+                for (Tracker tracker : active)
+                    tracker.peak.accumulate(used);
+                try {
+                    Thread.sleep(intervalMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "heap-sampler");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Starts tracking the peak heap use of a solve.
+     *
+     * @return The tracker to pass to {@link #stop(Tracker)}
+     */
+    public Tracker start() {
+        Tracker tracker = new Tracker();
+        tracker.peak.accumulate(heapUsed());
+        active.add(tracker);
+        return tracker;
+    }
+
+    /**
+     * Stops tracking a solve.
+     *
+     * @param tracker The tracker returned by {@link #start()}
+     * @return The peak heap use in bytes while the solve ran
+     */
+    public long stop(Tracker tracker) {
+        active.remove(tracker);
+        tracker.peak.accumulate(heapUsed());
+        return tracker.peak.get();
+    }
+
+    /**
+     * Stops the sampling thread.
+     */
+    @Override
+    public void close() {
+        running = false;
+        thread.interrupt();
+    }
+
+    /**
+     * @return The heap currently in use in bytes
+     */
+    private long heapUsed() {
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * The peak heap use seen during one solve.
+     */
+    public static class Tracker {
+        private final LongAccumulator peak = new LongAccumulator(Math::max, 0);
+    }
+}
@@ -0,0 +1,150 @@
+package com.sokoban.main;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sokoban.util.LevelGenerator;
+
+/**
+ * Writes sweeps of generated levels over sizes and box counts, to be solved
+ * with -batch or measured with -bench.
+ *
+ * Every combination of size and box count gets a number of levels with
+ * consecutive seeds, so a sweep is reproduced exactly by the same arguments.
+ * The levels are written as one XSB collection, or as a directory with one
+ * file per level in the original input format, named by size, box count and
+ * seed.
+ */
+public class LevelGeneratorRunner {
+    /**
+     * Generates levels from the command line arguments:
+     * -generate [-size WxH[,WxH...]] [-boxes n[,n...]] [-count n] [-seed s]
+     * [-format xsb|txt] [-o path]
+     *
+     * @param args The command line arguments
+     */
+    public static void parseArguments(String[] args) {
+        List<int[]> sizes = new ArrayList<int[]>();
+        List<Integer> boxCounts = new ArrayList<Integer>();
+        int count = 1;
+        long seed = 1;
+        String format = "xsb";
+        String outputPath = null;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals("-size") && i + 1 < args.length) {
+                    for (String size : args[++i].split(","))
+                        sizes.add(parseSize(size));
+                } else if (args[i].equals("-boxes") && i + 1 < args.length) {
+                    for (String boxes : args[++i].split(","))
+                        boxCounts.add(Integer.parseInt(boxes));
+                } else if (args[i].equals("-count") && i + 1 < args.length) {
+                    count = Math.max(1, Integer.parseInt(args[++i]));
+                } else if (args[i].equals("-seed") && i + 1 < args.length) {
+                    seed = Long.parseLong(args[++i]);
+                } else if (args[i].equals("-format") && i + 1 < args.length) {
+                    format = args[++i];
+                } else if (args[i].equals("-o") && i + 1 < args.length) {
+                    outputPath = args[++i];
+                } else {
+                    System.out.println("Unknown option " + args[i]);
+                    return;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid size or number: " + e.getMessage());
+            return;
+        }
+        if (!format.equals("xsb") && !format.equals("txt")) {
+            System.out.println("Unknown format " + format + ", expected xsb or txt");
+            return;
+        }
+        if (sizes.isEmpty())
+            sizes.add(new int[] { 20, 20 });
+        if (boxCounts.isEmpty())
+            boxCounts.add(4);
+        if (outputPath == null)
+            outputPath = format.equals("xsb") ? "generated.xsb" : "generated";
+
+        try {
+            int written = format.equals("xsb") ? writeCollection(new File(outputPath), sizes, boxCounts, count, seed)
+                    : writeDirectory(new File(outputPath), sizes, boxCounts, count, seed);
+            System.out.println("Wrote " + written + " levels to " + outputPath);
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Generation failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Parses a size such as 40x20.
+     *
+     * @param size The size, columns first
+     * @return The columns and rows
+     * @throws IllegalArgumentException If the size is malformed
+     */
+    static int[] parseSize(String size) {
+        String[] parts = size.toLowerCase().split("x");
+        if (parts.length != 2)
+            throw new IllegalArgumentException(size);
+        return new int[] { Integer.parseInt(parts[0]), Integer.parseInt(parts[1]) };
+    }
+
+    /**
+     * Writes every level of a sweep to one XSB collection.
+     *
+     * @return The number of levels written
+     * @throws IOException If the file cannot be written
+     */
+    private static int writeCollection(File file, List<int[]> sizes, List<Integer> boxCounts, int count,
+            long seed) throws IOException {
+        int written = 0;
+        try (Writer out = new FileWriter(file)) {
+            for (int[] size : sizes) {
+                for (int boxes : boxCounts) {
+                    for (int i = 0; i < count; i++) {
+                        List<String> rows = new LevelGenerator(size[0], size[1], boxes, seed + i).generate();
+                        out.write(LevelGenerator.toXsb(name(size, boxes, seed + i), rows));
+                        written++;
+                    }
+                }
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Writes every level of a sweep to its own file in a directory.
+     *
+     * @return The number of levels written
+     * @throws IOException If a file cannot be written
+     */
+    private static int writeDirectory(File directory, List<int[]> sizes, List<Integer> boxCounts, int count,
+            long seed) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Cannot create directory " + directory);
+        int written = 0;
+        for (int[] size : sizes) {
+            for (int boxes : boxCounts) {
+                for (int i = 0; i < count; i++) {
+                    List<String> rows = new LevelGenerator(size[0], size[1], boxes, seed + i).generate();
+                    try (Writer out = new FileWriter(new File(directory, name(size, boxes, seed + i) + ".txt"))) {
+                        out.write(LevelGenerator.toOriginalFormat(rows));
+                    }
+                    written++;
+                }
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Names a generated level by its parameters, e.g. gen_40x20_b6_s1.
+     */
+    private static String name(int[] size, int boxes, long seed) {
+        return "gen_" + size[0] + "x" + size[1] + "_b" + boxes + "_s" + seed;
+    }
+}
@@ -1,26 +1,34 @@
 package com.sokoban.main;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
 
-import com.sokoban.heuristic.BoxGoalHeuristic;
-import com.sokoban.heuristic.ImprovedManhattanHeuristic;
-import com.sokoban.heuristic.ManhattanHeuristic;
 import com.sokoban.model.BoardState;
-import com.sokoban.model.NoSolutionException;
 import com.sokoban.solver.AStarSolver;
 import com.sokoban.solver.AbstractSolver;
-import com.sokoban.solver.BFSSolver;
-import com.sokoban.solver.DFSSolver;
-import com.sokoban.solver.GreedyBFSSolver;
-import com.sokoban.solver.UniformCostSolver;
+import com.sokoban.solver.HillClimbingSolver;
+import com.sokoban.solver.IDDFSSolver;
+import com.sokoban.solver.MonteCarloSolver;
+import com.sokoban.solver.SearchResult;
+import com.sokoban.solver.SolutionOptimizer;
+import com.sokoban.solver.TraceRecorder;
+import com.sokoban.util.BitstateHashSet;
+import com.sokoban.util.SolutionCache;
 
 /**
  * Command line interface for solving Sokoban with:
  * - BFS
  * - DFS
+ * - Iterative deepening DFS
  * - Uniform cost search
  * - Greedy best first search
  * - A* search
+ * - Enforced hill climbing
+ * - Monte Carlo tree search
  *
  * Enhanced with:
  * - Deadlock detection
@@ -31,6 +39,26 @@ import com.sokoban.solver.UniformCostSolver;
 public class SokobanSolver {
     public static void parseArguments(String[] args) {
         try {
+            if (args.length > 0 && args[0].equals("-batch")) {
+                BatchSolver.parseArguments(args);
+                return;
+            }
+            if (args.length > 0 && args[0].equals("-bench")) {
+                BenchmarkRunner.parseArguments(args);
+                return;
+            }
+            if (args.length > 0 && args[0].equals("-generate")) {
+                LevelGeneratorRunner.parseArguments(args);
+                return;
+            }
+            if (args.length > 0 && args[0].equals("-trace-summary")) {
+                TraceSummary.parseArguments(args);
+                return;
+            }
+            if (args.length > 0 && args[0].equals("-serve")) {
+                SolverDaemon.parseArguments(args);
+                return;
+            }
             if (args.length < 2) {
                 printUsage();
                 return;
@@ -39,79 +67,381 @@ public class SokobanSolver {
             String flag = args[0];
             String puzzlePath = args[1];
             BoardState initialBoard = BoardState.parseBoardInput(puzzlePath);
-            AbstractSolver solver = null;
             System.out.println(initialBoard);
 
-            if (flag.equals("-b")) {
-                solver = new BFSSolver(initialBoard);
-            } else if (flag.equals("-d")) {
-                solver = new DFSSolver(initialBoard);
-            } else if (flag.equals("-u")) {
-                solver = new UniformCostSolver(initialBoard);
-            } else if (flag.equals("-ab")) {
-                solver = new AStarSolver(initialBoard, new BoxGoalHeuristic());
-            } else if (flag.equals("-gb")) {
-                solver = new GreedyBFSSolver(initialBoard, new BoxGoalHeuristic());
-            } else if (flag.equals("-am")) {
-                solver = new AStarSolver(initialBoard, new ManhattanHeuristic());
-            } else if (flag.equals("-gm")) {
-                solver = new GreedyBFSSolver(initialBoard, new ManhattanHeuristic());
-            } else if (flag.equals("-ai")) {
-                solver = new AStarSolver(initialBoard, new ImprovedManhattanHeuristic());
-            } else if (flag.equals("-gi")) {
-                solver = new GreedyBFSSolver(initialBoard, new ImprovedManhattanHeuristic());
-            } else {
+            if (!SolverOptions.isAlgorithm(flag)) {
                 System.out.println("Invalid command");
                 printUsage();
                 return;
             }
 
-            if (solver != null) {
-                // Set timeout (default 30 seconds, can be overridden with -t flag)
-                long timeout = 30000;
-                if (args.length > 2 && args[2].equals("-t") && args.length > 3) {
-                    try {
-                        timeout = Long.parseLong(args[3]) * 1000; // Convert seconds to milliseconds
-                    } catch (NumberFormatException e) {
-                        System.out.println("Invalid timeout value, using default 30 seconds");
-                    }
+            // Timeout defaults to 30 seconds, can be overridden with -t flag
+            SolverOptions options = new SolverOptions(flag);
+            String cachePath = null;
+            String metricsPath = null;
+            long progressMillis = 0;
+            String checkpointPath = null;
+            long checkpointMillis = 0;
+            String resumePath = null;
+            String tracePath = null;
+            int traceSample = 1;
+            for (int i = 2; i < args.length; i++) {
+                if (args[i].equals("-c") && i + 1 < args.length) {
+                    cachePath = args[++i];
+                    continue;
                 }
-                solver.setTimeout(timeout);
-
+                if (args[i].equals("-metrics") && i + 1 < args.length) {
+                    metricsPath = args[++i];
+                    continue;
+                }
+                if (args[i].equals("-checkpoint") && i + 1 < args.length) {
+                    checkpointPath = args[++i];
+                    continue;
+                }
+                if (args[i].equals("-resume") && i + 1 < args.length) {
+                    resumePath = args[++i];
+                    continue;
+                }
+                if (args[i].equals("-trace") && i + 1 < args.length) {
+                    tracePath = args[++i];
+                    continue;
+                }
+                // Numeric values are parsed before the index moves past them,
+                // so a bad value is reported against its option
                 try {
-                    String solution = solver.search();
-                    int nodesExplored = solver.getNodesExplored();
-                    int previouslySeen = solver.getPreviouslySeen();
-                    int queueLength = solver.getFringeLength();
-                    int visitedLength = solver.getVisitedLength();
-                    long timeElapsed = solver.getElapsedTimeMillis();
-                    System.out.println("Solution: " + solution);
-                    System.out.println("Nodes explored: " + nodesExplored);
-                    System.out.println("Previously seen: " + previouslySeen);
-                    System.out.println("Fringe: " + queueLength);
-                    System.out.println("Explored set: " + visitedLength);
-                    System.out.println("Millis elapsed: " + timeElapsed);
-                } catch (NoSolutionException e) {
-                    if (e.getMessage() != null && e.getMessage().contains("timed out")) {
-                        System.out.println(e.getMessage());
+                    if (args[i].equals("-progress") && i + 1 < args.length) {
+                        progressMillis = (long) (Double.parseDouble(args[i + 1]) * 1000);
+                        i++;
+                    } else if (args[i].equals("-checkpoint-every") && i + 1 < args.length) {
+                        checkpointMillis = (long) (Double.parseDouble(args[i + 1]) * 1000);
+                        i++;
+                    } else if (args[i].equals("-trace-sample") && i + 1 < args.length) {
+                        traceSample = Integer.parseInt(args[i + 1]);
+                        i++;
                     } else {
-                        System.out.println("Solution does not exist");
+                        int last = options.parseOption(args, i);
+                        if (last >= 0)
+                            i = last;
                     }
+                } catch (NumberFormatException e) {
+                    System.out.println("Invalid value for " + args[i] + ", using the default");
+                    i++;
                 }
             }
-        } catch (IOException e) {
+
+            // A cached solution is returned without creating a solver
+            SolutionCache cache = cachePath == null ? null : openCache(cachePath);
+            if (cache != null && printCachedSolution(cache, initialBoard))
+                return;
+            AbstractSolver solver = options.createSolver(initialBoard);
+            if (progressMillis > 0)
+                solver.getMetrics().setProgressListener(progressMillis,
+                        metrics -> System.out.println("Progress " + metrics.toProgressString()));
+            if ((checkpointPath != null || resumePath != null) && !solver.supportsCheckpoints()) {
+                System.out.println(options.getAlgorithm() + " does not support checkpoints");
+                return;
+            }
+            if (tracePath != null && !solver.supportsTracing()) {
+                System.out.println(options.getAlgorithm() + " does not support tracing");
+                return;
+            }
+            if (!setUpCheckpoints(solver, checkpointPath, checkpointMillis, resumePath))
+                return;
+            TraceRecorder trace = null;
+            if (tracePath != null && (trace = openTrace(solver, tracePath, traceSample)) == null)
+                return;
+
+            SearchResult result;
+            try {
+                result = solver.solve();
+            } finally {
+                if (trace != null)
+                    closeTrace(trace, tracePath);
+            }
+            if (result.isSolved()) {
+                String solution = result.getSolution();
+                SolutionOptimizer.Result optimized = null;
+                if (options.getOptimizeMillis() > 0) {
+                    optimized = new SolutionOptimizer(initialBoard, solver.getLevelAnalysis())
+                            .optimize(solution, options.getOptimizeMillis());
+                    solution = optimized.getSolution();
+                }
+                System.out.println(solver.getFinalState());
+                int nodesExplored = solver.getNodesExplored();
+                int previouslySeen = solver.getPreviouslySeen();
+                int queueLength = solver.getFringeLength();
+                int visitedLength = solver.getVisitedLength();
+                long timeElapsed = solver.getElapsedTimeMillis();
+                System.out.println("Solution: " + solution);
+                System.out.println("Nodes explored: " + nodesExplored);
+                System.out.println("Previously seen: " + previouslySeen);
+                System.out.println("Fringe: " + queueLength);
+                if (options.isPartialExpansion() && solver instanceof AStarSolver)
+                    System.out.println("Re-queued: " + ((AStarSolver) solver).getRequeued());
+                System.out.println("Explored set: " + visitedLength);
+                System.out.println("Millis elapsed: " + timeElapsed);
+                printBitstate(solver);
+                printIterations(solver);
+                printRollouts(solver);
+                printHillClimbing(solver);
+                if (optimized != null)
+                    printOptimization(optimized);
+                if (options.isGoalRoomMacros())
+                    System.out.println("Goal rooms: " + solver.getGoalRoomCount());
+                if (options.isTunnelMacros() || options.isGoalRoomMacros())
+                    System.out.println("Macro moves: " + solver.getMacroMovesApplied());
+                if (cache != null)
+                    storeSolution(cache, initialBoard, solution);
+            } else {
+                printIterations(solver);
+                printRollouts(solver);
+                printHillClimbing(solver);
+                printBitstate(solver);
+                if (result.getStatus() == SearchResult.Status.TIMEOUT) {
+                    System.out.println(result.getMessage());
+                    printBestState(result);
+                } else {
+                    System.out.println("Solution does not exist");
+                }
+            }
+            if (solver.getCheckpointError() != null)
+                System.out.println("Periodic checkpoints: " + solver.getCheckpointError());
+            if (metricsPath != null)
+                writeMetrics(solver, metricsPath);
+        } catch (NoSuchFileException e) {
             System.out.println("Puzzle file not found");
+        } catch (IOException e) {
+            System.out.println("Could not read puzzle: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Resumes the search from a checkpoint and enables checkpoints, as
+     * requested.
+     *
+     * @param solver           The solver
+     * @param checkpointPath   The checkpoint file to write, or null
+     * @param checkpointMillis The time between periodic checkpoints, or 0
+     * @param resumePath       The checkpoint file to resume from, or null
+     * @return False if the search should not run
+     */
+    private static boolean setUpCheckpoints(AbstractSolver solver, String checkpointPath, long checkpointMillis,
+            String resumePath) {
+        try {
+            if (resumePath != null) {
+                solver.resume(Paths.get(resumePath));
+                System.out.println("Resumed from " + resumePath + ": " + solver.getVisitedLength()
+                        + " explored, " + solver.getFringeLength() + " in fringe");
+            }
+            if (checkpointPath != null)
+                solver.setCheckpoint(Paths.get(checkpointPath), checkpointMillis);
+            return true;
+        } catch (NoSuchFileException e) {
+            System.out.println("Checkpoint not found: " + resumePath);
+        } catch (IOException e) {
+            System.out.println("Could not resume from " + resumePath + ": " + e.getMessage());
+        } catch (IllegalStateException e) {
+            System.out.println(e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Opens a trace file and attaches it to the solver.
+     *
+     * @param solver      The solver
+     * @param tracePath   The trace file to write
+     * @param sampleEvery Keep one record in this many of each kind
+     * @return The recorder, or null if the search should not run
+     */
+    private static TraceRecorder openTrace(AbstractSolver solver, String tracePath, int sampleEvery) {
+        try {
+            TraceRecorder trace = new TraceRecorder(Paths.get(tracePath), sampleEvery);
+            solver.setTrace(trace);
+            return trace;
+        } catch (NoSuchFileException e) {
+            System.out.println("Directory of trace not found: " + tracePath);
+        } catch (IOException e) {
+            System.out.println("Could not open trace " + tracePath + ": " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Flushes and closes a trace, reporting how many records it holds.
+     *
+     * @param trace     The recorder
+     * @param tracePath The trace file
+     */
+    private static void closeTrace(TraceRecorder trace, String tracePath) {
+        try {
+            trace.close();
+            System.out.println("Trace: " + trace.getWritten() + " records written to " + tracePath + " ("
+                    + trace.getDropped() + " dropped)");
+        } catch (UncheckedIOException e) {
+            System.out.println("Could not write trace " + tracePath + ": " + e.getCause().getMessage());
         }
     }
 
+    /**
+     * Prints the most promising state reached by an unsolved search.
+     *
+     * @param result The search result
+     */
+    private static void printBestState(SearchResult result) {
+        if (result.getBestState() == null)
+            return;
+        System.out.println("Best partial state (estimate " + result.getBestEstimate() + "):");
+        System.out.println(result.getBestState());
+        if (result.getBestMoves() != null)
+            System.out.println("Partial moves: " + result.getBestMoves());
+    }
+
+    /**
+     * Writes the search metrics as JSON.
+     *
+     * @param solver The solver that ran the search
+     * @param path   The output file
+     */
+    private static void writeMetrics(AbstractSolver solver, String path) {
+        try {
+            Files.write(Paths.get(path), (solver.getMetrics().toJson() + "\n").getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.out.println("Could not write metrics: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Opens the solution cache.
+     *
+     * @param path The cache file
+     * @return The cache, or null if it cannot be opened
+     */
+    private static SolutionCache openCache(String path) {
+        try {
+            return new SolutionCache(Paths.get(path), SolutionCache.DEFAULT_MAX_ENTRIES);
+        } catch (IOException e) {
+            System.out.println("Could not open solution cache: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Prints the cached solution of a level, if there is one.
+     *
+     * @param cache        The solution cache
+     * @param initialBoard The initial board state
+     * @return True if a cached solution was printed
+     */
+    private static boolean printCachedSolution(SolutionCache cache, BoardState initialBoard) {
+        long start = System.currentTimeMillis();
+        String moves;
+        try {
+            moves = cache.get(initialBoard);
+        } catch (IOException e) {
+            System.out.println("Could not read solution cache: " + e.getMessage());
+            return false;
+        }
+        if (moves == null)
+            return false;
+        System.out.println(SolutionCache.replay(initialBoard, moves));
+        System.out.println("Solution: " + String.join(", ", moves.split("")));
+        System.out.println("Solution cache: hit");
+        System.out.println("Millis elapsed: " + (System.currentTimeMillis() - start));
+        return true;
+    }
+
+    /**
+     * Stores a solution in the cache.
+     *
+     * @param cache        The solution cache
+     * @param initialBoard The initial board state
+     * @param solution     The comma delimited solution
+     */
+    private static void storeSolution(SolutionCache cache, BoardState initialBoard, String solution) {
+        try {
+            cache.put(initialBoard, solution.replace(", ", ""));
+        } catch (IOException e) {
+            System.out.println("Could not write solution cache: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Prints the depth reached by each iteration of an iterative deepening
+     * search.
+     *
+     * @param solver The solver that ran the search
+     */
+    private static void printIterations(AbstractSolver solver) {
+        if (!(solver instanceof IDDFSSolver))
+            return;
+        for (IDDFSSolver.Iteration iteration : ((IDDFSSolver) solver).getIterations()) {
+            System.out.println("Iteration bound " + iteration.getBound()
+                    + ": depth reached " + iteration.getDepthReached()
+                    + ", nodes " + iteration.getNodes());
+        }
+    }
+
+    /**
+     * Prints the number and rate of rollouts of a Monte Carlo tree search.
+     *
+     * @param solver The solver that ran the search
+     */
+    private static void printRollouts(AbstractSolver solver) {
+        if (!(solver instanceof MonteCarloSolver))
+            return;
+        MonteCarloSolver monteCarlo = (MonteCarloSolver) solver;
+        System.out.println("Rollouts: " + monteCarlo.getRollouts() + " (" + monteCarlo.getRolloutsPerSecond()
+                + " per second)");
+    }
+
+    /**
+     * Prints how an enforced hill climbing search reached its result.
+     *
+     * @param solver The solver that ran the search
+     */
+    private static void printHillClimbing(AbstractSolver solver) {
+        if (!(solver instanceof HillClimbingSolver))
+            return;
+        HillClimbingSolver climber = (HillClimbingSolver) solver;
+        System.out.println("Improvements: " + climber.getImprovements() + ", restarts: " + climber.getRestarts()
+                + (climber.hasFallenBack() ? ", fell back to best-first search" : ""));
+    }
+
+    /**
+     * Prints the length of a solution before and after optimization.
+     *
+     * @param optimized The result of the optimization
+     */
+    private static void printOptimization(SolutionOptimizer.Result optimized) {
+        System.out.println("Optimized: " + optimized.getMovesBefore() + " moves, " + optimized.getPushesBefore()
+                + " pushes -> " + optimized.getMovesAfter() + " moves, " + optimized.getPushesAfter()
+                + " pushes (" + optimized.getPasses() + " passes, " + optimized.getElapsedMillis() + " ms)");
+    }
+
+    /**
+     * Prints the fill and estimated false-positive rate of the bitstate table.
+     *
+     * @param solver The solver that ran the search
+     */
+    private static void printBitstate(AbstractSolver solver) {
+        BitstateHashSet bitstate = solver.getBitstate();
+        if (bitstate == null)
+            return;
+        System.out.println("Bitstate fill: " + String.format("%.6f", bitstate.getFillRatio()));
+        System.out.println("Bitstate false-positive rate: "
+                + String.format("%.3e", bitstate.getEstimatedFalsePositiveRate()));
+    }
+
     /**
      * Prints usage information.
      */
     private static void printUsage() {
-        System.out.println("Usage: java -jar SokobanSolver.jar [-option] [Sokoban input file] [-t timeout]");
+        System.out.println("Usage: java -jar SokobanSolver.jar [-option] [Sokoban input file] [-t timeout] [-m] [-r] [-pe] [-bs size [-bk k]] [-maxdepth n] [-sidecar directory] [-opt seconds] [-c cache file] [-progress seconds] [-metrics file] [-checkpoint file [-checkpoint-every seconds]] [-resume file] [-trace file [-trace-sample n]]");
         System.out.println("Options:");
         System.out.println("  -b      Breadth-first search");
         System.out.println("  -d      Depth-first search");
+        System.out.println("  -id     Iterative deepening depth-first search");
         System.out.println("  -u      Uniform-cost search (move = 1, push = 2)");
         System.out.println("  -gb     Greedy best-first search with number of boxes on goal heuristic");
         System.out.println("  -gm     Greedy best-first search with Manhattan distances heuristic");
@@ -119,8 +449,45 @@ public class SokobanSolver {
         System.out.println("  -ab     AStar with number of boxes on goal heuristic");
         System.out.println("  -am     AStar with goals and boxes Manhattan distances heuristic");
         System.out.println("  -ai     AStar with improved Manhattan heuristic");
+        System.out.println("  -hc     Enforced hill climbing over pushes with improved Manhattan heuristic");
+        System.out.println("  -mc     Monte Carlo tree search over pushes with improved Manhattan heuristic;");
+        System.out.println("          runs until the timeout and returns the shortest solution found");
         System.out.println("Optional timeout parameter:");
         System.out.println("  -t      Followed by timeout in seconds (default: 30)");
+        System.out.println("Optional search parameters:");
+        System.out.println("  -m      Enable tunnel macro moves");
+        System.out.println("  -r      Enable goal-room macro moves");
+        System.out.println("  -pe     Use partial expansion with the AStar options (f = g + h)");
+        System.out.println("  -bs     Followed by a table size (e.g. 256M) for approximate bitstate duplicate detection");
+        System.out.println("  -bk     Followed by the number of hash functions for -bs (default: 3)");
+        System.out.println("  -maxdepth  Followed by the largest depth bound tried by -id (default: no limit)");
+        System.out.println("  -sidecar  Followed by a directory of level analysis files, reused by later runs");
+        System.out.println("  -opt    Followed by seconds to spend shortening the solution found");
+        System.out.println("Optional solution cache:");
+        System.out.println("  -c      Followed by a cache file; solved levels are stored and returned instantly next time");
+        System.out.println("Optional search metrics:");
+        System.out.println("  -progress  Followed by seconds between progress reports during the search");
+        System.out.println("  -metrics   Followed by a file to write detailed search metrics to as JSON");
+        System.out.println("Optional checkpoints (not with -id, -hc, -mc or -bs):");
+        System.out.println("  -checkpoint        Followed by a file the search state is saved to on timeout");
+        System.out.println("  -checkpoint-every  Followed by seconds between periodic checkpoints");
+        System.out.println("  -resume            Followed by a checkpoint file to continue the search from");
+        System.out.println("Optional search trace (not with -mc):");
+        System.out.println("  -trace         Followed by a file to record every expansion, duplicate and prune to");
+        System.out.println("  -trace-sample  Followed by n to keep one record in n of each kind (default: 1)");
+        System.out.println("Batch mode:");
+        System.out.println("  java -jar SokobanSolver.jar -batch [-option] [level directory or collection file]");
+        System.out.println("      [search parameters] [-w workers] [-o results.csv|results.jsonl]");
+        System.out.println("Benchmark against a baseline:");
+        System.out.println("  java -jar SokobanSolver.jar -bench [-corpus path]... [-a -b,-ai,...] [search parameters]");
+        System.out.println("      [-repeat n] [-tolerance percent] [-baseline file] [-save file]");
+        System.out.println("Generate solvable levels, e.g. for -bench -corpus:");
+        System.out.println("  java -jar SokobanSolver.jar -generate [-size WxH[,WxH...]] [-boxes n[,n...]] [-count n]");
+        System.out.println("      [-seed s] [-format xsb|txt] [-o path]");
+        System.out.println("Summarize a search trace:");
+        System.out.println("  java -jar SokobanSolver.jar -trace-summary [trace file] [-bins n]");
+        System.out.println("Solver service on localhost:");
+        System.out.println("  java -jar SokobanSolver.jar -serve [-p port] [-j workers] [-q queue size] [-cache levels]");
         System.out.println("Example:");
         System.out.println("  java -jar SokobanSolver.jar -ai puzzle.txt -t 15");
     }
@@ -0,0 +1,360 @@
+package com.sokoban.main;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sokoban.solver.AbstractSolver;
+import com.sokoban.solver.SearchResult;
+
+/**
+ * The outcome and statistics of solving one level.
+ */
+public class SolveResult {
+    /**
+     * How a solve ended.
+     */
+    public enum Status {
+        SOLVED, NO_SOLUTION, TIMEOUT, CANCELLED, ERROR
+    }
+
+    private final String level;
+    private final String algorithm;
+    private final Status status;
+    private final String solution;
+    private final int nodesExplored;
+    private final int fringe;
+    private final int peakFringe;
+    private final long elapsedMillis;
+    private final long peakHeapBytes;
+    private final long timeoutMillis;
+    private final int attempt;
+    // Why the solve failed, null unless the status is ERROR
+    private final String error;
+
+    /**
+     * Constructs a result.
+     *
+     * @param level         The level name
+     * @param algorithm     The algorithm flag
+     * @param status        How the solve ended
+     * @param solution      The moves (u, r, d, l without delimiters), or null
+     * @param nodesExplored The number of nodes explored
+     * @param fringe        The fringe size at the end of the search
+     * @param peakFringe    The largest fringe size during the search
+     * @param elapsedMillis The wall time in milliseconds
+     * @param peakHeapBytes The peak heap use in bytes
+     * @param timeoutMillis The timeout the solve ran with
+     * @param attempt       The attempt number, starting at 1
+     */
+    public SolveResult(String level, String algorithm, Status status, String solution,
+            int nodesExplored, int fringe, int peakFringe, long elapsedMillis, long peakHeapBytes,
+            long timeoutMillis, int attempt) {
+        this(level, algorithm, status, solution, nodesExplored, fringe, peakFringe, elapsedMillis, peakHeapBytes,
+                timeoutMillis, attempt, null);
+    }
+
+    /**
+     * Constructs a result with the cause of a failed solve.
+     *
+     * @param level         The level name
+     * @param algorithm     The algorithm flag
+     * @param status        How the solve ended
+     * @param solution      The moves (u, r, d, l without delimiters), or null
+     * @param nodesExplored The number of nodes explored
+     * @param fringe        The fringe size at the end of the search
+     * @param peakFringe    The largest fringe size during the search
+     * @param elapsedMillis The wall time in milliseconds
+     * @param peakHeapBytes The peak heap use in bytes
+     * @param timeoutMillis The timeout the solve ran with
+     * @param attempt       The attempt number, starting at 1
+     * @param error         Why the solve failed, or null
+     */
+    SolveResult(String level, String algorithm, Status status, String solution,
+            int nodesExplored, int fringe, int peakFringe, long elapsedMillis, long peakHeapBytes,
+            long timeoutMillis, int attempt, String error) {
+        this.level = level;
+        this.algorithm = algorithm;
+        this.status = status;
+        this.solution = solution;
+        this.nodesExplored = nodesExplored;
+        this.fringe = fringe;
+        this.peakFringe = peakFringe;
+        this.elapsedMillis = elapsedMillis;
+        this.peakHeapBytes = peakHeapBytes;
+        this.timeoutMillis = timeoutMillis;
+        this.attempt = attempt;
+        this.error = error;
+    }
+
+    /**
+     * Runs a configured solver and records how it ended.
+     *
+     * @param level         The level name
+     * @param algorithm     The algorithm flag
+     * @param solver        The solver, configured with the timeout
+     * @param timeoutMillis The timeout the solver runs with
+     * @param attempt       The attempt number, starting at 1
+     * @param sampler       The heap sampler
+     * @return The result
+     */
+    static SolveResult solve(String level, String algorithm, AbstractSolver solver, long timeoutMillis,
+            int attempt, HeapSampler sampler) {
+        HeapSampler.Tracker tracker = sampler.start();
+        long start = System.currentTimeMillis();
+        Status status;
+        String solution = null;
+        String error = null;
+        try {
+            SearchResult result = solver.solve();
+            status = Status.valueOf(result.getStatus().name());
+            if (result.isSolved())
+                solution = result.getSolution().replace(", ", "");
+        } catch (RuntimeException | OutOfMemoryError e) {
+            status = Status.ERROR;
+            error = e.toString();
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        long peak = sampler.stop(tracker);
+        return new SolveResult(level, algorithm, status, solution, solver.getNodesExplored(),
+                solver.getFringeLength(), solver.getPeakFringeLength(), elapsed, peak, timeoutMillis, attempt,
+                error);
+    }
+
+    /**
+     * Creates the result of a solve that failed before its search ran.
+     *
+     * @param level         The level name
+     * @param algorithm     The algorithm flag
+     * @param timeoutMillis The timeout the solve was given
+     * @param attempt       The attempt number, starting at 1
+     * @param cause         Why the solve failed
+     * @return The result
+     */
+    static SolveResult error(String level, String algorithm, long timeoutMillis, int attempt, Throwable cause) {
+        return new SolveResult(level, algorithm, Status.ERROR, null, 0, 0, 0, 0, 0, timeoutMillis, attempt,
+                cause.toString());
+    }
+
+    /**
+     * Gets the header line of the CSV format.
+     *
+     * @return The CSV header
+     */
+    public static String csvHeader() {
+        return "level,algorithm,status,moves,nodes,nodes_per_sec,fringe,peak_fringe,millis,peak_heap_bytes,timeout_millis,attempt,solution";
+    }
+
+    /**
+     * Formats this result as a CSV line.
+     *
+     * @return The CSV line
+     */
+    public String toCsv() {
+        return csvField(level) + "," + algorithm + "," + status + "," + getMoveCount() + ","
+                + nodesExplored + "," + getNodesPerSecond() + "," + fringe + "," + peakFringe + "," + elapsedMillis + "," + peakHeapBytes + ","
+                + timeoutMillis + "," + attempt + "," + (solution == null ? "" : solution);
+    }
+
+    /**
+     * Parses a result from a CSV line written by {@link #toCsv()}.
+     *
+     * @param line The CSV line
+     * @return The result
+     * @throws IllegalArgumentException If the line is not a result line
+     */
+    public static SolveResult fromCsv(String line) {
+        List<String> fields = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append(c);
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        if (fields.size() != 13)
+            throw new IllegalArgumentException("Not a result line: " + line);
+        try {
+            return new SolveResult(fields.get(0), fields.get(1), Status.valueOf(fields.get(2)),
+                    fields.get(12).isEmpty() ? null : fields.get(12),
+                    Integer.parseInt(fields.get(4)), Integer.parseInt(fields.get(6)),
+                    Integer.parseInt(fields.get(7)), Long.parseLong(fields.get(8)),
+                    Long.parseLong(fields.get(9)), Long.parseLong(fields.get(10)),
+                    Integer.parseInt(fields.get(11)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a result line: " + line, e);
+        }
+    }
+
+    /**
+     * Formats this result as a single-line JSON object. A failed solve also
+     * has the cause of the failure.
+     *
+     * @return The JSON line
+     */
+    public String toJson() {
+        return "{\"level\":" + jsonString(level)
+                + ",\"algorithm\":" + jsonString(algorithm)
+                + ",\"status\":\"" + status + "\""
+                + ",\"moves\":" + getMoveCount()
+                + ",\"nodes\":" + nodesExplored
+                + ",\"nodesPerSec\":" + getNodesPerSecond()
+                + ",\"fringe\":" + fringe
+                + ",\"peakFringe\":" + peakFringe
+                + ",\"millis\":" + elapsedMillis
+                + ",\"peakHeapBytes\":" + peakHeapBytes
+                + ",\"timeoutMillis\":" + timeoutMillis
+                + ",\"attempt\":" + attempt
+                + ",\"solution\":" + (solution == null ? "null" : jsonString(solution))
+                + (error == null ? "" : ",\"error\":" + jsonString(error)) + "}";
+    }
+
+    /**
+     * Quotes a CSV field if needed.
+     *
+     * @param value The field value
+     * @return The CSV field
+     */
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0)
+            return value;
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Quotes and escapes a JSON string.
+     *
+     * @param value The string
+     * @return The JSON string literal
+     */
+    static String jsonString(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * @return The level name
+     */
+    public String getLevel() {
+        return level;
+    }
+
+    /**
+     * @return Why the solve failed, or null if it did not
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * @return The algorithm flag
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @return How the solve ended
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return The moves (u, r, d, l without delimiters), or null if not solved
+     */
+    public String getSolution() {
+        return solution;
+    }
+
+    /**
+     * @return The number of moves in the solution
+     */
+    public int getMoveCount() {
+        return solution == null ? 0 : solution.length();
+    }
+
+    /**
+     * @return The number of nodes explored
+     */
+    public int getNodesExplored() {
+        return nodesExplored;
+    }
+
+    /**
+     * @return The fringe size at the end of the search
+     */
+    public int getFringe() {
+        return fringe;
+    }
+
+    /**
+     * @return The largest fringe size during the search
+     */
+    public int getPeakFringe() {
+        return peakFringe;
+    }
+
+    /**
+     * @return The number of nodes explored per second of wall time
+     */
+    public long getNodesPerSecond() {
+        return nodesExplored * 1000L / Math.max(1, elapsedMillis);
+    }
+
+    /**
+     * @return The wall time in milliseconds
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return The peak heap use in bytes
+     */
+    public long getPeakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+    /**
+     * @return The timeout the solve ran with
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * @return The attempt number, starting at 1
+     */
+    public int getAttempt() {
+        return attempt;
+    }
+}
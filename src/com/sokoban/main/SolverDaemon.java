@@ -0,0 +1,361 @@
+package com.sokoban.main;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.sokoban.model.BoardState;
+import com.sokoban.model.LevelReader;
+import com.sokoban.solver.AbstractSolver;
+import com.sokoban.solver.CancellationToken;
+import com.sokoban.util.LevelAnalysisCache;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A long-running solver service on a local HTTP port.
+ *
+ * Keeping one JVM alive keeps the JIT-compiled search code warm, and level
+ * analyses (macro detectors) are cached by level, so
+ * solving the same level again skips the precomputation.
+ *
+ * Endpoints, all answering with JSON:
+ * - POST /solve?options=-ai%20-t%2010&id=name with the level as the body.
+ *   The options are the command line search options, algorithm first; options
+ *   that read or write files on the server, such as -sidecar, are rejected.
+ *   Waits for the solve and answers with the result; 503 if the queue is
+ *   full. The level analysis and the solver are only built once a worker
+ *   takes the solve, so a burst of requests waits in the bounded queue.
+ * - POST /cancel?id=name stops a queued or running solve.
+ * - GET /status reports the queue and cache sizes.
+ *
+ * The server only binds to the loopback address.
+ */
+public class SolverDaemon {
+    // Options that would make the server read or write files of the client's
+    // choosing
+    private static final String[] FILE_OPTIONS = { "-sidecar", "-c", "-metrics", "-checkpoint",
+            "-checkpoint-every", "-resume", "-trace", "-trace-sample" };
+
+    private final HttpServer server;
+    private final ThreadPoolExecutor solvers;
+    private final ExecutorService handlers;
+    private final LevelAnalysisCache analyses;
+    private final Map<String, Job> jobs;
+    private final HeapSampler sampler;
+
+    /**
+     * Creates a solver service. Call {@link #start()} to begin serving.
+     *
+     * @param port        The local port, or 0 to pick a free one
+     * @param concurrency The number of solves run at once
+     * @param queueSize   The number of solves that may wait for a worker
+     * @param cacheSize   The number of level analyses kept
+     * @throws IOException If the port cannot be bound
+     */
+    public SolverDaemon(int port, int concurrency, int queueSize, int cacheSize) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        solvers = new ThreadPoolExecutor(concurrency, concurrency, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize));
+        handlers = Executors.newCachedThreadPool();
+        analyses = new LevelAnalysisCache(cacheSize);
+        jobs = new ConcurrentHashMap<String, Job>();
+        sampler = new HeapSampler(10);
+
+        server.setExecutor(handlers);
+        server.createContext("/solve", exchange -> handle(exchange, "POST", this::solve));
+        server.createContext("/cancel", exchange -> handle(exchange, "POST", this::cancel));
+        server.createContext("/status", exchange -> handle(exchange, "GET", this::status));
+    }
+
+    /**
+     * Runs the service from the command line arguments:
+     * -serve [-p port] [-j concurrency] [-q queue size] [-cache levels]
+     *
+     * @param args The command line arguments
+     */
+    public static void parseArguments(String[] args) {
+        int port = 8642;
+        int concurrency = Runtime.getRuntime().availableProcessors();
+        int queueSize = 64;
+        int cacheSize = 256;
+        for (int i = 1; i < args.length; i++) {
+            if (!(args[i].equals("-p") || args[i].equals("-j") || args[i].equals("-q") || args[i].equals("-cache"))) {
+                System.out.println("Unknown option " + args[i]);
+                return;
+            }
+            if (i + 1 >= args.length) {
+                System.out.println("Missing value for " + args[i]);
+                return;
+            }
+            try {
+                int value = Integer.parseInt(args[i + 1]);
+                if (args[i].equals("-p")) {
+                    if (value < 0 || value > 65535)
+                        throw new NumberFormatException(args[i + 1]);
+                    port = value;
+                } else if (args[i].equals("-j"))
+                    concurrency = Math.max(1, value);
+                else if (args[i].equals("-q"))
+                    queueSize = Math.max(1, value);
+                else
+                    cacheSize = Math.max(1, value);
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid value for " + args[i] + ": " + args[i + 1]);
+                return;
+            }
+            i++;
+        }
+
+        try {
+            SolverDaemon daemon = new SolverDaemon(port, concurrency, queueSize, cacheSize);
+            daemon.start();
+            System.out.println("Solver service listening on http://127.0.0.1:" + daemon.getPort()
+                    + " with " + concurrency + " workers");
+        } catch (IOException e) {
+            System.out.println("Could not start solver service: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Starts serving requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops serving, cancels running solves and releases the worker threads.
+     */
+    public void stop() {
+        server.stop(0);
+        for (Job job : jobs.values())
+            cancel(job);
+        solvers.shutdownNow();
+        handlers.shutdownNow();
+        sampler.close();
+    }
+
+    /**
+     * @return The port the service is bound to
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Handles POST /solve.
+     *
+     * @param exchange The HTTP exchange
+     * @param query    The query parameters
+     * @return The response
+     * @throws IOException If the request body cannot be read
+     */
+    private Response solve(HttpExchange exchange, Map<String, String> query) throws IOException {
+        String[] options = query.getOrDefault("options", "-ai").trim().split("\\s+");
+        for (String option : options) {
+            for (String fileOption : FILE_OPTIONS) {
+                if (option.equals(fileOption))
+                    return Response.error(400, "Option " + option + " is not allowed in requests");
+            }
+        }
+        SolverOptions solverOptions;
+        try {
+            solverOptions = SolverOptions.parse(options);
+        } catch (IllegalArgumentException e) {
+            return Response.error(400, e.getMessage());
+        }
+
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        BoardState board;
+        try {
+            board = LevelReader.of(body).read();
+        } catch (IOException e) {
+            return Response.error(400, "Malformed level: " + e.getMessage());
+        }
+        if (board == null)
+            return Response.error(400, "Missing level");
+
+        String id = query.containsKey("id") ? query.get("id") : UUID.randomUUID().toString();
+        long timeoutMillis = solverOptions.getTimeoutMillis();
+        Job job = new Job();
+        if (jobs.putIfAbsent(id, job) != null)
+            return Response.error(409, "A solve with id " + id + " is already running");
+
+        try {
+            try {
+                job.future = solvers.submit(() -> {
+                    AbstractSolver solver = solverOptions.createSolver(board, timeoutMillis, analyses.get(board));
+                    solver.setCancellationToken(job.token);
+                    return SolveResult.solve(id, solverOptions.getAlgorithm(), solver, timeoutMillis, 1, sampler);
+                });
+            } catch (RejectedExecutionException e) {
+                return Response.error(503, "Solver queue is full");
+            }
+            SolveResult result;
+            try {
+                result = job.future.get();
+            } catch (CancellationException e) {
+                // Cancelled while still queued
+                result = new SolveResult(id, solverOptions.getAlgorithm(), SolveResult.Status.CANCELLED, null,
+                        0, 0, 0, 0, 0, timeoutMillis, 1);
+            } catch (ExecutionException e) {
+                return Response.error(500, "Solve failed: " + e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel(job);
+                return Response.error(503, "Service is shutting down");
+            }
+            return new Response(200, result.toJson());
+        } finally {
+            jobs.remove(id, job);
+        }
+    }
+
+    /**
+     * Handles POST /cancel.
+     *
+     * @param exchange The HTTP exchange
+     * @param query    The query parameters
+     * @return The response
+     */
+    private Response cancel(HttpExchange exchange, Map<String, String> query) {
+        String id = query.get("id");
+        Job job = id == null ? null : jobs.get(id);
+        if (job == null)
+            return Response.error(404, "No solve with id " + id);
+        cancel(job);
+        return new Response(200, "{\"id\":" + SolveResult.jsonString(id) + ",\"cancelled\":true}");
+    }
+
+    /**
+     * Stops a solve. A queued solve is taken off the queue so it never runs;
+     * a running solve stops at its next timeout check and reports its stats.
+     *
+     * @param job The solve
+     */
+    private void cancel(Job job) {
+        job.token.cancel();
+        Future<SolveResult> future = job.future;
+        if (future instanceof Runnable && solvers.remove((Runnable) future))
+            future.cancel(false);
+    }
+
+    /**
+     * Handles GET /status.
+     *
+     * @param exchange The HTTP exchange
+     * @param query    The query parameters
+     * @return The response
+     */
+    private Response status(HttpExchange exchange, Map<String, String> query) {
+        return new Response(200, "{\"running\":" + solvers.getActiveCount()
+                + ",\"queued\":" + solvers.getQueue().size()
+                + ",\"workers\":" + solvers.getMaximumPoolSize()
+                + ",\"queueCapacity\":" + (solvers.getQueue().size() + solvers.getQueue().remainingCapacity())
+                + ",\"completed\":" + solvers.getCompletedTaskCount()
+                + ",\"cachedLevels\":" + analyses.size()
+                + ",\"cacheHits\":" + analyses.getHits()
+                + ",\"cacheMisses\":" + analyses.getMisses() + "}");
+    }
+
+    /**
+     * Checks the method of a request, runs its endpoint and sends the
+     * response.
+     *
+     * @param exchange The HTTP exchange
+     * @param method   The expected method
+     * @param endpoint The endpoint
+     * @throws IOException If the response cannot be sent
+     */
+    private void handle(HttpExchange exchange, String method, Endpoint endpoint) throws IOException {
+        try {
+            Response response;
+            if (!exchange.getRequestMethod().equals(method)) {
+                response = Response.error(405, "Use " + method);
+            } else {
+                try {
+                    response = endpoint.handle(exchange, parseQuery(exchange.getRequestURI().getRawQuery()));
+                } catch (RuntimeException e) {
+                    response = Response.error(500, String.valueOf(e));
+                }
+            }
+            byte[] bytes = (response.body + "\n").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(response.status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Parses a URL query string.
+     *
+     * @param query The raw query, or null
+     * @return The decoded parameters
+     */
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<String, String>();
+        if (query == null)
+            return params;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    /**
+     * A request handler of one endpoint.
+     */
+    private interface Endpoint {
+        Response handle(HttpExchange exchange, Map<String, String> query) throws IOException;
+    }
+
+    /**
+     * A queued or running solve. The token is created with the job, so a
+     * solve can be cancelled before its solver exists.
+     */
+    private static class Job {
+        final CancellationToken token = new CancellationToken();
+        volatile Future<SolveResult> future;
+    }
+
+    /**
+     * An HTTP status with a JSON body.
+     */
+    private static class Response {
+        final int status;
+        final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        static Response error(int status, String message) {
+            return new Response(status, "{\"error\":" + SolveResult.jsonString(message) + "}");
+        }
+    }
+}
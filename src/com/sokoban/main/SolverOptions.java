@@ -0,0 +1,306 @@
+package com.sokoban.main;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import com.sokoban.heuristic.BoxGoalHeuristic;
+import com.sokoban.heuristic.ImprovedManhattanHeuristic;
+import com.sokoban.heuristic.ManhattanHeuristic;
+import com.sokoban.model.BoardState;
+import com.sokoban.solver.AStarSolver;
+import com.sokoban.solver.AbstractSolver;
+import com.sokoban.solver.BFSSolver;
+import com.sokoban.solver.DFSSolver;
+import com.sokoban.solver.GreedyBFSSolver;
+import com.sokoban.solver.HillClimbingSolver;
+import com.sokoban.solver.IDDFSSolver;
+import com.sokoban.solver.MonteCarloSolver;
+import com.sokoban.solver.UniformCostSolver;
+import com.sokoban.util.AnalysisSidecar;
+import com.sokoban.util.LevelAnalysis;
+
+/**
+ * The search algorithm and optional search parameters of a solve, as given on
+ * the command line. Creates configured solvers for any number of levels.
+ */
+public class SolverOptions {
+    /** The flags of all search algorithms. */
+    public static final String[] ALGORITHMS = {
+            "-b", "-d", "-id", "-u", "-ab", "-gb", "-am", "-gm", "-ai", "-gi", "-hc", "-mc"
+    };
+
+    /**
+     * The flags of the randomized search algorithms, which run until their
+     * timeout and give different results from run to run.
+     */
+    public static final String[] RANDOMIZED_ALGORITHMS = { "-mc" };
+
+    private final String algorithm;
+    // Timeout in milliseconds (default: 30 seconds)
+    private long timeoutMillis = 30000;
+    private boolean tunnelMacros;
+    private boolean goalRoomMacros;
+    private boolean partialExpansion;
+    private long bitstateBytes;
+    private int bitstateHashes = 3;
+    private Path sidecarDirectory;
+    private long optimizeMillis;
+    private int maxDepth = Integer.MAX_VALUE;
+
+    /**
+     * Constructs options for a search algorithm.
+     *
+     * @param algorithm The algorithm flag, e.g. -ai
+     */
+    public SolverOptions(String algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Parses an algorithm flag followed by search parameters, e.g.
+     * {"-ai", "-t", "10", "-m"}.
+     *
+     * @param options The algorithm flag and search parameters
+     * @return The options
+     * @throws IllegalArgumentException If the algorithm or a parameter is
+     *                                  unknown or has an invalid value
+     */
+    public static SolverOptions parse(String... options) {
+        if (options.length == 0 || !isAlgorithm(options[0]))
+            throw new IllegalArgumentException("Options must start with an algorithm flag");
+        SolverOptions solverOptions = new SolverOptions(options[0]);
+        for (int i = 1; i < options.length; i++) {
+            int last;
+            try {
+                last = solverOptions.parseOption(options, i);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value for " + options[i]);
+            }
+            if (last < 0)
+                throw new IllegalArgumentException("Unknown option " + options[i]);
+            i = last;
+        }
+        return solverOptions;
+    }
+
+    /**
+     * Checks if a flag selects a search algorithm.
+     *
+     * @param flag The flag to check
+     * @return True if the flag is a known algorithm
+     */
+    public static boolean isAlgorithm(String flag) {
+        for (String algorithm : ALGORITHMS) {
+            if (algorithm.equals(flag))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Parses the optional search parameter at a position of the arguments.
+     *
+     * @param args The command line arguments
+     * @param i    The position of the parameter
+     * @return The position of the last argument consumed, or -1 if the
+     *         argument is not a search parameter
+     * @throws NumberFormatException If the value of a parameter is not a
+     *                               number or is out of range
+     */
+    public int parseOption(String[] args, int i) {
+        if (args[i].equals("-t") && i + 1 < args.length) {
+            timeoutMillis = Long.parseLong(args[++i]) * 1000; // Convert seconds to milliseconds
+        } else if (args[i].equals("-m")) {
+            tunnelMacros = true;
+        } else if (args[i].equals("-r")) {
+            goalRoomMacros = true;
+        } else if (args[i].equals("-pe")) {
+            partialExpansion = true;
+        } else if (args[i].equals("-bs") && i + 1 < args.length) {
+            long bytes = parseSize(args[++i]);
+            // A table of at least one 64-bit word, addressable by int indices
+            if (bytes < 8 || bytes / 8 > Integer.MAX_VALUE - 8)
+                throw new NumberFormatException("Bitstate table size out of range: " + args[i]);
+            bitstateBytes = bytes;
+        } else if (args[i].equals("-bk") && i + 1 < args.length) {
+            int hashes = Integer.parseInt(args[++i]);
+            if (hashes < 1)
+                throw new NumberFormatException("Bitstate hash count out of range: " + args[i]);
+            bitstateHashes = hashes;
+        } else if (args[i].equals("-sidecar") && i + 1 < args.length) {
+            sidecarDirectory = Paths.get(args[++i]);
+        } else if (args[i].equals("-opt") && i + 1 < args.length) {
+            optimizeMillis = Long.parseLong(args[++i]) * 1000;
+        } else if (args[i].equals("-maxdepth") && i + 1 < args.length) {
+            maxDepth = Integer.parseInt(args[++i]);
+        } else {
+            return -1;
+        }
+        return i;
+    }
+
+    /**
+     * Creates a solver for a level, configured with these options and the
+     * default timeout.
+     *
+     * @param initialBoard The initial board state of the level
+     * @return The solver, or null if the algorithm flag is invalid
+     */
+    public AbstractSolver createSolver(BoardState initialBoard) {
+        return createSolver(initialBoard, timeoutMillis);
+    }
+
+    /**
+     * Creates a solver for a level, configured with these options.
+     *
+     * @param initialBoard  The initial board state of the level
+     * @param timeoutMillis The timeout in milliseconds
+     * @return The solver, or null if the algorithm flag is invalid
+     */
+    public AbstractSolver createSolver(BoardState initialBoard, long timeoutMillis) {
+        return createSolver(initialBoard, timeoutMillis, null);
+    }
+
+    /**
+     * Creates a solver for a level, configured with these options and sharing
+     * a precomputed analysis of the level.
+     *
+     * @param initialBoard  The initial board state of the level
+     * @param timeoutMillis The timeout in milliseconds
+     * @param analysis      The analysis of the level, or null to load it from
+     *                      its sidecar if a sidecar directory is set, or
+     *                      else compute it
+     * @return The solver, or null if the algorithm flag is invalid
+     */
+    public AbstractSolver createSolver(BoardState initialBoard, long timeoutMillis, LevelAnalysis analysis) {
+        AbstractSolver solver;
+        if (algorithm.equals("-b")) {
+            solver = new BFSSolver(initialBoard);
+        } else if (algorithm.equals("-d")) {
+            solver = new DFSSolver(initialBoard);
+        } else if (algorithm.equals("-id")) {
+            solver = new IDDFSSolver(initialBoard);
+        } else if (algorithm.equals("-u")) {
+            solver = new UniformCostSolver(initialBoard);
+        } else if (algorithm.equals("-ab")) {
+            solver = new AStarSolver(initialBoard, new BoxGoalHeuristic());
+        } else if (algorithm.equals("-gb")) {
+            solver = new GreedyBFSSolver(initialBoard, new BoxGoalHeuristic());
+        } else if (algorithm.equals("-am")) {
+            solver = new AStarSolver(initialBoard, new ManhattanHeuristic());
+        } else if (algorithm.equals("-gm")) {
+            solver = new GreedyBFSSolver(initialBoard, new ManhattanHeuristic());
+        } else if (algorithm.equals("-ai")) {
+            solver = new AStarSolver(initialBoard, new ImprovedManhattanHeuristic());
+        } else if (algorithm.equals("-gi")) {
+            solver = new GreedyBFSSolver(initialBoard, new ImprovedManhattanHeuristic());
+        } else if (algorithm.equals("-hc")) {
+            solver = new HillClimbingSolver(initialBoard, new ImprovedManhattanHeuristic());
+        } else if (algorithm.equals("-mc")) {
+            solver = new MonteCarloSolver(initialBoard, new ImprovedManhattanHeuristic());
+        } else {
+            return null;
+        }
+
+        solver.setTimeout(timeoutMillis);
+        if (analysis == null && sidecarDirectory != null)
+            analysis = AnalysisSidecar.load(sidecarDirectory, initialBoard);
+        if (analysis != null)
+            solver.setLevelAnalysis(analysis);
+        solver.setTunnelMacros(tunnelMacros);
+        solver.setGoalRoomMacros(goalRoomMacros);
+        if (solver instanceof IDDFSSolver)
+            ((IDDFSSolver) solver).setMaxDepth(maxDepth);
+        if (partialExpansion && solver instanceof AStarSolver)
+            ((AStarSolver) solver).setPartialExpansion(true);
+        if (bitstateBytes > 0)
+            solver.setBitstateHashing(bitstateBytes, bitstateHashes);
+        return solver;
+    }
+
+    /**
+     * Parses a size in bytes with an optional K, M or G suffix.
+     *
+     * @param size The size, e.g. 512M
+     * @return The size in bytes
+     * @throws NumberFormatException If the size is not a number or is too
+     *                               large
+     */
+    static long parseSize(String size) {
+        if (size.isEmpty())
+            throw new NumberFormatException("Empty size");
+        long multiplier = 1;
+        char unit = Character.toUpperCase(size.charAt(size.length() - 1));
+        if (unit == 'K')
+            multiplier = 1L << 10;
+        else if (unit == 'M')
+            multiplier = 1L << 20;
+        else if (unit == 'G')
+            multiplier = 1L << 30;
+        if (multiplier > 1)
+            size = size.substring(0, size.length() - 1);
+        try {
+            return Math.multiplyExact(Long.parseLong(size), multiplier);
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Size too large: " + size);
+        }
+    }
+
+    /**
+     * @return The algorithm flag
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @return The timeout in milliseconds
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * @return True if tunnel macro moves are enabled
+     */
+    public boolean isTunnelMacros() {
+        return tunnelMacros;
+    }
+
+    /**
+     * @return True if goal-room macro moves are enabled
+     */
+    public boolean isGoalRoomMacros() {
+        return goalRoomMacros;
+    }
+
+    /**
+     * @return True if partial expansion is enabled for A*
+     */
+    public boolean isPartialExpansion() {
+        return partialExpansion;
+    }
+
+    /**
+     * @return The directory of level analysis sidecars, or null if sidecars
+     *         are not used
+     */
+    public Path getSidecarDirectory() {
+        return sidecarDirectory;
+    }
+
+    /**
+     * @return The time to spend shortening a found solution in
+     *         milliseconds, or 0 if solutions are not optimized
+     */
+    public long getOptimizeMillis() {
+        return optimizeMillis;
+    }
+
+    /**
+     * @return The maximum depth bound of iterative deepening
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+}
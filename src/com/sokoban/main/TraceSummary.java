@@ -0,0 +1,239 @@
+package com.sokoban.main;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sokoban.solver.TraceRecorder;
+import com.sokoban.util.DeadlockDetector;
+
+/**
+ * Summarizes a search trace written with -trace: the records by kind and
+ * prune reason, the branching factor, the distribution of the estimates of
+ * expanded states, how the expansions spread over the depths and the
+ * longest plateau the search crossed.
+ *
+ * With a sampled trace every figure describes the records kept, so counts
+ * are roughly the real counts divided by the sampling rate.
+ */
+public class TraceSummary {
+    private static final int DEFAULT_BINS = 20;
+    private static final int BAR_WIDTH = 40;
+
+    private int sampleEvery;
+    private long expanded;
+    private long duplicates;
+    private final long[] pruned = new long[DeadlockDetector.Type.values().length];
+    private long children;
+    // Counts per value, and for depths also the sum of the estimates
+    private final Map<Integer, long[]> branching = new HashMap<Integer, long[]>();
+    private final Map<Integer, long[]> estimates = new HashMap<Integer, long[]>();
+    private final Map<Integer, long[]> depths = new HashMap<Integer, long[]>();
+    private int bestEstimate = Integer.MAX_VALUE;
+    private long plateau;
+    private long longestPlateau;
+    private long plateauEnd;
+    private long written = -1;
+    private long dropped;
+
+    /**
+     * Summarizes a trace from the command line arguments:
+     * -trace-summary [trace file] [-bins n]
+     *
+     * @param args The command line arguments
+     */
+    public static void parseArguments(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: java -jar SokobanSolver.jar -trace-summary [trace file] [-bins n]");
+            return;
+        }
+        int bins = DEFAULT_BINS;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("-bins") && i + 1 < args.length) {
+                try {
+                    bins = Math.max(1, Integer.parseInt(args[++i]));
+                } catch (NumberFormatException e) {
+                    System.out.println("Invalid value for -bins, using the default");
+                }
+            } else {
+                System.out.println("Unknown option " + args[i]);
+                return;
+            }
+        }
+        try {
+            read(Paths.get(args[1])).print(bins);
+        } catch (NoSuchFileException e) {
+            System.out.println("Trace not found: " + args[1]);
+        } catch (IOException e) {
+            System.out.println("Could not read trace " + args[1] + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads a trace file.
+     *
+     * @param file The trace file
+     * @return The summary of the trace
+     * @throws IOException If the file cannot be read or is not a trace
+     */
+    public static TraceSummary read(Path file) throws IOException {
+        TraceSummary summary = new TraceSummary();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != TraceRecorder.MAGIC)
+                throw new IOException("Not a trace file");
+            int version = in.readInt();
+            if (version != TraceRecorder.VERSION)
+                throw new IOException("Unsupported trace version " + version);
+            if (in.readInt() != TraceRecorder.RECORD_SIZE)
+                throw new IOException("Unexpected record size");
+            summary.sampleEvery = in.readInt();
+            while (true) {
+                long key;
+                try {
+                    key = in.readLong();
+                } catch (EOFException e) {
+                    // A trace whose search was killed has no end record
+                    break;
+                }
+                long parent = in.readLong();
+                int depth = in.readInt();
+                int estimate = in.readInt();
+                byte kind = in.readByte();
+                in.readByte();
+                int reason = in.readUnsignedByte();
+                in.readByte();
+                int childCount = in.readUnsignedShort();
+                in.readShort();
+                if (kind == TraceRecorder.END) {
+                    summary.written = key;
+                    summary.dropped = parent;
+                    break;
+                }
+                summary.add(kind, depth, estimate, reason, childCount);
+            }
+        } catch (EOFException e) {
+            throw new IOException("Truncated trace", e);
+        }
+        return summary;
+    }
+
+    /**
+     * Adds a record to the summary.
+     */
+    private void add(byte kind, int depth, int estimate, int reason, int childCount) {
+        if (kind == TraceRecorder.DUPLICATE) {
+            duplicates++;
+        } else if (kind == TraceRecorder.PRUNED) {
+            if (reason >= 1 && reason <= pruned.length)
+                pruned[reason - 1]++;
+        } else if (kind == TraceRecorder.EXPANDED) {
+            expanded++;
+            children += childCount;
+            count(branching, childCount, 0);
+            count(estimates, estimate, 0);
+            count(depths, depth, estimate);
+            // A plateau lasts until an expansion improves on the best
+            // estimate. Solvers that score children do not score the initial
+            // state, so its estimate does not count.
+            if (depth > 0 && estimate < bestEstimate) {
+                bestEstimate = estimate;
+                plateau = 0;
+            } else if (depth > 0 && ++plateau > longestPlateau) {
+                longestPlateau = plateau;
+                plateauEnd = expanded;
+            }
+        }
+    }
+
+    /**
+     * Counts a value, adding to the sum kept with it.
+     */
+    private static void count(Map<Integer, long[]> histogram, int value, int addend) {
+        long[] entry = histogram.computeIfAbsent(value, v -> new long[2]);
+        entry[0]++;
+        entry[1] += addend;
+    }
+
+    /**
+     * Prints the summary.
+     *
+     * @param bins The maximum number of rows per histogram
+     */
+    public void print(int bins) {
+        long records = expanded + duplicates;
+        for (long count : pruned)
+            records += count;
+        System.out.println("Records: " + records + (sampleEvery > 1 ? " (one in " + sampleEvery + " kept)" : "")
+                + (written < 0 ? ", no end record" : ", " + dropped + " dropped"));
+        System.out.println("Expanded: " + expanded);
+        System.out.println("Duplicates: " + duplicates);
+        DeadlockDetector.Type[] types = DeadlockDetector.Type.values();
+        for (int i = 0; i < types.length; i++)
+            System.out.println("Pruned " + types[i].name().toLowerCase() + ": " + pruned[i]);
+        if (expanded == 0)
+            return;
+        System.out.println("Branching factor: " + String.format("%.2f", (double) children / expanded));
+        if (bestEstimate != Integer.MAX_VALUE)
+            System.out.println("Longest plateau: " + longestPlateau + " expansions"
+                    + (longestPlateau > 0 ? " (ending at expansion " + plateauEnd + ")" : "")
+                    + ", best estimate " + bestEstimate);
+        System.out.println();
+        System.out.println("Children per expansion:");
+        printHistogram(branching, bins, false);
+        System.out.println();
+        System.out.println("Estimates of expanded states:");
+        printHistogram(estimates, bins, false);
+        System.out.println();
+        System.out.println("Expansions by depth (with mean estimate):");
+        printHistogram(depths, bins, true);
+    }
+
+    /**
+     * Prints a histogram, merging values into equal ranges so it has at most
+     * the given number of rows.
+     *
+     * @param histogram The counts and sums per value
+     * @param bins      The maximum number of rows
+     * @param mean      True to print the mean of the sums per row
+     */
+    private static void printHistogram(Map<Integer, long[]> histogram, int bins, boolean mean) {
+        List<Integer> values = new ArrayList<Integer>(histogram.keySet());
+        Collections.sort(values);
+        long min = values.get(0);
+        long width = Math.max(1, (values.get(values.size() - 1) - min + bins) / bins);
+        List<long[]> rows = new ArrayList<long[]>();
+        long peak = 0;
+        for (int value : values) {
+            long low = min + (value - min) / width * width;
+            long[] row = rows.isEmpty() ? null : rows.get(rows.size() - 1);
+            if (row == null || row[0] != low) {
+                row = new long[] { low, 0, 0 };
+                rows.add(row);
+            }
+            long[] entry = histogram.get(value);
+            row[1] += entry[0];
+            row[2] += entry[1];
+            peak = Math.max(peak, row[1]);
+        }
+        for (long[] row : rows) {
+            String range = width == 1 ? String.valueOf(row[0]) : row[0] + "-" + (row[0] + width - 1);
+            StringBuilder line = new StringBuilder(String.format("  %15s %10d", range, row[1]));
+            if (mean)
+                line.append(String.format(" %10.1f", (double) row[2] / row[1]));
+            line.append(' ');
+            for (long i = (row[1] * BAR_WIDTH + peak - 1) / peak; i > 0; i--)
+                line.append('#');
+            System.out.println(line);
+        }
+    }
+}
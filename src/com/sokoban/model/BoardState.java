@@ -1,17 +1,25 @@
 package com.sokoban.model;
 
 import java.awt.Point;
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
+import com.sokoban.jfr.LevelParseEvent;
+
 /**
  * Represents a single Sokoban board state.
  * This class is immutable - once created, its state cannot be changed.
  * New BoardState objects are created for each move.
+ *
+ * The walls and goals of the level are held once in a shared
+ * {@link LevelTopology}; a state only holds the player cell and the sorted
+ * cells of its boxes, and moves are made through the topology's neighbour
+ * tables.
  */
 public class BoardState implements Comparable<BoardState> {
     // Board position bitfields
@@ -33,6 +41,8 @@ public class BoardState implements Comparable<BoardState> {
         charToField.put('$', BOX);
         charToField.put('*', (byte) (BOX | GOAL));
         charToField.put(' ', (byte) 0);
+        charToField.put('-', (byte) 0);
+        charToField.put('_', (byte) 0);
 
         fieldToChar = new HashMap<Byte, Character>();
         fieldToChar.put(WALL, '#');
@@ -45,86 +55,122 @@ public class BoardState implements Comparable<BoardState> {
     }
 
     // Private fields
-    private byte[][] board;
-    private Point player;
-    private Set<Point> boxes;
-    private Set<Point> goals;
+    private final LevelTopology topology;
+    private final int player; // Player cell
+    private final int[] boxes; // Box cells in ascending order, shared until a box moves
     private Point directionTaken;
     private int cost;
     private int depth; // Depth in the search tree
+    private String macroMoves; // Full move string when reached by a macro move
+    private int macroPushes;
+    private BoardState parent; // State this one was generated from during search
 
     /**
      * Constructor for BoardState.
      *
-     * @param board          The board state
-     * @param player         The player position
-     * @param boxes          The box positions
-     * @param goals          The goal positions
+     * @param topology       The layout of the level
+     * @param player         The player cell
+     * @param boxes          The box cells in ascending order
      * @param directionTaken The direction taken to get to this state
+     * @param depth          The depth in the search tree
      */
-    public BoardState(byte[][] board, Point player, Set<Point> boxes,
-            Set<Point> goals, Point directionTaken) {
-        this.board = board;
+    private BoardState(LevelTopology topology, int player, int[] boxes, Point directionTaken, int depth) {
+        this.topology = topology;
         this.player = player;
         this.boxes = boxes;
-        this.goals = goals;
         this.directionTaken = directionTaken;
         this.cost = 0;
-        this.depth = 0;
+        this.depth = depth;
     }
 
     /**
-     * Constructor that also sets the depth.
+     * Parses the first level of a Sokoban text file into a BoardState object.
+     * The file may be a single level or a collection in any format
+     * {@link LevelReader} reads.
      *
-     * @param board          The board state
-     * @param player         The player position
-     * @param boxes          The box positions
-     * @param goals          The goal positions
-     * @param directionTaken The direction taken to get to this state
-     * @param depth          The depth in the search tree
+     * @param boardInput The path to the Sokoban text file
+     * @return The parsed BoardState
+     * @throws IOException If the file cannot be read
      */
-    public BoardState(byte[][] board, Point player, Set<Point> boxes,
-            Set<Point> goals, Point directionTaken, int depth) {
-        this(board, player, boxes, goals, directionTaken);
-        this.depth = depth;
+    public static BoardState parseBoardInput(String boardInput) throws IOException {
+        try (LevelReader reader = LevelReader.open(Paths.get(boardInput))) {
+            BoardState state = reader.read();
+            if (state == null)
+                throw new IOException("No level in " + boardInput);
+            return state;
+        }
     }
 
     /**
-     * Parses a Sokoban text file into a BoardState object.
+     * Builds a level from the rows of its puzzle. Rows shorter than the width
+     * are padded with floor and longer rows are cut.
      *
-     * @param boardInput The path to the Sokoban text file
+     * @param rows  The rows of the puzzle
+     * @param width The number of columns
      * @return The parsed BoardState
-     * @throws IOException If the file cannot be read
+     * @throws IOException If a row holds an unknown character, the level
+     *                     does not have exactly one player or it has too
+     *                     many positions to number
      */
-    public static BoardState parseBoardInput(String boardInput) throws IOException {
-        BufferedReader reader = new BufferedReader(new FileReader(boardInput));
-        int width = Integer.parseInt(reader.readLine());
-        int height = Integer.parseInt(reader.readLine());
+    static BoardState parseRows(List<String> rows, int width) throws IOException {
+        LevelParseEvent event = new LevelParseEvent();
+        event.begin();
+        int height = rows.size();
+        if ((long) height * width > Integer.MAX_VALUE)
+            throw new IOException("Level too large: " + width + "x" + height);
         byte[][] boardPoints = new byte[height][width];
-        Point player = new Point();
-        Set<Point> goals = new HashSet<Point>();
-        Set<Point> boxes = new HashSet<Point>();
+        int player = -1;
+        int boxCount = 0;
+        int goalCount = 0;
 
         for (int row = 0; row < height; row++) {
-            String line = reader.readLine();
+            String line = rows.get(row);
             for (int col = 0; col < width; col++) {
                 char c = col < line.length() ? line.charAt(col) : ' ';
-                byte field = charToField.get(c);
+                Byte known = charToField.get(c);
+                if (known == null)
+                    throw new IOException("Unknown character '" + c + "' in row " + (row + 1));
+                byte field = known;
                 boardPoints[row][col] = field;
                 if ((field & PLAYER) != 0) {
-                    player.x = row;
-                    player.y = col;
-                }
-                if ((field & BOX) != 0) {
-                    boxes.add(new Point(row, col));
-                }
-                if ((field & GOAL) != 0) {
-                    goals.add(new Point(row, col));
+                    if (player >= 0)
+                        throw new IOException("More than one player");
+                    player = row * width + col;
                 }
+                if ((field & BOX) != 0)
+                    boxCount++;
+                if ((field & GOAL) != 0)
+                    goalCount++;
             }
         }
-        reader.close();
-        return new BoardState(boardPoints, player, boxes, goals, null);
+        if (player < 0)
+            throw new IOException("No player");
+
+        // Number the cells from the player, the boxes and the goals
+        int[] starts = new int[1 + boxCount + goalCount];
+        int[] boxPositions = new int[boxCount];
+        int n = 0;
+        int b = 0;
+        starts[n++] = player;
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                if ((boardPoints[row][col] & (BOX | GOAL)) != 0)
+                    starts[n++] = row * width + col;
+                if ((boardPoints[row][col] & BOX) != 0)
+                    boxPositions[b++] = row * width + col;
+            }
+        }
+        LevelTopology topology = new LevelTopology(boardPoints, Arrays.copyOf(starts, n));
+        int[] boxCells = new int[boxCount];
+        for (int i = 0; i < boxCount; i++)
+            boxCells[i] = topology.cellAt(boxPositions[i] / width, boxPositions[i] % width);
+        Arrays.sort(boxCells);
+
+        event.rows = height;
+        event.columns = width;
+        event.boxes = boxCount;
+        event.commit();
+        return new BoardState(topology, topology.cellAt(player / width, player % width), boxCells, null, 0);
     }
 
     /**
@@ -134,22 +180,38 @@ public class BoardState implements Comparable<BoardState> {
      * @return True if the player can move in that direction, false otherwise
      */
     public boolean canMove(Point direction) {
-        Point newPos = new Point(player.x + direction.x, player.y + direction.y);
-        Point oneOutPos = new Point(newPos.x + direction.x, newPos.y + direction.y);
-        if (pointHas(newPos, BOX)) {
-            // Box can't be pushed if there's a wall or box
-            if (pointHas(oneOutPos, WALL) || pointHas(oneOutPos, BOX))
-                return false;
-            // Goal or empty
-            else
-                return true;
-        }
+        return canMove(Direction.toIndex(direction));
+    }
+
+    /**
+     * Checks if the player can move in a certain direction.
+     *
+     * @param direction The direction index
+     * @return True if the player can move in that direction, false otherwise
+     */
+    public boolean canMove(int direction) {
+        int next = topology.neighbour(direction, player);
         // Can't move into a wall
-        else if (pointHas(newPos, WALL))
+        if (next == LevelTopology.NONE)
             return false;
+        // Box can't be pushed if there's a wall or box
+        if (hasBox(next)) {
+            int beyond = topology.neighbour(direction, next);
+            return beyond != LevelTopology.NONE && !hasBox(beyond);
+        }
         // Goal or empty
-        else
-            return true;
+        return true;
+    }
+
+    /**
+     * Checks if a move in a direction pushes a box.
+     *
+     * @param direction The direction index
+     * @return True if there is a box next to the player in that direction
+     */
+    public boolean isPush(int direction) {
+        int next = topology.neighbour(direction, player);
+        return next != LevelTopology.NONE && hasBox(next);
     }
 
     /**
@@ -159,32 +221,120 @@ public class BoardState implements Comparable<BoardState> {
      * @return The new BoardState
      */
     public BoardState getMove(Point direction) {
-        Point newPos = new Point(player.x + direction.x, player.y + direction.y);
-        Point oneOutPos = new Point(newPos.x + direction.x, newPos.y + direction.y);
-        Set<Point> newBoxes = boxes;
-
-        // Deep copy board
-        byte[][] newBoard = new byte[board.length][];
-        for (int i = 0; i < newBoard.length; i++)
-            newBoard[i] = board[i].clone();
+        return getMove(Direction.toIndex(direction));
+    }
 
-        // Update player position
-        newBoard[player.x][player.y] &= ~PLAYER;
-        newBoard[newPos.x][newPos.y] |= PLAYER;
+    /**
+     * Returns a new BoardState after moving in a certain direction. The move
+     * must be valid.
+     *
+     * @param direction The direction index
+     * @return The new BoardState
+     */
+    public BoardState getMove(int direction) {
+        int next = topology.neighbour(direction, player);
+        int[] newBoxes = boxes;
 
         // If pushing a box, update box position
-        if (pointHas(newPos, BOX)) {
-            newBoard[newPos.x][newPos.y] &= ~BOX;
-            newBoard[oneOutPos.x][oneOutPos.y] |= BOX;
-
-            // Update box set
-            newBoxes = new HashSet<Point>(boxes);
-            newBoxes.remove(newPos);
-            newBoxes.add(oneOutPos);
+        int pushed = Arrays.binarySearch(boxes, next);
+        if (pushed >= 0) {
+            int to = topology.neighbour(direction, next);
+            newBoxes = boxes.clone();
+            // Slide the moved box to keep the cells sorted
+            int i = pushed;
+            while (i > 0 && newBoxes[i - 1] > to) {
+                newBoxes[i] = newBoxes[i - 1];
+                i--;
+            }
+            while (i < newBoxes.length - 1 && newBoxes[i + 1] < to) {
+                newBoxes[i] = newBoxes[i + 1];
+                i++;
+            }
+            newBoxes[i] = to;
         }
 
         // Create new state with incremented depth
-        return new BoardState(newBoard, newPos, newBoxes, goals, direction, this.depth + 1);
+        return new BoardState(topology, next, newBoxes, Direction.fromIndex(direction), this.depth + 1);
+    }
+
+    /**
+     * Returns a new BoardState after applying a sequence of moves as one macro
+     * move. Every intermediate move is recorded so the full solution can still
+     * be reconstructed.
+     *
+     * @param directions The directions to move, in order
+     * @return The new BoardState, or null if any move in the sequence is invalid
+     */
+    public BoardState getMacroMove(List<Point> directions) {
+        BoardState state = this;
+        StringBuilder moves = new StringBuilder(directions.size());
+        int pushes = 0;
+        for (Point direction : directions) {
+            int d = Direction.toIndex(direction);
+            if (!state.canMove(d))
+                return null;
+            if (state.isPush(d))
+                pushes++;
+            moves.append(Direction.directionToChar(direction));
+            state = state.getMove(d);
+        }
+        state.macroMoves = moves.toString();
+        state.macroPushes = pushes;
+        return state;
+    }
+
+    /**
+     * Creates a state of the same level with other player and box positions.
+     * Walls and goals are taken from this state.
+     *
+     * @param player         The player position
+     * @param boxes          The box positions
+     * @param directionTaken The direction taken to get to the state, or null
+     * @param depth          The depth in the search tree
+     * @param macroMoves     The full move string if reached by a macro move,
+     *                       or null
+     * @param macroPushes    The number of pushes of the macro move
+     * @return The new BoardState
+     * @throws IllegalArgumentException If a position is not a floor cell of
+     *                                  the level
+     */
+    public BoardState withPositions(Point player, Set<Point> boxes, Point directionTaken, int depth,
+            String macroMoves, int macroPushes) {
+        int[] cells = new int[boxes.size()];
+        int i = 0;
+        for (Point box : boxes)
+            cells[i++] = cellOf(box);
+        Arrays.sort(cells);
+        return withCells(cellOf(player), cells, directionTaken, depth, macroMoves, macroPushes);
+    }
+
+    /**
+     * Creates a state of the same level with other player and box cells.
+     *
+     * @param player         The player cell
+     * @param boxes          The box cells in ascending order; the array is
+     *                       kept by the new state
+     * @param directionTaken The direction taken to get to the state, or null
+     * @param depth          The depth in the search tree
+     * @param macroMoves     The full move string if reached by a macro move,
+     *                       or null
+     * @param macroPushes    The number of pushes of the macro move
+     * @return The new BoardState
+     * @throws IllegalArgumentException If a cell is not a cell of the level
+     */
+    public BoardState withCells(int player, int[] boxes, Point directionTaken, int depth, String macroMoves,
+            int macroPushes) {
+        int size = topology.size();
+        if (player < 0 || player >= size)
+            throw new IllegalArgumentException("Invalid player cell " + player);
+        for (int i = 0; i < boxes.length; i++) {
+            if (boxes[i] < 0 || boxes[i] >= size || (i > 0 && boxes[i] <= boxes[i - 1]))
+                throw new IllegalArgumentException("Invalid box cells");
+        }
+        BoardState state = new BoardState(topology, player, boxes, directionTaken, depth);
+        state.macroMoves = macroMoves;
+        state.macroPushes = macroPushes;
+        return state;
     }
 
     /**
@@ -193,13 +343,27 @@ public class BoardState implements Comparable<BoardState> {
      * @return True if the board is solved, false otherwise
      */
     public boolean isSolved() {
-        for (Point box : boxes) {
-            if (!goals.contains(box))
+        for (int box : boxes) {
+            if (!topology.isGoal(box))
                 return false;
         }
         return true;
     }
 
+    /**
+     * Counts the boxes that are not on a goal.
+     *
+     * @return The number of boxes off their goals
+     */
+    public int getBoxesOffGoal() {
+        int count = 0;
+        for (int box : boxes) {
+            if (!topology.isGoal(box))
+                count++;
+        }
+        return count;
+    }
+
     /**
      * Checks if the next position in a direction has a certain field.
      *
@@ -208,19 +372,104 @@ public class BoardState implements Comparable<BoardState> {
      * @return True if the next position has the field, false otherwise
      */
     public boolean nextMoveHas(byte field, Point direction) {
-        Point newPos = new Point(player.x + direction.x, player.y + direction.y);
-        return pointHas(newPos, field);
+        int next = topology.neighbour(Direction.toIndex(direction), player);
+        if (next == LevelTopology.NONE)
+            return (field & WALL) != 0;
+        return cellHas(next, field);
     }
 
     /**
-     * Checks if a point on the board has a certain field.
+     * Checks if a point on the board has a certain field. Points off the
+     * board are walls.
      *
      * @param point The point to check
      * @param field The field to check for
      * @return True if the point has the field, false otherwise
      */
     public boolean pointHas(Point point, byte field) {
-        return (board[point.x][point.y] & field) != 0;
+        int cell = topology.cellAt(point.x, point.y);
+        if (cell == LevelTopology.NONE)
+            return (field & WALL) != 0 && topology.isWall(point.x, point.y);
+        return cellHas(cell, field);
+    }
+
+    /**
+     * Checks if a cell has a certain field.
+     *
+     * @param cell  The cell index
+     * @param field The field to check for
+     * @return True if the cell has the field, false otherwise
+     */
+    private boolean cellHas(int cell, byte field) {
+        return ((field & PLAYER) != 0 && cell == player)
+                || ((field & BOX) != 0 && hasBox(cell))
+                || ((field & GOAL) != 0 && topology.isGoal(cell));
+    }
+
+    /**
+     * Checks if there is a box on a cell.
+     *
+     * @param cell The cell index
+     * @return True if a box is on the cell
+     */
+    public boolean hasBox(int cell) {
+        return Arrays.binarySearch(boxes, cell) >= 0;
+    }
+
+    /**
+     * Checks if another state has its boxes in the same positions as this one.
+     *
+     * @param other The other BoardState
+     * @return True if both states have the same box positions
+     */
+    public boolean hasSameBoxes(BoardState other) {
+        return boxes == other.boxes || Arrays.equals(boxes, other.boxes);
+    }
+
+    /**
+     * Computes a 64-bit hash of the player and box positions.
+     * The box positions are combined independently of iteration order, so equal
+     * states always hash the same.
+     *
+     * @param seed The seed selecting the hash function
+     * @return The hash value
+     */
+    public long stateHash(long seed) {
+        long boxHash = 0;
+        for (int box : boxes)
+            boxHash += mix(seed + box);
+        long playerHash = mix(seed ^ player);
+        return mix(playerHash ^ boxHash);
+    }
+
+    /**
+     * Mixes the bits of a value (the SplitMix64 finalizer).
+     *
+     * @param z The value to mix
+     * @return The mixed value
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Gets the state this one was generated from during search.
+     *
+     * @return The parent state, or null for the initial state
+     */
+    public BoardState getParent() {
+        return parent;
+    }
+
+    /**
+     * Sets the state this one was generated from during search.
+     *
+     * @param parent The parent state
+     */
+    public void setParent(BoardState parent) {
+        this.parent = parent;
     }
 
     /**
@@ -232,13 +481,95 @@ public class BoardState implements Comparable<BoardState> {
         return directionTaken;
     }
 
+    /**
+     * Gets the full move string of the macro move that reached this state.
+     *
+     * @return The macro moves (u, r, d, l), or null if reached by a single move
+     */
+    public String getMacroMoves() {
+        return macroMoves;
+    }
+
+    /**
+     * Gets the number of box pushes in the macro move that reached this state.
+     *
+     * @return The number of pushes, or 0 if reached by a single move
+     */
+    public int getMacroPushes() {
+        return macroPushes;
+    }
+
+    /**
+     * Gets the layout of the level, shared by all its states.
+     *
+     * @return The level topology
+     */
+    public LevelTopology getTopology() {
+        return topology;
+    }
+
+    /**
+     * Gets the number of rows of the board.
+     *
+     * @return The number of rows
+     */
+    public int getRows() {
+        return topology.getRows();
+    }
+
+    /**
+     * Gets the number of columns of the board.
+     *
+     * @return The number of columns
+     */
+    public int getColumns() {
+        return topology.getColumns();
+    }
+
     /**
      * Gets the player position.
      *
      * @return The player position
      */
     public Point getPlayerPosition() {
-        return new Point(player.x, player.y);
+        return pointOf(player);
+    }
+
+    /**
+     * Gets the player cell.
+     *
+     * @return The cell index of the player
+     */
+    public int getPlayerCell() {
+        return player;
+    }
+
+    /**
+     * Gets the number of boxes.
+     *
+     * @return The number of boxes
+     */
+    public int getBoxCount() {
+        return boxes.length;
+    }
+
+    /**
+     * Gets the cell of a box. Boxes are numbered in ascending cell order.
+     *
+     * @param i The box number, from 0 to getBoxCount() - 1
+     * @return The cell index of the box
+     */
+    public int getBoxCell(int i) {
+        return boxes[i];
+    }
+
+    /**
+     * Gets a copy of the box cells.
+     *
+     * @return The box cells in ascending order
+     */
+    public int[] getBoxCells() {
+        return boxes.clone();
     }
 
     /**
@@ -283,7 +614,10 @@ public class BoardState implements Comparable<BoardState> {
      * @return A copy of the goals set
      */
     public Set<Point> getGoals() {
-        return new HashSet<Point>(goals);
+        Set<Point> goals = new HashSet<Point>();
+        for (int i = 0; i < topology.getGoalCount(); i++)
+            goals.add(pointOf(topology.getGoal(i)));
+        return goals;
     }
 
     /**
@@ -292,7 +626,27 @@ public class BoardState implements Comparable<BoardState> {
      * @return A copy of the boxes set
      */
     public Set<Point> getBoxes() {
-        return new HashSet<Point>(boxes);
+        Set<Point> set = new HashSet<Point>();
+        for (int box : boxes)
+            set.add(pointOf(box));
+        return set;
+    }
+
+    /**
+     * Converts a cell to its board position.
+     */
+    private Point pointOf(int cell) {
+        return new Point(topology.getRow(cell), topology.getColumn(cell));
+    }
+
+    /**
+     * Converts a board position to its cell.
+     */
+    private int cellOf(Point point) {
+        int cell = topology.cellAt(point.x, point.y);
+        if (cell == LevelTopology.NONE)
+            throw new IllegalArgumentException("Not a floor cell: " + point);
+        return cell;
     }
 
     /**
@@ -324,7 +678,7 @@ public class BoardState implements Comparable<BoardState> {
         if (!(obj instanceof BoardState))
             return false;
         BoardState other = (BoardState) obj;
-        return player.equals(other.player) && boxes.equals(other.boxes);
+        return player == other.player && hasSameBoxes(other);
     }
 
     /**
@@ -334,7 +688,8 @@ public class BoardState implements Comparable<BoardState> {
      */
     @Override
     public int hashCode() {
-        return player.hashCode() + boxes.hashCode();
+        long hash = stateHash(0);
+        return (int) (hash ^ (hash >>> 32));
     }
 
     /**
@@ -344,13 +699,67 @@ public class BoardState implements Comparable<BoardState> {
      */
     @Override
     public String toString() {
+        int rows = topology.getRows();
+        int columns = topology.getColumns();
+        StringBuilder sb = new StringBuilder(rows * (columns + 1));
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++)
+                sb.append(charAt(i, j));
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Renders the board on one line in the run-length encoded format
+     * {@link LevelReader} reads, with '-' for floor: a count repeats the
+     * next character and '|' separates rows. The text grows with the number
+     * of runs rather than the area, so it suits large sparse levels, e.g. as
+     * a key identifying the level.
+     *
+     * @return The run-length encoded board
+     */
+    public String toRunLengthString() {
+        int rows = topology.getRows();
+        int columns = topology.getColumns();
         StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < board.length; i++) {
-            for (int j = 0; j < board[i].length; j++) {
-                sb.append(fieldToChar.get(board[i][j]));
+        for (int i = 0; i < rows; i++) {
+            if (i > 0)
+                sb.append('|');
+            int j = 0;
+            while (j < columns) {
+                char c = charAt(i, j);
+                int run = 1;
+                while (j + run < columns && charAt(i, j + run) == c)
+                    run++;
+                if (run > 1)
+                    sb.append(run);
+                sb.append(c == ' ' ? '-' : c);
+                j += run;
             }
-            sb.append('\n');
         }
         return sb.toString();
     }
+
+    /**
+     * Gets the character of a board position, as in the input format.
+     *
+     * @param row The row
+     * @param col The column
+     * @return The character
+     */
+    private char charAt(int row, int col) {
+        int cell = topology.cellAt(row, col);
+        byte field;
+        if (cell == LevelTopology.NONE) {
+            field = topology.isWall(row, col) ? WALL : 0;
+        } else {
+            field = topology.isGoal(cell) ? GOAL : 0;
+            if (cell == player)
+                field |= PLAYER;
+            else if (hasBox(cell))
+                field |= BOX;
+        }
+        return fieldToChar.get(field);
+    }
 }
@@ -12,6 +12,9 @@ public class Direction {
     public static final Point DOWN = new Point(1, 0);
     public static final Point LEFT = new Point(0, -1);
 
+    // Directions by index, the order of the neighbour tables of LevelTopology
+    private static final Point[] BY_INDEX = { UP, RIGHT, DOWN, LEFT };
+
     // Private constructor to prevent instantiation
     private Direction() {
     }
@@ -35,4 +38,56 @@ public class Direction {
         else
             throw new IllegalStateException("Non-existent direction: " + direction);
     }
+
+    /**
+     * Converts a direction point to its index: 0 up, 1 right, 2 down, 3 left.
+     *
+     * @param direction The direction
+     * @return The index of the direction
+     * @throws IllegalStateException if the direction is invalid
+     */
+    public static int toIndex(Point direction) {
+        if (direction.x == -1 && direction.y == 0)
+            return 0;
+        else if (direction.x == 0 && direction.y == 1)
+            return 1;
+        else if (direction.x == 1 && direction.y == 0)
+            return 2;
+        else if (direction.x == 0 && direction.y == -1)
+            return 3;
+        else
+            throw new IllegalStateException("Non-existent direction: " + direction);
+    }
+
+    /**
+     * Converts an index to its direction.
+     *
+     * @param index The index (0 up, 1 right, 2 down, 3 left)
+     * @return The corresponding direction
+     */
+    public static Point fromIndex(int index) {
+        return BY_INDEX[index];
+    }
+
+    /**
+     * Converts a character to its direction.
+     *
+     * @param c The character (u, r, d, l, case-insensitive)
+     * @return The corresponding direction
+     * @throws IllegalArgumentException if the character is not a direction
+     */
+    public static Point charToDirection(char c) {
+        switch (Character.toLowerCase(c)) {
+            case 'u':
+                return UP;
+            case 'r':
+                return RIGHT;
+            case 'd':
+                return DOWN;
+            case 'l':
+                return LEFT;
+            default:
+                throw new IllegalArgumentException("Non-existent direction: " + c);
+        }
+    }
 }
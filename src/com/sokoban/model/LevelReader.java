@@ -0,0 +1,373 @@
+package com.sokoban.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads levels one at a time from a channel, so a collection of thousands of
+ * levels is never held in memory as a whole and the first level can be
+ * solved while the rest are still being read.
+ *
+ * Two formats are recognised and may be mixed in one input:
+ * <ul>
+ * <li>XSB/SOK collections: a level is a run of consecutive board lines, and
+ * its dimensions are inferred from the longest row and the number of rows.
+ * Any other line, such as a title, a "; comment" or "Author: ..." line, or a
+ * blank line, ends the level and is otherwise ignored. Board lines may use
+ * '-' or '_' for floor and may be run-length encoded, where a count repeats
+ * the next character and '|' separates rows, e.g. "4#|#@$.#|4#".</li>
+ * <li>The original format: a line with the number of columns and a line with
+ * the number of rows, followed by exactly that many rows.</li>
+ * </ul>
+ */
+public class LevelReader implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    // Longest row a run-length count may expand to
+    private static final int MAX_ROW_LENGTH = 1 << 16;
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+    private boolean endOfInput;
+    private byte[] line;
+    private String pushedBack;
+    private int lineNumber;
+    private int levelCount;
+
+    /**
+     * Constructs a level reader.
+     *
+     * @param channel The channel to read from, closed with the reader
+     */
+    public LevelReader(ReadableByteChannel channel) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.buffer.flip();
+        this.line = new byte[256];
+    }
+
+    /**
+     * Opens a level file or collection for reading.
+     *
+     * @param path The file
+     * @return The reader
+     * @throws IOException If the file cannot be opened
+     */
+    public static LevelReader open(Path path) throws IOException {
+        return new LevelReader(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    /**
+     * Creates a reader over a stream. Closing the reader closes the stream.
+     *
+     * @param in The stream
+     * @return The reader
+     */
+    public static LevelReader of(InputStream in) {
+        return new LevelReader(Channels.newChannel(in));
+    }
+
+    /**
+     * Creates a reader over level text.
+     *
+     * @param text The text of one or more levels
+     * @return The reader
+     */
+    public static LevelReader of(String text) {
+        return of(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Reads the next level.
+     *
+     * @return The parsed BoardState, or null if there are no more levels
+     * @throws IOException If the channel fails or the level is malformed
+     */
+    public BoardState read() throws IOException {
+        String text;
+        while ((text = nextLine()) != null) {
+            if (isNumber(text)) {
+                String rows = nextLine();
+                if (rows != null && isNumber(rows))
+                    return readSized(Integer.parseInt(text.trim()), Integer.parseInt(rows.trim()));
+                pushedBack = rows;
+            } else if (isBoardLine(text)) {
+                return readBoard(text);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The number of levels read so far
+     */
+    public int getLevelCount() {
+        return levelCount;
+    }
+
+    /**
+     * Returns the remaining levels as a lazily read stream. Read errors are
+     * thrown as UncheckedIOException, and closing the stream closes the
+     * reader.
+     *
+     * @return The levels
+     */
+    public Stream<BoardState> stream() {
+        Iterator<BoardState> levels = new Iterator<BoardState>() {
+            private BoardState next;
+            private boolean done;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null && !done) {
+                    try {
+                        next = read();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    done = next == null;
+                }
+                return next != null;
+            }
+
+            @Override
+            public BoardState next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                BoardState level = next;
+                next = null;
+                return level;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(levels,
+                Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(() -> {
+                    try {
+                        close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reads a level in the original format, whose dimensions are given.
+     *
+     * @param width  The number of columns
+     * @param height The number of rows
+     * @return The parsed BoardState
+     * @throws IOException If the channel fails or the level is malformed
+     */
+    private BoardState readSized(int width, int height) throws IOException {
+        if (width <= 0 || height <= 0 || width > MAX_ROW_LENGTH || height > MAX_ROW_LENGTH)
+            throw new IOException("Invalid level dimensions " + width + "x" + height + " at line " + lineNumber);
+        int start = lineNumber + 1;
+        List<String> rows = new ArrayList<String>(height);
+        for (int row = 0; row < height; row++) {
+            String text = nextLine();
+            rows.add(text == null ? "" : text);
+        }
+        return parse(rows, width, start);
+    }
+
+    /**
+     * Reads a level made of consecutive board lines.
+     *
+     * @param first The first board line, already read
+     * @return The parsed BoardState
+     * @throws IOException If the channel fails or the level is malformed
+     */
+    private BoardState readBoard(String first) throws IOException {
+        int start = lineNumber;
+        List<String> rows = new ArrayList<String>();
+        expand(first, rows);
+        String text;
+        while ((text = nextLine()) != null && isBoardLine(text))
+            expand(text, rows);
+        // A header line directly after the board starts the next level
+        pushedBack = text != null && isNumber(text) ? text : null;
+        int width = 0;
+        for (String row : rows)
+            width = Math.max(width, row.length());
+        return parse(rows, width, start);
+    }
+
+    /**
+     * Builds a level from its rows.
+     *
+     * @param rows  The rows
+     * @param width The number of columns
+     * @param start The line number of the first row, for error messages
+     * @return The parsed BoardState
+     * @throws IOException If the level is malformed
+     */
+    private BoardState parse(List<String> rows, int width, int start) throws IOException {
+        levelCount++;
+        try {
+            return BoardState.parseRows(rows, width);
+        } catch (IOException e) {
+            throw new IOException("Level " + levelCount + " at line " + start + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Adds the rows of a board line, expanding run-length counts.
+     *
+     * @param text The board line
+     * @param rows The list to add the rows to
+     * @throws IOException If a count is too large or not followed by a
+     *                     character
+     */
+    private void expand(String text, List<String> rows) throws IOException {
+        StringBuilder row = new StringBuilder(text.length());
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                count = count * 10 + (c - '0');
+                if (count > MAX_ROW_LENGTH)
+                    throw new IOException("Run length too long at line " + lineNumber);
+            } else if (c == '|') {
+                rows.add(row.toString());
+                row.setLength(0);
+                count = 0;
+            } else {
+                for (int n = Math.max(1, count); n > 0; n--)
+                    row.append(c);
+                count = 0;
+            }
+        }
+        if (count != 0)
+            throw new IOException("Run length without a character at line " + lineNumber);
+        rows.add(row.toString());
+    }
+
+    /**
+     * Checks if a line is part of a board: it holds a wall and nothing but
+     * board characters, run-length counts and row separators.
+     *
+     * @param text The line
+     * @return True if the line is a board line
+     */
+    private static boolean isBoardLine(String text) {
+        boolean wall = false;
+        for (int i = 0; i < text.length(); i++) {
+            switch (text.charAt(i)) {
+                case '#':
+                    wall = true;
+                    break;
+                case ' ':
+                case '-':
+                case '_':
+                case '.':
+                case '@':
+                case '+':
+                case '$':
+                case '*':
+                case '|':
+                    break;
+                default:
+                    if (text.charAt(i) < '0' || text.charAt(i) > '9')
+                        return false;
+            }
+        }
+        return wall;
+    }
+
+    /**
+     * Checks if a line is a number, as in the header of the original format.
+     *
+     * @param text The line
+     * @return True if the trimmed line is a non-empty run of digits
+     */
+    private static boolean isNumber(String text) {
+        String trimmed = text.trim();
+        if (trimmed.isEmpty() || trimmed.length() > 9)
+            return false;
+        for (int i = 0; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if (c < '0' || c > '9')
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads the next line, without its line terminator and trailing
+     * whitespace.
+     *
+     * @return The line, or null at the end of the input
+     * @throws IOException If the channel fails
+     */
+    private String nextLine() throws IOException {
+        if (pushedBack != null) {
+            String text = pushedBack;
+            pushedBack = null;
+            return text;
+        }
+        int length = 0;
+        boolean any = false;
+        while (true) {
+            if (!buffer.hasRemaining()) {
+                if (endOfInput || !fill()) {
+                    if (!any)
+                        return null;
+                    break;
+                }
+            }
+            any = true;
+            byte b = buffer.get();
+            if (b == '\n')
+                break;
+            if (length == line.length)
+                line = Arrays.copyOf(line, length * 2);
+            line[length++] = b;
+        }
+        lineNumber++;
+        while (length > 0 && (line[length - 1] == '\r' || line[length - 1] == ' ' || line[length - 1] == '\t'))
+            length--;
+        return new String(line, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Refills the buffer from the channel.
+     *
+     * @return False if the channel is exhausted
+     * @throws IOException If the channel fails
+     */
+    private boolean fill() throws IOException {
+        buffer.clear();
+        int read;
+        do {
+            read = channel.read(buffer);
+        } while (read == 0);
+        buffer.flip();
+        if (read < 0) {
+            endOfInput = true;
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,336 @@
+package com.sokoban.model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The static layout of a level as a graph of cells, shared by every state of
+ * the level.
+ *
+ * Only the cells that matter to a search are numbered: the floor the player
+ * can reach from the start, ignoring boxes, and any floor around a box or
+ * goal that lies outside it. The cells are numbered densely from 0 to
+ * size() - 1 in row-major order, so states can store positions as small
+ * ints and per-cell tables can be plain arrays. Neighbour tables give the
+ * adjacent cell in each direction (indexed as in
+ * {@link Direction#toIndex}), or NONE where there is a wall, so moving is an
+ * array lookup instead of building and bounds-checking points.
+ *
+ * Goal and dead-square flags are precomputed per cell. A dead square is a
+ * cell from which a box can never be pushed to any goal, even with no other
+ * boxes on the board.
+ *
+ * Nothing is stored per board position, so large sparse levels cost memory
+ * in proportion to their floor and walls rather than their area: the cells
+ * of each row are found by binary search over their columns, and the walls
+ * are stored as runs per row.
+ */
+public final class LevelTopology {
+    /** Neighbour of a cell next to a wall or the edge of the board. */
+    public static final int NONE = -1;
+
+    // Direction indices into the neighbour tables
+    public static final int UP = 0;
+    public static final int RIGHT = 1;
+    public static final int DOWN = 2;
+    public static final int LEFT = 3;
+
+    private final int rows;
+    private final int columns;
+    // First cell of each row, with the cell count at the end
+    private final int[] rowStart;
+    // First wall run of each row, with the run count at the end
+    private final int[] wallRowStart;
+    // Wall runs as pairs of first and last column
+    private final int[] wallRuns;
+    private final int[] rowOf;
+    private final int[] columnOf;
+    // Neighbouring cell by direction, then by cell
+    private final int[][] neighbour;
+    private final boolean[] goal;
+    private final boolean[] dead;
+    private final int[] goals;
+
+    /**
+     * Builds the topology of a level.
+     *
+     * @param board  The fields of every board position, by row and column
+     * @param starts The board positions (row * columns + column) numbering
+     *               starts from: the player, the boxes and the goals
+     */
+    LevelTopology(byte[][] board, int[] starts) {
+        rows = board.length;
+        columns = rows == 0 ? 0 : board[0].length;
+        wallRowStart = new int[rows + 1];
+        int[] runs = new int[16];
+        int runCount = 0;
+        for (int row = 0; row < rows; row++) {
+            wallRowStart[row] = runCount;
+            for (int col = 0; col < columns; col++) {
+                if ((board[row][col] & BoardState.WALL) == 0)
+                    continue;
+                int first = col;
+                while (col + 1 < columns && (board[row][col + 1] & BoardState.WALL) != 0)
+                    col++;
+                if (2 * runCount + 2 > runs.length)
+                    runs = Arrays.copyOf(runs, runs.length * 2);
+                runs[2 * runCount] = first;
+                runs[2 * runCount + 1] = col;
+                runCount++;
+            }
+        }
+        wallRowStart[rows] = runCount;
+        wallRuns = Arrays.copyOf(runs, 2 * runCount);
+
+        // Flood fill the non-wall positions connected to a start
+        BitSet numbered = new BitSet();
+        int[] queue = new int[Math.max(16, starts.length)];
+        int tail = 0;
+        for (int start : starts) {
+            if (!isWall(start / columns, start % columns) && !numbered.get(start)) {
+                numbered.set(start);
+                queue[tail++] = start;
+            }
+        }
+        for (int head = 0; head < tail; head++) {
+            int position = queue[head];
+            int row = position / columns;
+            int col = position % columns;
+            if (tail + 4 > queue.length)
+                queue = Arrays.copyOf(queue, queue.length * 2);
+            tail = visit(numbered, queue, tail, row - 1, col);
+            tail = visit(numbered, queue, tail, row, col + 1);
+            tail = visit(numbered, queue, tail, row + 1, col);
+            tail = visit(numbered, queue, tail, row, col - 1);
+        }
+
+        int size = numbered.cardinality();
+        rowStart = new int[rows + 1];
+        rowOf = new int[size];
+        columnOf = new int[size];
+        goal = new boolean[size];
+        int cell = 0;
+        int row = 0;
+        for (int position = numbered.nextSetBit(0); position >= 0; position = numbered.nextSetBit(position + 1)) {
+            rowOf[cell] = position / columns;
+            columnOf[cell] = position % columns;
+            while (row <= rowOf[cell])
+                rowStart[row++] = cell;
+            goal[cell] = (board[rowOf[cell]][columnOf[cell]] & BoardState.GOAL) != 0;
+            cell++;
+        }
+        while (row <= rows)
+            rowStart[row++] = size;
+
+        neighbour = new int[4][size];
+        for (cell = 0; cell < size; cell++) {
+            boolean left = cell > 0 && rowOf[cell - 1] == rowOf[cell] && columnOf[cell - 1] == columnOf[cell] - 1;
+            boolean right = cell + 1 < size && rowOf[cell + 1] == rowOf[cell]
+                    && columnOf[cell + 1] == columnOf[cell] + 1;
+            neighbour[UP][cell] = cellAt(rowOf[cell] - 1, columnOf[cell]);
+            neighbour[RIGHT][cell] = right ? cell + 1 : NONE;
+            neighbour[DOWN][cell] = cellAt(rowOf[cell] + 1, columnOf[cell]);
+            neighbour[LEFT][cell] = left ? cell - 1 : NONE;
+        }
+
+        int goalCount = 0;
+        for (boolean g : goal)
+            goalCount += g ? 1 : 0;
+        goals = new int[goalCount];
+        goalCount = 0;
+        for (cell = 0; cell < size; cell++) {
+            if (goal[cell])
+                goals[goalCount++] = cell;
+        }
+        dead = deadSquares();
+    }
+
+    /**
+     * Adds a position to the flood fill if it is an unvisited non-wall
+     * position on the board.
+     *
+     * @return The new queue length
+     */
+    private int visit(BitSet numbered, int[] queue, int tail, int row, int col) {
+        if (row < 0 || row >= rows || col < 0 || col >= columns)
+            return tail;
+        int position = row * columns + col;
+        if (numbered.get(position) || isWall(row, col))
+            return tail;
+        numbered.set(position);
+        queue[tail] = position;
+        return tail + 1;
+    }
+
+    /**
+     * Finds the dead squares by pulling a box backwards from every goal at
+     * once. A box can be pulled from b to b + d when the player can stand on
+     * b + d and b + 2d; cells no pull reaches are dead.
+     *
+     * @return The dead-square flags by cell
+     */
+    private boolean[] deadSquares() {
+        int size = size();
+        boolean[] live = new boolean[size];
+        int[] queue = new int[size];
+        int tail = 0;
+        for (int g : goals) {
+            live[g] = true;
+            queue[tail++] = g;
+        }
+        for (int head = 0; head < tail; head++) {
+            int box = queue[head];
+            for (int d = 0; d < 4; d++) {
+                int to = neighbour[d][box];
+                if (to != NONE && !live[to] && neighbour[d][to] != NONE) {
+                    live[to] = true;
+                    queue[tail++] = to;
+                }
+            }
+        }
+        boolean[] dead = new boolean[size];
+        for (int cell = 0; cell < size; cell++)
+            dead[cell] = !live[cell];
+        return dead;
+    }
+
+    /**
+     * @return The number of numbered cells
+     */
+    public int size() {
+        return rowOf.length;
+    }
+
+    /**
+     * @return The number of rows of the board
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return The number of columns of the board
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Gets the cell at a board position.
+     *
+     * @param row The row
+     * @param col The column
+     * @return The cell index, or NONE for walls, unnumbered floor and
+     *         positions off the board
+     */
+    public int cellAt(int row, int col) {
+        if (row < 0 || row >= rows || col < 0 || col >= columns)
+            return NONE;
+        int low = rowStart[row];
+        int high = rowStart[row + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (columnOf[mid] < col)
+                low = mid + 1;
+            else if (columnOf[mid] > col)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return NONE;
+    }
+
+    /**
+     * Checks if a board position is a wall. Positions off the board count as
+     * walls.
+     *
+     * @param row The row
+     * @param col The column
+     * @return True if the position is a wall
+     */
+    public boolean isWall(int row, int col) {
+        if (row < 0 || row >= rows || col < 0 || col >= columns)
+            return true;
+        int low = wallRowStart[row];
+        int high = wallRowStart[row + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (wallRuns[2 * mid + 1] < col)
+                low = mid + 1;
+            else if (wallRuns[2 * mid] > col)
+                high = mid - 1;
+            else
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param cell The cell index
+     * @return The row of the cell
+     */
+    public int getRow(int cell) {
+        return rowOf[cell];
+    }
+
+    /**
+     * @param cell The cell index
+     * @return The column of the cell
+     */
+    public int getColumn(int cell) {
+        return columnOf[cell];
+    }
+
+    /**
+     * Gets the neighbouring cell in a direction.
+     *
+     * @param direction The direction index
+     * @param cell      The cell index
+     * @return The neighbouring cell, or NONE if it is a wall
+     */
+    public int neighbour(int direction, int cell) {
+        return neighbour[direction][cell];
+    }
+
+    /**
+     * @param cell The cell index
+     * @return True if the cell is a goal
+     */
+    public boolean isGoal(int cell) {
+        return goal[cell];
+    }
+
+    /**
+     * @param cell The cell index
+     * @return True if a box on the cell can never reach a goal
+     */
+    public boolean isDead(int cell) {
+        return dead[cell];
+    }
+
+    /**
+     * @return The number of goals
+     */
+    public int getGoalCount() {
+        return goals.length;
+    }
+
+    /**
+     * @param i The goal number, from 0 to getGoalCount() - 1
+     * @return The cell of the goal; goals are in cell order
+     */
+    public int getGoal(int i) {
+        return goals[i];
+    }
+
+    /**
+     * Computes the Manhattan distance between two cells.
+     *
+     * @param a The first cell
+     * @param b The second cell
+     * @return The distance
+     */
+    public int distance(int a, int b) {
+        return Math.abs(rowOf[a] - rowOf[b]) + Math.abs(columnOf[a] - columnOf[b]);
+    }
+}
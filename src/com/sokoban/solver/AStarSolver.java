@@ -1,6 +1,8 @@
 package com.sokoban.solver;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.PriorityQueue;
 
 import com.sokoban.heuristic.Heuristic;
@@ -9,9 +11,19 @@ import com.sokoban.model.BoardState;
 /**
  * Implements A* Search for solving Sokoban puzzles.
  * A* uses a heuristic function to guide the search towards the goal.
+ *
+ * With partial expansion enabled (PEA*), states are ordered by f = g + h and
+ * an expansion only inserts the children whose f equals the parent's stored f.
+ * The parent is re-queued with the next-best child f, so children that would
+ * never be expanded are never put into the open list.
  */
 public class AStarSolver extends AbstractSolver {
     private Heuristic heuristic;
+    private boolean partialExpansion;
+
+    // Highest child f already inserted for each partially expanded state
+    private Map<BoardState, Integer> insertedUpTo;
+    private int requeued;
 
     /**
      * Private constructor for initialization.
@@ -21,6 +33,7 @@ public class AStarSolver extends AbstractSolver {
     private AStarSolver(BoardState initialBoard) {
         super(initialBoard);
         queue = new PriorityQueue<BoardState>();
+        insertedUpTo = new IdentityHashMap<BoardState, Integer>();
     }
 
     /**
@@ -34,18 +47,152 @@ public class AStarSolver extends AbstractSolver {
         this.heuristic = heuristic;
     }
 
+    /**
+     * Enables or disables partial expansion (PEA*).
+     *
+     * @param enabled True to enable partial expansion
+     */
+    public void setPartialExpansion(boolean enabled) {
+        this.partialExpansion = enabled;
+    }
+
+    /**
+     * Initializes the search by scoring the initial state when using partial
+     * expansion.
+     */
+    @Override
+    protected void searchStart() {
+        if (partialExpansion)
+            scoreF(currentState);
+        super.searchStart();
+    }
+
     /**
      * Implements the A* algorithm by scoring moves using the heuristic
-     * and adding them to a priority queue.
+     * and adding them to a priority queue. The moves are scored as one
+     * batch.
      *
      * @param validMoves List of valid moves
      */
     @Override
     protected void searchFunction(ArrayList<BoardState> validMoves) {
+        if (partialExpansion) {
+            partialExpand(validMoves);
+            return;
+        }
+        scoreAll(heuristic, validMoves);
         for (BoardState move : validMoves) {
-            backtrack.put(move, currentState);
-            heuristic.score(move);
+            recordParent(move, currentState);
             queue.add(move);
         }
     }
+
+    /**
+     * Inserts only the children whose f is within the parent's stored f and
+     * re-queues the parent with the lowest f of the remaining children.
+     *
+     * @param validMoves List of valid moves
+     */
+    private void partialExpand(ArrayList<BoardState> validMoves) {
+        int storedF = currentState.getCost();
+        Integer previous = insertedUpTo.get(currentState);
+        int nextF = Integer.MAX_VALUE;
+
+        scoreAll(heuristic, validMoves);
+        for (BoardState move : validMoves) {
+            move.setCost(move.getDepth() + move.getCost());
+            int f = move.getCost();
+            if (f > storedF) {
+                nextF = Math.min(nextF, f);
+            } else if (previous == null || f > previous) {
+                recordParent(move, currentState);
+                queue.add(move);
+            }
+        }
+
+        insertedUpTo.remove(currentState);
+        if (nextF != Integer.MAX_VALUE) {
+            // The parent goes back as a copy, so the state in the explored
+            // set keeps its cost
+            BoardState parent = currentState.withCells(currentState.getPlayerCell(), currentState.getBoxCells(),
+                    currentState.getDirectionTaken(), currentState.getDepth(), currentState.getMacroMoves(),
+                    currentState.getMacroPushes());
+            parent.setParent(currentState.getParent());
+            parent.setCost(nextF);
+            insertedUpTo.put(parent, storedF);
+            queue.add(parent);
+            requeued++;
+        }
+    }
+
+    /**
+     * Scores a state with f = g + h, using the depth as the path cost.
+     *
+     * @param state The state to score
+     * @return The f value
+     */
+    private int scoreF(BoardState state) {
+        score(heuristic, state);
+        state.setCost(state.getDepth() + state.getCost());
+        return state.getCost();
+    }
+
+    /**
+     * Recognises a parent re-queued by partial expansion, which is expanded
+     * again for its remaining children but counted only by
+     * {@link #getRequeued}.
+     *
+     * @param state The state taken from the fringe
+     * @return True if the state was re-queued by partial expansion
+     */
+    @Override
+    protected boolean isRequeued(BoardState state) {
+        return partialExpansion && insertedUpTo.containsKey(state);
+    }
+
+    /**
+     * Traces h rather than the f stored with partial expansion, as the depth
+     * is recorded separately.
+     *
+     * @param state The board state
+     * @return The heuristic value of the state
+     */
+    @Override
+    protected int traceEstimate(BoardState state) {
+        return partialExpansion ? state.getCost() - state.getDepth() : state.getCost();
+    }
+
+    /**
+     * Stores the highest child f already inserted for a partially expanded
+     * state, or -1 if it has none.
+     *
+     * @param state A state in the fringe
+     * @return The value to store
+     */
+    @Override
+    protected int checkpointTag(BoardState state) {
+        Integer insertedF = insertedUpTo.get(state);
+        return insertedF == null ? -1 : insertedF;
+    }
+
+    /**
+     * Restores the highest child f inserted for a partially expanded state.
+     *
+     * @param state The restored state
+     * @param tag   The value stored by {@link #checkpointTag}
+     */
+    @Override
+    protected void restoreTag(BoardState state, int tag) {
+        if (tag >= 0)
+            insertedUpTo.put(state, tag);
+    }
+
+    /**
+     * Gets the number of times a partially expanded state was re-queued.
+     *
+     * @return The number of re-queued states
+     */
+    public int getRequeued() {
+        return requeued;
+    }
 }
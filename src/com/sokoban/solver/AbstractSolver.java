@@ -1,32 +1,90 @@
 package com.sokoban.solver;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
 
+import com.sokoban.heuristic.Heuristic;
+import com.sokoban.jfr.HeuristicEvaluationEvent;
+import com.sokoban.jfr.SearchEvent;
+import com.sokoban.jfr.SearchTimeoutEvent;
 import com.sokoban.model.BoardState;
 import com.sokoban.model.Direction;
 import com.sokoban.model.NoSolutionException;
+import com.sokoban.util.BitstateHashSet;
 import com.sokoban.util.DeadlockDetector;
+import com.sokoban.util.GoalRoomMacroDetector;
+import com.sokoban.util.LevelAnalysis;
+import com.sokoban.util.TunnelMacroDetector;
 
 /**
  * Abstract solver class with base search functionality.
  * Provides a template for different search algorithms.
  */
 public abstract class AbstractSolver {
+    // One in this many heuristic calls is recorded as a JFR event
+    private static final int HEURISTIC_SAMPLE_MASK = 255;
+    // The clock is read on one in this many timeout checks
+    private static final int CLOCK_CHECK_MASK = 255;
+
+    private final BoardState initialState;
     protected BoardState currentState;
     protected HashSet<BoardState> visited;
-    protected HashMap<BoardState, BoardState> backtrack;
     protected Queue<BoardState> queue;
 
+    // Approximate visited set, replaces visited when bitstate hashing is enabled
+    private BitstateHashSet bitstate;
+
     private long startTime;
     private long endTime;
-    private int previouslySeen;
+    protected int previouslySeen;
+    private int macroMovesApplied;
+    protected final SearchMetrics metrics = new SearchMetrics();
+    // JFR event spanning the running search
+    private SearchEvent searchEvent;
+    // Only picks the heuristic calls sampled as JFR events, so an update lost
+    // to concurrent callers does no harm
+    private int heuristicCalls;
+
+    // Precomputed dead squares and macro detectors, built on first use
+    private LevelAnalysis analysis;
+    // Tunnel macro detector, null when tunnel macros are disabled
+    private TunnelMacroDetector tunnelMacros;
+    // Goal-room macro detector, null when goal-room macros are disabled
+    private GoalRoomMacroDetector goalRoomMacros;
 
     // Timeout in milliseconds (default: 30 seconds)
     private long timeoutMillis = 30000;
+    private long startNanos;
+    private long deadlineNanos;
+    private int timeoutChecks;
+    // Cancelled from another thread to stop a running search
+    private CancellationToken token = new CancellationToken();
+    // Why the last search stopped early, null if it did not
+    private SearchResult.Status stopStatus;
+    private String stopMessage;
+
+    // State with the lowest estimate of the remaining distance seen so far
+    private BoardState bestState;
+    private int bestEstimate;
+    // True once a heuristic has scored a state, which then gives the estimates
+    private boolean heuristicEstimates;
+
+    // Checkpoint file, null when checkpoints are disabled
+    private Path checkpointFile;
+    private long checkpointIntervalMillis;
+    private long nextCheckpointNanos;
+    // Failed periodic checkpoint writes and the error of the last one
+    private int checkpointFailures;
+    private String checkpointError;
+    // True when the visited set and fringe were restored from a checkpoint
+    private boolean resumed;
+    // Trace of the search, null when tracing is disabled
+    private TraceRecorder trace;
 
     /**
      * Constructs a new AbstractSolver with the given initial state.
@@ -34,9 +92,9 @@ public abstract class AbstractSolver {
      * @param initialState The initial board state
      */
     public AbstractSolver(BoardState initialState) {
+        this.initialState = initialState;
         currentState = initialState;
         visited = new HashSet<BoardState>();
-        backtrack = new HashMap<BoardState, BoardState>();
         startTime = endTime = -1;
         previouslySeen = 0;
     }
@@ -50,6 +108,191 @@ public abstract class AbstractSolver {
         this.timeoutMillis = timeoutMillis;
     }
 
+    /**
+     * Enables or disables tunnel macro moves.
+     * When enabled, pushing a box into a tunnel produces a single successor
+     * with the box pushed through to the tunnel exit.
+     *
+     * @param enabled True to enable tunnel macro moves
+     */
+    public void setTunnelMacros(boolean enabled) {
+        tunnelMacros = enabled ? getLevelAnalysis().getTunnelMacros() : null;
+    }
+
+    /**
+     * Enables or disables goal-room macro moves.
+     * When enabled, the level is analysed for goal rooms with a single
+     * entrance, and pushing a box onto an entrance produces a single successor
+     * with the box pushed to its goal in the precomputed packing order.
+     *
+     * @param enabled True to enable goal-room macro moves
+     */
+    public void setGoalRoomMacros(boolean enabled) {
+        goalRoomMacros = enabled ? getLevelAnalysis().getGoalRoomMacros() : null;
+    }
+
+    /**
+     * Sets a precomputed analysis of the level, so that it can be shared
+     * between solvers of the same level. Must be called before enabling
+     * macro moves.
+     *
+     * @param analysis The analysis of the initial state's level
+     */
+    public void setLevelAnalysis(LevelAnalysis analysis) {
+        this.analysis = analysis;
+    }
+
+    /**
+     * Gets the analysis of the level, computing it on first use.
+     *
+     * @return The level analysis
+     */
+    public LevelAnalysis getLevelAnalysis() {
+        if (analysis == null)
+            analysis = new LevelAnalysis(currentState);
+        return analysis;
+    }
+
+    /**
+     * Sets the token that stops the search when cancelled or past its
+     * deadline. The token's deadline applies in addition to the timeout.
+     *
+     * @param token The cancellation token
+     */
+    public void setCancellationToken(CancellationToken token) {
+        this.token = token;
+    }
+
+    /**
+     * Gets the token that stops the search.
+     *
+     * @return The cancellation token
+     */
+    public CancellationToken getCancellationToken() {
+        return token;
+    }
+
+    /**
+     * Enables checkpoints. The search state is written to the file when the
+     * search times out or is cancelled, and also periodically if an interval
+     * is given, so that a later run can resume it.
+     *
+     * @param file           The checkpoint file
+     * @param intervalMillis The time between periodic checkpoints in
+     *                       milliseconds, or 0 to only write on timeout
+     * @throws UnsupportedOperationException If the solver does not support
+     *                                       checkpoints
+     */
+    public void setCheckpoint(Path file, long intervalMillis) {
+        if (!supportsCheckpoints())
+            throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support checkpoints");
+        this.checkpointFile = file;
+        this.checkpointIntervalMillis = intervalMillis;
+    }
+
+    /**
+     * Restores the visited set and fringe of an earlier search of the same
+     * level with the same solver. The next call of search() continues from
+     * there with a fresh timeout.
+     *
+     * @param file The checkpoint file
+     * @throws IOException If the checkpoint cannot be read or belongs to
+     *                     another level or solver
+     * @throws UnsupportedOperationException If the solver does not support
+     *                                       checkpoints
+     */
+    public void resume(Path file) throws IOException {
+        if (!supportsCheckpoints())
+            throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support checkpoints");
+        if (bitstate != null)
+            throw new IllegalStateException("Checkpoints need exact duplicate detection");
+        SearchCheckpoint.read(this, file);
+        resumed = true;
+    }
+
+    /**
+     * Writes the visited set and fringe of the search to a checkpoint file.
+     * Must not be called while the search is running on another thread.
+     *
+     * @param file The checkpoint file
+     * @throws IOException If the file cannot be written
+     */
+    public void writeCheckpoint(Path file) throws IOException {
+        if (bitstate != null)
+            throw new IllegalStateException("Checkpoints need exact duplicate detection");
+        SearchCheckpoint.write(this, file);
+    }
+
+    /**
+     * Records the expansions, duplicates and deadlock prunes of the search
+     * to a trace. The caller opens and closes the recorder.
+     *
+     * @param trace The recorder, or null to disable tracing
+     * @throws UnsupportedOperationException If the solver does not support
+     *                                       tracing
+     */
+    public void setTrace(TraceRecorder trace) {
+        if (trace != null && !supportsTracing())
+            throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support tracing");
+        this.trace = trace;
+    }
+
+    /**
+     * Checks if the solver can write checkpoints and resume from them.
+     * Solvers that keep no fringe and visited set override this.
+     *
+     * @return True if checkpoints are supported
+     */
+    public boolean supportsCheckpoints() {
+        return true;
+    }
+
+    /**
+     * Checks if the solver can record a search trace.
+     *
+     * @return True if tracing is supported
+     */
+    public boolean supportsTracing() {
+        return true;
+    }
+
+    /**
+     * Enables approximate duplicate detection with bitstate hashing.
+     * Visited states are recorded as bits in a fixed-size table instead of
+     * being stored, so far more states fit in the same heap. A small fraction
+     * of unseen states may be wrongly pruned as already visited.
+     *
+     * @param bytes  The size of the bit table in bytes
+     * @param hashes The number of hash functions per state
+     */
+    public void setBitstateHashing(long bytes, int hashes) {
+        bitstate = new BitstateHashSet(bytes, hashes);
+    }
+
+    /**
+     * Searches for a solution and reports how the search ended instead of
+     * throwing. An unsolved result carries the state with the lowest
+     * estimate seen and the moves to reach it.
+     *
+     * @return The search result
+     */
+    public SearchResult solve() {
+        String solution = null;
+        SearchResult.Status status;
+        try {
+            solution = search();
+            status = SearchResult.Status.SOLVED;
+        } catch (NoSolutionException e) {
+            status = stopStatus != null ? stopStatus : SearchResult.Status.NO_SOLUTION;
+        }
+        BoardState best = solution != null ? currentState : bestState;
+        String bestMoves = solution;
+        if (bestMoves == null && best != null)
+            bestMoves = backtrackMoves(best);
+        return new SearchResult(status, stopMessage, solution, best, solution != null ? 0 : bestEstimate,
+                bestMoves, getNodesExplored(), getFringeLength(), getElapsedTimeMillis(), metrics);
+    }
+
     /**
      * Searches for a solution to the Sokoban puzzle.
      *
@@ -58,36 +301,173 @@ public abstract class AbstractSolver {
      */
     public String search() throws NoSolutionException {
         startTimer();
-        searchStart();
+        if (!resumed)
+            searchStart();
+        resumed = false;
+        nextCheckpointNanos = startNanos + checkpointIntervalMillis * 1000000;
+        checkpointFailures = 0;
+        checkpointError = null;
         while (!queue.isEmpty()) {
-            // Check for timeout
-            if (System.currentTimeMillis() - startTime > timeoutMillis) {
-                throw new NoSolutionException("Search timed out after " + timeoutMillis + " milliseconds");
-            }
+            checkTimeout();
 
             currentState = queue.poll();
-            if (visited.contains(currentState))
+            // A state put back to be expanded further was already counted,
+            // checked and traced when it was first expanded
+            boolean requeued = isRequeued(currentState);
+            if (!requeued && !markVisited(currentState)) {
                 previouslySeen++;
-            visited.add(currentState);
+                metrics.duplicate();
+                traceDuplicate(currentState);
+            }
 
             if (currentState.isSolved()) {
-                System.out.println(currentState);
                 String solution = backtrackMoves(currentState);
                 stopTimer();
                 return solution;
             }
 
             // Check for deadlocks
-            if (DeadlockDetector.hasDeadlock(currentState)) {
+            if (!requeued && isDeadlocked(currentState)) {
                 continue;
             }
+            if (!heuristicEstimates)
+                offerPartial(currentState, boxesOffGoal(currentState));
 
             ArrayList<BoardState> validMoves = getValidMoves();
+            if (!requeued) {
+                metrics.expanded();
+                metrics.generated(validMoves.size());
+                traceExpanded(currentState, validMoves.size());
+            }
             searchFunction(validMoves);
+            metrics.fringe(queue.size());
         }
+        stopTimer();
         throw new NoSolutionException();
     }
 
+    /**
+     * Checks if the search has been cancelled or has run past its timeout.
+     * The cancellation flag is read on every call, the clock only on every
+     * 256th, so this is cheap enough to call once per expansion.
+     *
+     * @throws NoSolutionException If the search was cancelled or timed out
+     */
+    protected void checkTimeout() throws NoSolutionException {
+        if (token.isCancelled())
+            stop(SearchResult.Status.CANCELLED, "cancelled", "Search cancelled");
+        if ((++timeoutChecks & CLOCK_CHECK_MASK) != 0)
+            return;
+        checkDeadline();
+    }
+
+    /**
+     * Checks if the search has been cancelled or has run past its timeout,
+     * reading the clock on every call. For solvers that check rarely, such
+     * as one waiting on worker threads.
+     *
+     * @throws NoSolutionException If the search was cancelled or timed out
+     */
+    protected void checkDeadline() throws NoSolutionException {
+        if (token.isCancelled())
+            stop(SearchResult.Status.CANCELLED, "cancelled", "Search cancelled");
+        long now = System.nanoTime();
+        if (now - deadlineNanos >= 0)
+            stop(SearchResult.Status.TIMEOUT, "timeout", "Search timed out after " + timeoutMillis + " milliseconds");
+        if (token.isExpired(now))
+            stop(SearchResult.Status.TIMEOUT, "deadline", "Search timed out at its cancellation deadline");
+        if (checkpointFile != null && checkpointIntervalMillis > 0 && now - nextCheckpointNanos >= 0) {
+            try {
+                writeCheckpoint(checkpointFile);
+            } catch (IOException e) {
+                // The search goes on and the write is retried at the next interval
+                checkpointFailures++;
+                checkpointError = e.toString();
+            }
+            nextCheckpointNanos = System.nanoTime() + checkpointIntervalMillis * 1000000;
+        }
+    }
+
+    /**
+     * Describes the periodic checkpoint writes of the last search that
+     * failed.
+     *
+     * @return The number of failed writes and the error of the last one, or
+     *         null if none failed
+     */
+    public String getCheckpointError() {
+        return checkpointFailures == 0 ? null : checkpointFailures + " failed, last: " + checkpointError;
+    }
+
+    /**
+     * Stops a search that was cancelled or timed out.
+     *
+     * @param status  How the search ended
+     * @param reason  The reason recorded in the JFR event
+     * @param message The message of the exception
+     * @throws NoSolutionException Always
+     */
+    private void stop(SearchResult.Status status, String reason, String message) throws NoSolutionException {
+        stopTimer();
+        recordTimeout(reason);
+        stopStatus = status;
+        stopMessage = message + saveCheckpoint();
+        throw new NoSolutionException(stopMessage);
+    }
+
+    /**
+     * Writes the final checkpoint of a stopped search, if checkpoints are
+     * enabled.
+     *
+     * @return A note on the checkpoint to append to the stop message
+     */
+    private String saveCheckpoint() {
+        if (checkpointFile == null)
+            return "";
+        try {
+            writeCheckpoint(checkpointFile);
+            return "; search state saved to " + checkpointFile;
+        } catch (IOException e) {
+            return "; could not save search state: " + e.getMessage();
+        }
+    }
+
+    /**
+     * Gets a solver-specific value to store with a fringe state in a
+     * checkpoint. Can be overridden by subclasses that keep extra state per
+     * fringe entry.
+     *
+     * @param state A state in the fringe
+     * @return The value to store
+     */
+    protected int checkpointTag(BoardState state) {
+        return 0;
+    }
+
+    /**
+     * Restores the value stored by {@link #checkpointTag} for a fringe state.
+     *
+     * @param state The restored state, already in the fringe
+     * @param tag   The stored value
+     */
+    protected void restoreTag(BoardState state, int tag) {
+    }
+
+    /**
+     * Records a JFR event for a search stopped by its timeout or cancellation.
+     *
+     * @param reason Why the search stopped
+     */
+    private void recordTimeout(String reason) {
+        SearchTimeoutEvent event = new SearchTimeoutEvent();
+        if (event.shouldCommit()) {
+            event.reason = reason;
+            event.timeout = timeoutMillis;
+            event.expanded = metrics.getExpanded();
+            event.commit();
+        }
+    }
+
     /**
      * Initializes the search.
      * Can be overridden by subclasses to provide specialized initialization.
@@ -98,11 +478,18 @@ public abstract class AbstractSolver {
 
     /**
      * Processes valid moves according to the specific search algorithm.
-     * Must be implemented by subclasses.
+     * Adds them to the end of the queue by default; queue-based solvers
+     * override this to order their fringe, and solvers that override
+     * search() never call it.
      *
      * @param validMoves List of valid moves
      */
-    protected abstract void searchFunction(ArrayList<BoardState> validMoves);
+    protected void searchFunction(ArrayList<BoardState> validMoves) {
+        for (BoardState move : validMoves) {
+            recordParent(move, currentState);
+            queue.add(move);
+        }
+    }
 
     /**
      * Gets the valid moves from the current state.
@@ -111,10 +498,8 @@ public abstract class AbstractSolver {
      */
     protected ArrayList<BoardState> getValidMoves() {
         ArrayList<BoardState> validMoves = new ArrayList<BoardState>(4);
-        addIfValid(validMoves, Direction.UP);
-        addIfValid(validMoves, Direction.RIGHT);
-        addIfValid(validMoves, Direction.DOWN);
-        addIfValid(validMoves, Direction.LEFT);
+        for (int direction = 0; direction < 4; direction++)
+            addIfValid(validMoves, direction);
         return validMoves;
     }
 
@@ -122,14 +507,238 @@ public abstract class AbstractSolver {
      * Adds a move to the valid moves list if it's valid.
      *
      * @param validMoves List of valid moves
-     * @param direction  The direction to check
+     * @param direction  The direction index to check
      */
-    private void addIfValid(ArrayList<BoardState> validMoves, java.awt.Point direction) {
+    private void addIfValid(ArrayList<BoardState> validMoves, int direction) {
         if (currentState.canMove(direction)) {
-            BoardState newState = currentState.getMove(direction);
-            if (!visited.contains(newState))
+            BoardState newState = null;
+            if (goalRoomMacros != null)
+                newState = goalRoomMacros.detectGoalRoomMacro(currentState, direction);
+            if (newState == null && tunnelMacros != null)
+                newState = tunnelMacros.detectTunnelMacro(currentState, direction);
+            if (newState != null)
+                macroMovesApplied++;
+            else
+                newState = currentState.getMove(direction);
+            if (!isVisited(newState))
                 validMoves.add(newState);
+            else
+                metrics.duplicate();
+        }
+    }
+
+    /**
+     * Checks if a state taken from the fringe was put back by its own
+     * earlier expansion to be expanded further, rather than reached again.
+     *
+     * @param state The state taken from the fringe
+     * @return True if the state was re-queued by the solver
+     */
+    protected boolean isRequeued(BoardState state) {
+        return false;
+    }
+
+    /**
+     * Records the state a move was generated from, for backtracking.
+     * Parent links are kept on the states themselves, so only the ancestors of
+     * states still referenced by the search stay in memory.
+     *
+     * @param move   The generated state
+     * @param parent The state it was generated from
+     */
+    protected void recordParent(BoardState move, BoardState parent) {
+        move.setParent(parent);
+    }
+
+    /**
+     * Checks if a state has been visited.
+     *
+     * @param state The board state
+     * @return True if the state has (apparently) been visited
+     */
+    protected boolean isVisited(BoardState state) {
+        long start = metrics.startTimer(SearchMetrics.Phase.HASHING);
+        boolean seen = bitstate != null ? bitstate.contains(state) : visited.contains(state);
+        metrics.stopTimer(SearchMetrics.Phase.HASHING, start);
+        return seen;
+    }
+
+    /**
+     * Marks a state as visited.
+     *
+     * @param state The board state
+     * @return True if the state had not been visited before
+     */
+    protected boolean markVisited(BoardState state) {
+        long start = metrics.startTimer(SearchMetrics.Phase.HASHING);
+        boolean added = bitstate != null ? bitstate.add(state) : visited.add(state);
+        metrics.stopTimer(SearchMetrics.Phase.HASHING, start);
+        return added;
+    }
+
+    /**
+     * Checks a state for corner and freeze deadlocks, counting prunes per
+     * detector.
+     *
+     * @param state The board state
+     * @return True if the state is deadlocked
+     */
+    protected boolean isDeadlocked(BoardState state) {
+        long start = metrics.startTimer(SearchMetrics.Phase.DEADLOCK);
+        DeadlockDetector.Type deadlock = DeadlockDetector.detect(state);
+        metrics.stopTimer(SearchMetrics.Phase.DEADLOCK, start);
+        return pruned(state, deadlock);
+    }
+
+    /**
+     * Checks a state for deadlocks, including boxes on the dead squares of
+     * the level analysis, counting prunes per detector.
+     *
+     * @param state    The board state
+     * @param analysis The analysis of the level
+     * @return True if the state is deadlocked
+     */
+    protected boolean isDeadlocked(BoardState state, LevelAnalysis analysis) {
+        long start = metrics.startTimer(SearchMetrics.Phase.DEADLOCK);
+        DeadlockDetector.Type deadlock = DeadlockDetector.detect(state, analysis);
+        metrics.stopTimer(SearchMetrics.Phase.DEADLOCK, start);
+        return pruned(state, deadlock);
+    }
+
+    /**
+     * Counts and traces a deadlock prune.
+     *
+     * @param state    The board state
+     * @param deadlock The kind of deadlock found, or null if there is none
+     * @return True if the state is deadlocked
+     */
+    private boolean pruned(BoardState state, DeadlockDetector.Type deadlock) {
+        if (deadlock == null)
+            return false;
+        metrics.deadlockPruned(deadlock);
+        if (trace != null)
+            trace.pruned(state, traceEstimate(state), deadlock);
+        return true;
+    }
+
+    /**
+     * Records the expansion of a state to the trace, if enabled.
+     *
+     * @param state    The expanded state
+     * @param children The number of successors generated
+     */
+    protected void traceExpanded(BoardState state, int children) {
+        if (trace != null)
+            trace.expanded(state, traceEstimate(state), children);
+    }
+
+    /**
+     * Records a duplicate state to the trace, if enabled.
+     *
+     * @param state The state already explored
+     */
+    protected void traceDuplicate(BoardState state) {
+        if (trace != null)
+            trace.duplicate(state, traceEstimate(state));
+    }
+
+    /**
+     * Gets the estimate of the remaining distance recorded in the trace: the
+     * heuristic value once a heuristic scores states, otherwise the number
+     * of boxes off their goals. States pruned before being scored carry
+     * whatever cost they were generated with.
+     *
+     * @param state The board state
+     * @return The estimate
+     */
+    protected int traceEstimate(BoardState state) {
+        return heuristicEstimates ? state.getCost() : boxesOffGoal(state);
+    }
+
+    /**
+     * Scores a state with a heuristic, timing the call.
+     *
+     * @param heuristic The heuristic
+     * @param state     The board state
+     */
+    protected void score(Heuristic heuristic, BoardState state) {
+        heuristicEstimates = true;
+        long start = metrics.startTimer(SearchMetrics.Phase.HEURISTIC);
+        if ((++heuristicCalls & HEURISTIC_SAMPLE_MASK) == 0) {
+            HeuristicEvaluationEvent event = new HeuristicEvaluationEvent();
+            event.begin();
+            heuristic.score(state);
+            if (event.shouldCommit()) {
+                event.heuristic = heuristic.getClass().getSimpleName();
+                event.score = state.getCost();
+                event.boxes = state.getBoxCount();
+                event.states = 1;
+                event.commit();
+            }
+        } else {
+            heuristic.score(state);
         }
+        metrics.stopTimer(SearchMetrics.Phase.HEURISTIC, start);
+        offerPartial(state, state.getCost());
+    }
+
+    /**
+     * Scores the children of an expansion with one batch call of a
+     * heuristic, timing the batch.
+     *
+     * @param heuristic The heuristic
+     * @param states    The board states
+     */
+    protected void scoreAll(Heuristic heuristic, List<BoardState> states) {
+        if (states.isEmpty())
+            return;
+        heuristicEstimates = true;
+        long start = metrics.startTimer(SearchMetrics.Phase.HEURISTIC);
+        int calls = heuristicCalls;
+        heuristicCalls += states.size();
+        // Sample the batch that crosses a multiple of the sample rate
+        if (((calls ^ heuristicCalls) & ~HEURISTIC_SAMPLE_MASK) != 0) {
+            HeuristicEvaluationEvent event = new HeuristicEvaluationEvent();
+            event.begin();
+            heuristic.scoreAll(states);
+            if (event.shouldCommit()) {
+                event.heuristic = heuristic.getClass().getSimpleName();
+                event.score = states.get(0).getCost();
+                event.boxes = states.get(0).getBoxCount();
+                event.states = states.size();
+                event.commit();
+            }
+        } else {
+            heuristic.scoreAll(states);
+        }
+        metrics.stopTimer(SearchMetrics.Phase.HEURISTIC, start);
+        for (BoardState state : states)
+            offerPartial(state, state.getCost());
+    }
+
+    /**
+     * Keeps a state as the best partial state if its estimate is the lowest
+     * seen so far.
+     *
+     * @param state    The board state
+     * @param estimate The estimated distance to a solution
+     */
+    protected void offerPartial(BoardState state, int estimate) {
+        if (bestState == null || estimate < bestEstimate) {
+            bestState = state;
+            bestEstimate = estimate;
+        }
+    }
+
+    /**
+     * Counts the boxes not on a goal, the estimate used by solvers without a
+     * heuristic.
+     *
+     * @param state The board state
+     * @return The number of boxes off their goals
+     */
+    protected static int boxesOffGoal(BoardState state) {
+        return state.getBoxesOffGoal();
     }
 
     /**
@@ -139,22 +748,39 @@ public abstract class AbstractSolver {
      * @return The solution as a string of moves
      */
     protected String backtrackMoves(BoardState finalState) {
-        // Backtracking solutions and adding moves to stack
-        LinkedList<Character> moveStack = new LinkedList<Character>();
+        // Backtracking solutions and adding states to stack
+        LinkedList<BoardState> path = new LinkedList<BoardState>();
         BoardState current = finalState;
         while (current.getDirectionTaken() != null) {
-            char move = Direction.directionToChar(current.getDirectionTaken());
-            moveStack.push(move);
-            current = backtrack.get(current);
+            path.push(current);
+            current = current.getParent();
         }
+        return formatMoves(path);
+    }
 
+    /**
+     * Formats the moves that lead through a path of states.
+     *
+     * @param path The states reached by each step, excluding the initial state
+     * @return The moves as a comma delimited string
+     */
+    protected String formatMoves(Iterable<BoardState> path) {
         // Comma delimiting solution
         StringBuilder solution = new StringBuilder();
         String delim = "";
-        for (Character move : moveStack) {
-            solution.append(delim);
-            solution.append(move);
-            delim = ", ";
+        for (BoardState state : path) {
+            String macroMoves = state.getMacroMoves();
+            if (macroMoves != null) {
+                for (int i = 0; i < macroMoves.length(); i++) {
+                    solution.append(delim);
+                    solution.append(macroMoves.charAt(i));
+                    delim = ", ";
+                }
+            } else {
+                solution.append(delim);
+                solution.append(Direction.directionToChar(state.getDirectionTaken()));
+                delim = ", ";
+            }
         }
         return solution.toString();
     }
@@ -162,15 +788,62 @@ public abstract class AbstractSolver {
     /**
      * Starts the timer for measuring search time.
      */
-    private void startTimer() {
+    protected void startTimer() {
         startTime = System.currentTimeMillis();
+        startNanos = System.nanoTime();
+        deadlineNanos = startNanos + timeoutMillis * 1000000;
+        timeoutChecks = 0;
+        stopStatus = null;
+        stopMessage = null;
+        bestState = null;
+        metrics.start();
+        searchEvent = new SearchEvent();
+        searchEvent.begin();
     }
 
     /**
      * Stops the timer for measuring search time.
      */
-    private void stopTimer() {
+    protected void stopTimer() {
         endTime = System.currentTimeMillis();
+        metrics.end();
+        if (searchEvent != null && searchEvent.shouldCommit()) {
+            searchEvent.solver = getClass().getSimpleName();
+            searchEvent.solved = currentState.isSolved();
+            searchEvent.expanded = metrics.getExpanded();
+            searchEvent.generated = metrics.getGenerated();
+            searchEvent.duplicates = metrics.getDuplicates();
+            searchEvent.peakFringe = metrics.getPeakFringe();
+            searchEvent.commit();
+        }
+        searchEvent = null;
+    }
+
+    /**
+     * Gets the initial state of the level.
+     *
+     * @return The initial board state
+     */
+    BoardState getInitialState() {
+        return initialState;
+    }
+
+    /**
+     * Sets the number of macro moves applied, when resuming a search.
+     *
+     * @param count The number of macro moves applied so far
+     */
+    void restoreMacroMovesApplied(int count) {
+        macroMovesApplied = count;
+    }
+
+    /**
+     * Gets the solved state reached by a successful search.
+     *
+     * @return The final state of the search
+     */
+    public BoardState getFinalState() {
+        return currentState;
     }
 
     /**
@@ -179,7 +852,7 @@ public abstract class AbstractSolver {
      * @return The number of nodes explored
      */
     public int getNodesExplored() {
-        return visited.size();
+        return getVisitedLength();
     }
 
     /**
@@ -191,6 +864,24 @@ public abstract class AbstractSolver {
         return previouslySeen;
     }
 
+    /**
+     * Gets the number of macro moves applied during the search.
+     *
+     * @return The number of macro moves applied
+     */
+    public int getMacroMovesApplied() {
+        return macroMovesApplied;
+    }
+
+    /**
+     * Gets the number of goal rooms found by the level analysis.
+     *
+     * @return The number of goal rooms, or 0 if goal-room macros are disabled
+     */
+    public int getGoalRoomCount() {
+        return goalRoomMacros == null ? 0 : goalRoomMacros.getRoomCount();
+    }
+
     /**
      * Gets the length of the fringe (queue).
      *
@@ -200,13 +891,41 @@ public abstract class AbstractSolver {
         return queue.size();
     }
 
+    /**
+     * Gets the largest length the fringe reached during the search.
+     *
+     * @return The peak length of the fringe
+     */
+    public int getPeakFringeLength() {
+        return metrics.getPeakFringe();
+    }
+
+    /**
+     * Gets the detailed metrics of the search. They may be read while the
+     * search runs.
+     *
+     * @return The search metrics
+     */
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+
     /**
      * Gets the length of the visited set.
      *
      * @return The length of the visited set
      */
     public int getVisitedLength() {
-        return visited.size();
+        return bitstate != null ? (int) bitstate.size() : visited.size();
+    }
+
+    /**
+     * Gets the approximate visited set when bitstate hashing is enabled.
+     *
+     * @return The bitstate table, or null if duplicate detection is exact
+     */
+    public BitstateHashSet getBitstate() {
+        return bitstate;
     }
 
     /**
@@ -30,7 +30,7 @@ public class BFSSolver extends AbstractSolver {
     @Override
     protected void searchFunction(ArrayList<BoardState> validMoves) {
         for (BoardState move : validMoves) {
-            backtrack.put(move, currentState);
+            recordParent(move, currentState);
             queue.add(move);
         }
     }
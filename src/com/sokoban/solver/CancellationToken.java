@@ -0,0 +1,66 @@
+package com.sokoban.solver;
+
+/**
+ * Lets a caller stop a running search from another thread, either explicitly
+ * or by a deadline. One token may be shared by several solvers, for example
+ * all solves made for one request.
+ *
+ * Solvers read the cancelled flag on every check but only look at the clock
+ * every few hundred checks, so a deadline may be overrun by a few
+ * expansions.
+ */
+public class CancellationToken {
+    private volatile boolean cancelled;
+    private final boolean hasDeadline;
+    private final long deadlineNanos;
+
+    /**
+     * Creates a token without a deadline.
+     */
+    public CancellationToken() {
+        this(false, 0);
+    }
+
+    private CancellationToken(boolean hasDeadline, long deadlineNanos) {
+        this.hasDeadline = hasDeadline;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * Creates a token that expires after the given time.
+     *
+     * @param timeoutMillis The time from now until the deadline in
+     *                      milliseconds
+     * @return The token
+     */
+    public static CancellationToken withTimeout(long timeoutMillis) {
+        return new CancellationToken(true, System.nanoTime() + timeoutMillis * 1000000);
+    }
+
+    /**
+     * Requests that searches using this token stop. May be called from any
+     * thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Checks if cancel() has been called.
+     *
+     * @return True if the token has been cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Checks if the deadline has passed.
+     *
+     * @param nanoTime The current value of System.nanoTime()
+     * @return True if the token has a deadline and it has passed
+     */
+    public boolean isExpired(long nanoTime) {
+        return hasDeadline && nanoTime - deadlineNanos >= 0;
+    }
+}
@@ -29,7 +29,7 @@ public class DFSSolver extends AbstractSolver {
     @Override
     protected void searchFunction(ArrayList<BoardState> validMoves) {
         for (BoardState move : validMoves) {
-            backtrack.put(move, currentState);
+            recordParent(move, currentState);
             ((LinkedList<BoardState>) queue).push(move);
         }
     }
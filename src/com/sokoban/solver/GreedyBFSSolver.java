@@ -41,20 +41,22 @@ public class GreedyBFSSolver extends AbstractSolver {
     @Override
     protected void searchStart() {
         super.searchStart();
-        heuristic.score(currentState);
+        score(heuristic, currentState);
     }
 
     /**
      * Implements the Greedy BFS algorithm by scoring moves using the heuristic
-     * and adding them to a priority queue.
+     * and adding them to a priority queue. The moves are scored as one
+     * batch, before the first move that improves on the current state ends
+     * the expansion.
      *
      * @param validMoves List of valid moves
      */
     @Override
     protected void searchFunction(ArrayList<BoardState> validMoves) {
+        scoreAll(heuristic, validMoves);
         for (BoardState move : validMoves) {
-            backtrack.put(move, currentState);
-            heuristic.score(move);
+            recordParent(move, currentState);
             if (move.getCost() < currentState.getCost()) {
                 queue.add(currentState);
                 queue.add(move);
@@ -0,0 +1,248 @@
+package com.sokoban.solver;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import com.sokoban.heuristic.Heuristic;
+import com.sokoban.model.BoardState;
+import com.sokoban.model.NoSolutionException;
+import com.sokoban.util.LevelAnalysis;
+
+/**
+ * Enforced hill climbing over pushes, for fast answers that need little
+ * memory.
+ *
+ * From the current state a local breadth-first search over pushes (see
+ * {@link PushGenerator}) runs until it reaches a state the heuristic scores
+ * strictly better. The search commits to that state and the local search is
+ * thrown away, keeping only the path to it. A plateau the local search cannot
+ * escape within its limit, or a dead end it exhausts, marks the state
+ * stuck, and the climb restarts from the initial state avoiding every stuck
+ * state. After a number of failed restarts the solver falls back to a
+ * complete greedy best-first search over pushes, so it still finds a
+ * solution if one exists before the timeout.
+ *
+ * Solutions are found quickly but are usually far from the shortest.
+ */
+public class HillClimbingSolver extends AbstractSolver {
+    private static final int DEFAULT_PLATEAU_LIMIT = 1 << 16;
+    private static final int DEFAULT_MAX_RESTARTS = 3;
+
+    private final Heuristic heuristic;
+    private final int plateauLimit;
+    private final int maxRestarts;
+    private LevelAnalysis levelAnalysis;
+    private PushGenerator pushes;
+    // States from which no better state was found, avoided after a restart
+    private Set<BoardState> stuck;
+    private int improvements;
+    private int restarts;
+    private boolean fellBack;
+
+    /**
+     * Constructs a solver with the default plateau limit and number of
+     * restarts.
+     *
+     * @param initialState The initial board state
+     * @param heuristic    The heuristic to climb
+     */
+    public HillClimbingSolver(BoardState initialState, Heuristic heuristic) {
+        this(initialState, heuristic, DEFAULT_PLATEAU_LIMIT, DEFAULT_MAX_RESTARTS);
+    }
+
+    /**
+     * Constructs a solver.
+     *
+     * @param initialState The initial board state
+     * @param heuristic    The heuristic to climb
+     * @param plateauLimit The number of states a local search may visit
+     *                     before its plateau counts as inescapable
+     * @param maxRestarts  The number of restarts before falling back to a
+     *                     complete search
+     */
+    public HillClimbingSolver(BoardState initialState, Heuristic heuristic, int plateauLimit, int maxRestarts) {
+        super(initialState);
+        this.heuristic = heuristic;
+        this.plateauLimit = Math.max(1, plateauLimit);
+        this.maxRestarts = Math.max(0, maxRestarts);
+        queue = new PriorityQueue<BoardState>();
+    }
+
+    /**
+     * Not supported: the climb keeps no search state worth saving.
+     *
+     * @return False
+     */
+    @Override
+    public boolean supportsCheckpoints() {
+        return false;
+    }
+
+    /**
+     * Climbs from the initial state, restarting and finally falling back to
+     * a complete search as needed.
+     *
+     * @return The solution as a string of moves
+     * @throws NoSolutionException If the level has no solution or the search
+     *                             times out
+     */
+    @Override
+    public String search() throws NoSolutionException {
+        startTimer();
+        BoardState initialState = currentState;
+        levelAnalysis = getLevelAnalysis();
+        pushes = new PushGenerator(initialState.getTopology());
+        stuck = new HashSet<BoardState>();
+        improvements = 0;
+        restarts = 0;
+        fellBack = false;
+        score(heuristic, initialState);
+
+        while (true) {
+            BoardState state = initialState;
+            offerPartial(state, state.getCost());
+            while (!state.isSolved()) {
+                BoardState better = escape(state);
+                if (better == null) {
+                    stuck.add(state);
+                    break;
+                }
+                improvements++;
+                state = better;
+                offerPartial(state, state.getCost());
+            }
+            if (state.isSolved()) {
+                currentState = state;
+                String solution = backtrackMoves(state);
+                stopTimer();
+                return solution;
+            }
+            if (state == initialState || restarts == maxRestarts)
+                break;
+            restarts++;
+        }
+
+        fellBack = true;
+        stuck = null;
+        BoardState solved = bestFirst(initialState);
+        stopTimer();
+        if (solved == null)
+            throw new NoSolutionException();
+        currentState = solved;
+        return backtrackMoves(solved);
+    }
+
+    /**
+     * Searches breadth-first from a state for the nearest state with a
+     * strictly lower heuristic value.
+     *
+     * @param start The state to escape from, already scored
+     * @return The better state, linked back to the start by its parents, or
+     *         null if the plateau was exhausted or exceeded the limit
+     * @throws NoSolutionException If the search was cancelled or timed out
+     */
+    private BoardState escape(BoardState start) throws NoSolutionException {
+        ArrayDeque<BoardState> local = new ArrayDeque<BoardState>();
+        Set<BoardState> seen = new HashSet<BoardState>();
+        local.add(start);
+        seen.add(start);
+        while (!local.isEmpty()) {
+            checkTimeout();
+            BoardState state = local.poll();
+            ArrayList<BoardState> successors = expand(state);
+            for (BoardState successor : successors) {
+                if (stuck.contains(successor) || !seen.add(successor))
+                    continue;
+                recordParent(successor, state);
+                if (successor.getCost() < start.getCost())
+                    return successor;
+                local.add(successor);
+            }
+            metrics.fringe(local.size());
+            if (seen.size() > plateauLimit)
+                return null;
+        }
+        return null;
+    }
+
+    /**
+     * Greedy best-first search over pushes with full duplicate detection.
+     *
+     * @param initialState The initial state, already scored
+     * @return The solved state, or null if the level has no solution
+     * @throws NoSolutionException If the search was cancelled or timed out
+     */
+    private BoardState bestFirst(BoardState initialState) throws NoSolutionException {
+        queue.clear();
+        queue.add(initialState);
+        markVisited(initialState);
+        while (!queue.isEmpty()) {
+            checkTimeout();
+            BoardState state = queue.poll();
+            if (state.isSolved())
+                return state;
+            offerPartial(state, state.getCost());
+            for (BoardState successor : expand(state)) {
+                if (!markVisited(successor)) {
+                    previouslySeen++;
+                    metrics.duplicate();
+                    traceDuplicate(successor);
+                    continue;
+                }
+                recordParent(successor, state);
+                queue.add(successor);
+            }
+            metrics.fringe(queue.size());
+        }
+        return null;
+    }
+
+    /**
+     * Generates the pushes of a state that do not deadlock, scored as one
+     * batch.
+     */
+    private ArrayList<BoardState> expand(BoardState state) {
+        metrics.expanded();
+        ArrayList<BoardState> successors = pushes.pushes(state);
+        metrics.generated(successors.size());
+        successors.removeIf(successor -> isDeadlocked(successor, levelAnalysis));
+        scoreAll(heuristic, successors);
+        traceExpanded(state, successors.size());
+        return successors;
+    }
+
+    /**
+     * @return The number of times the last search moved to a better state
+     */
+    public int getImprovements() {
+        return improvements;
+    }
+
+    /**
+     * @return The number of restarts of the last search
+     */
+    public int getRestarts() {
+        return restarts;
+    }
+
+    /**
+     * @return True if the last search fell back to a complete search
+     */
+    public boolean hasFallenBack() {
+        return fellBack;
+    }
+
+    /**
+     * Gets the number of states expanded by the local searches and the
+     * fallback.
+     *
+     * @return The number of nodes explored
+     */
+    @Override
+    public int getNodesExplored() {
+        return (int) Math.min(Integer.MAX_VALUE, metrics.getExpanded());
+    }
+}
@@ -0,0 +1,354 @@
+package com.sokoban.solver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sokoban.model.BoardState;
+import com.sokoban.model.LevelTopology;
+import com.sokoban.model.NoSolutionException;
+
+/**
+ * Implements Iterative Deepening Depth-First Search (IDDFS) for solving Sokoban
+ * puzzles.
+ * Each iteration runs a depth-limited DFS with an explicit stack, keeping only
+ * the current path plus a bounded transposition table, so memory stays small
+ * even on huge levels. The depth bound grows by one step per iteration, which
+ * also keeps the returned solutions short.
+ *
+ * A state is only kept in the transposition table once its subtree has been
+ * searched in full. When cycle pruning skipped a state that is still being
+ * searched higher up the path, the entry is dropped, so a later branch
+ * reaching the same state with the same depth left searches it again.
+ *
+ * Moves are ordered so that pushes bringing a box closer to a goal are tried
+ * first, then other pushes, then plain player moves.
+ */
+public class IDDFSSolver extends AbstractSolver {
+    private static final int DEFAULT_TRANSPOSITION_SIZE = 1 << 20;
+
+    private int maxDepth = Integer.MAX_VALUE;
+    // The states on the current search path with their depths
+    private final Map<BoardState, Integer> path;
+    private final Map<BoardState, Integer> transpositions;
+    private final List<Iteration> iterations;
+    private int nodesExpanded;
+    private int pathLength;
+
+    /**
+     * Constructs a new IDDFSSolver with the default transposition table size.
+     *
+     * @param initialState The initial board state
+     */
+    public IDDFSSolver(BoardState initialState) {
+        this(initialState, DEFAULT_TRANSPOSITION_SIZE);
+    }
+
+    /**
+     * Constructs a new IDDFSSolver with a bounded transposition table.
+     *
+     * @param initialState      The initial board state
+     * @param transpositionSize The maximum number of states remembered across
+     *                          branches of an iteration
+     */
+    public IDDFSSolver(BoardState initialState, final int transpositionSize) {
+        super(initialState);
+        path = new HashMap<BoardState, Integer>();
+        // Least recently used states are evicted once the table is full
+        transpositions = new LinkedHashMap<BoardState, Integer>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<BoardState, Integer> eldest) {
+                return size() > transpositionSize;
+            }
+        };
+        iterations = new ArrayList<Iteration>();
+    }
+
+    /**
+     * Sets the maximum depth bound of the last iteration.
+     *
+     * @param maxDepth The maximum depth bound
+     */
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Not supported: iterative deepening keeps no fringe or visited set to
+     * checkpoint, and restarting an iteration is cheap.
+     *
+     * @return False
+     */
+    @Override
+    public boolean supportsCheckpoints() {
+        return false;
+    }
+
+    /**
+     * Searches for a solution with depth-limited searches of increasing depth.
+     *
+     * @return The solution as a string of moves
+     * @throws NoSolutionException If no solution exists within the maximum depth
+     *                             or the search times out
+     */
+    @Override
+    public String search() throws NoSolutionException {
+        startTimer();
+        BoardState initialState = currentState;
+        for (int bound = 0; bound <= maxDepth; bound++) {
+            Iteration iteration = new Iteration(bound);
+            iterations.add(iteration);
+            transpositions.clear();
+
+            List<BoardState> solutionPath = depthLimitedSearch(initialState, iteration);
+            if (solutionPath != null) {
+                stopTimer();
+                return formatMoves(solutionPath.subList(1, solutionPath.size()));
+            }
+
+            // Nothing was cut off by the bound, so deeper iterations are useless
+            if (!iteration.cutoff)
+                break;
+        }
+        stopTimer();
+        throw new NoSolutionException();
+    }
+
+    /**
+     * Runs one depth-limited DFS with an explicit stack.
+     *
+     * @param initialState The initial board state
+     * @param iteration    The statistics of this iteration
+     * @return The states on the solution path, or null if none was found
+     * @throws NoSolutionException If the search times out
+     */
+    private List<BoardState> depthLimitedSearch(BoardState initialState, Iteration iteration)
+            throws NoSolutionException {
+        ArrayList<Frame> stack = new ArrayList<Frame>();
+        path.clear();
+        stack.add(new Frame(initialState));
+        path.put(initialState, 0);
+
+        while (!stack.isEmpty()) {
+            Frame frame = stack.get(stack.size() - 1);
+            pathLength = stack.size();
+            metrics.fringe(pathLength);
+
+            if (frame.children == null) {
+                checkTimeout();
+                nodesExpanded++;
+                iteration.nodes++;
+                int depth = stack.size() - 1;
+                iteration.depthReached = Math.max(iteration.depthReached, depth);
+
+                if (frame.state.isSolved()) {
+                    currentState = frame.state;
+                    List<BoardState> solutionPath = new ArrayList<BoardState>(stack.size());
+                    for (Frame f : stack)
+                        solutionPath.add(f.state);
+                    return solutionPath;
+                }
+
+                boolean prune = false;
+                if (depth >= iteration.bound) {
+                    iteration.cutoff = true;
+                    prune = true;
+                } else if (isDeadlocked(frame.state)) {
+                    prune = true;
+                } else {
+                    // Skip states already searched with at least this much depth left
+                    int remaining = iteration.bound - depth;
+                    long start = metrics.startTimer(SearchMetrics.Phase.HASHING);
+                    Integer searched = transpositions.get(frame.state);
+                    if (searched != null && searched >= remaining) {
+                        previouslySeen++;
+                        metrics.duplicate();
+                        traceDuplicate(frame.state);
+                        prune = true;
+                    } else {
+                        transpositions.put(frame.state, remaining);
+                    }
+                    metrics.stopTimer(SearchMetrics.Phase.HASHING, start);
+                }
+
+                if (prune) {
+                    path.remove(frame.state);
+                    stack.remove(stack.size() - 1);
+                    continue;
+                }
+                frame.cycleDepth = depth;
+
+                currentState = frame.state;
+                offerPartial(frame.state, boxesOffGoal(frame.state));
+                metrics.expanded();
+                frame.children = orderMoves(frame.state, getValidMoves());
+                for (BoardState child : frame.children)
+                    recordParent(child, frame.state);
+                metrics.generated(frame.children.size());
+                traceExpanded(frame.state, frame.children.size());
+            }
+
+            if (frame.next < frame.children.size()) {
+                BoardState child = frame.children.get(frame.next++);
+                // Cycle pruning against the current path
+                Integer onPath = path.putIfAbsent(child, stack.size());
+                if (onPath == null) {
+                    stack.add(new Frame(child));
+                } else {
+                    frame.cycleDepth = Math.min(frame.cycleDepth, onPath);
+                }
+            } else {
+                path.remove(frame.state);
+                stack.remove(stack.size() - 1);
+                int depth = stack.size();
+                if (frame.cycleDepth < depth) {
+                    // The subtree skipped a state still being searched higher
+                    // up the path, so it was not searched in full
+                    transpositions.remove(frame.state);
+                    Frame parent = stack.get(depth - 1);
+                    parent.cycleDepth = Math.min(parent.cycleDepth, frame.cycleDepth);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Orders moves so that pushes toward goals come first, then other pushes,
+     * then plain player moves.
+     *
+     * @param parent The state the moves are made from
+     * @param moves  The valid moves
+     * @return The ordered moves
+     */
+    private List<BoardState> orderMoves(BoardState parent, List<BoardState> moves) {
+        if (moves.size() <= 1)
+            return moves;
+
+        int parentDistance = goalDistance(parent);
+        final Map<BoardState, Integer> rank = new IdentityHashMap<BoardState, Integer>();
+        for (BoardState move : moves) {
+            if (move.hasSameBoxes(parent)) {
+                rank.put(move, Integer.MAX_VALUE);
+            } else {
+                rank.put(move, goalDistance(move) - parentDistance);
+            }
+        }
+        Collections.sort(moves, (a, b) -> Integer.compare(rank.get(a), rank.get(b)));
+        return moves;
+    }
+
+    /**
+     * Calculates the sum of Manhattan distances from each box to its closest
+     * goal.
+     *
+     * @param state The board state
+     * @return The total distance
+     */
+    private static int goalDistance(BoardState state) {
+        LevelTopology topology = state.getTopology();
+        int total = 0;
+        for (int i = 0; i < state.getBoxCount(); i++) {
+            int min = Integer.MAX_VALUE;
+            for (int g = 0; g < topology.getGoalCount(); g++)
+                min = Math.min(min, topology.distance(state.getBoxCell(i), topology.getGoal(g)));
+            total += min;
+        }
+        return total;
+    }
+
+    /**
+     * Gets the statistics of each iteration run so far.
+     *
+     * @return The iterations in the order they were run
+     */
+    public List<Iteration> getIterations() {
+        return Collections.unmodifiableList(iterations);
+    }
+
+    /**
+     * Gets the number of nodes expanded over all iterations.
+     *
+     * @return The number of nodes explored
+     */
+    @Override
+    public int getNodesExplored() {
+        return nodesExpanded;
+    }
+
+    /**
+     * Gets the length of the current search path.
+     *
+     * @return The length of the path
+     */
+    @Override
+    public int getFringeLength() {
+        return pathLength;
+    }
+
+    /**
+     * Gets the number of states in the transposition table.
+     *
+     * @return The size of the transposition table
+     */
+    @Override
+    public int getVisitedLength() {
+        return transpositions.size();
+    }
+
+    /**
+     * A state on the current search path with its remaining children.
+     */
+    private static class Frame {
+        final BoardState state;
+        List<BoardState> children;
+        int next;
+        // The shallowest path depth skipped by cycle pruning in the subtree
+        int cycleDepth;
+
+        Frame(BoardState state) {
+            this.state = state;
+        }
+    }
+
+    /**
+     * Statistics of a single depth-limited iteration.
+     */
+    public static class Iteration {
+        private final int bound;
+        private int depthReached;
+        private int nodes;
+        private boolean cutoff;
+
+        Iteration(int bound) {
+            this.bound = bound;
+        }
+
+        /**
+         * @return The depth bound of this iteration
+         */
+        public int getBound() {
+            return bound;
+        }
+
+        /**
+         * @return The deepest depth reached in this iteration
+         */
+        public int getDepthReached() {
+            return depthReached;
+        }
+
+        /**
+         * @return The number of nodes expanded in this iteration
+         */
+        public int getNodes() {
+            return nodes;
+        }
+    }
+}
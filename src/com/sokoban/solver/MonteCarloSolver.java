@@ -0,0 +1,551 @@
+package com.sokoban.solver;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sokoban.heuristic.Heuristic;
+import com.sokoban.model.BoardState;
+import com.sokoban.model.NoSolutionException;
+import com.sokoban.util.LevelAnalysis;
+
+/**
+ * Monte Carlo tree search over pushes, for levels where the exhaustive
+ * solvers run out of memory long before they find a solution.
+ *
+ * The tree holds states one push apart (see {@link PushGenerator}) and is
+ * grown by UCT selection up to a fixed number of nodes. A state already in
+ * the tree is not added again, so the tree covers each state once and is
+ * exhausted when the level has no solution. From each selected
+ * leaf a rollout plays random pushes: pushes into deadlocks are pruned with
+ * {@link com.sokoban.util.DeadlockDetector}, and most steps take the push the heuristic scores
+ * best, the others a random one. A rollout is rewarded by the lowest
+ * heuristic value it reached relative to the initial state, or 1 if it
+ * solved the level.
+ *
+ * Rollouts run on several threads at once, on an executor supplied by the
+ * caller or else on a pool of the solver's own. Selection, expansion and
+ * backpropagation share one lock, while the rollouts themselves, which do
+ * most of the work, run without it; a visit is counted as soon as a node is
+ * selected, so concurrent selections spread over the tree. Deadlock checks
+ * and scoring go through the shared helpers from every thread, so prunes and
+ * phase timings are reported as for the other solvers.
+ *
+ * The search runs until its timeout and returns the solution with the
+ * fewest moves found, unless the whole push graph is exhausted first. The
+ * heuristic is shared by the threads, so it must not keep state between
+ * calls.
+ */
+public class MonteCarloSolver extends AbstractSolver {
+    private static final int DEFAULT_TREE_SIZE = 1 << 18;
+    // Exploration constant of the UCT selection rule
+    private static final double EXPLORATION = 2.0;
+    // Probability of a rollout step taking a random push
+    private static final double RANDOM_PUSH = 0.1;
+    // Time between checks of the timeout while the workers run
+    private static final long POLL_MILLIS = 10;
+
+    private final Heuristic heuristic;
+    // The executor running the rollouts, null to use a pool per search
+    private final Executor executor;
+    private final int threads;
+    private final int maxTreeSize;
+    private final LongAdder rollouts = new LongAdder();
+
+    // Guarded by this while the workers run
+    private Node root;
+    // Every state in the tree, so each state is expanded at most once
+    private Set<BoardState> inTree;
+    private int treeSize;
+    private int leaves;
+    private BoardState shortest;
+    // Workers running rollouts and the first failure of any of them
+    private int activeWorkers;
+    private Throwable failure;
+    // Guards the best partial state, offered from every rollout thread
+    private final Object partialLock = new Object();
+
+    private volatile boolean running;
+    private LevelAnalysis levelAnalysis;
+    private int initialEstimate;
+    private int rolloutLimit;
+
+    /**
+     * Constructs a solver with a rollout thread per processor and the
+     * default tree size.
+     *
+     * @param initialState The initial board state
+     * @param heuristic    The heuristic guiding the rollouts
+     */
+    public MonteCarloSolver(BoardState initialState, Heuristic heuristic) {
+        this(initialState, heuristic, Runtime.getRuntime().availableProcessors(), DEFAULT_TREE_SIZE);
+    }
+
+    /**
+     * Constructs a solver.
+     *
+     * @param initialState The initial board state
+     * @param heuristic    The heuristic guiding the rollouts
+     * @param threads      The number of rollout threads
+     * @param maxTreeSize  The maximum number of nodes in the tree
+     */
+    public MonteCarloSolver(BoardState initialState, Heuristic heuristic, int threads, int maxTreeSize) {
+        this(initialState, heuristic, null, threads, maxTreeSize);
+    }
+
+    /**
+     * Constructs a solver whose rollouts run on an executor supplied by the
+     * caller. The executor should have the given number of threads free;
+     * rollouts it only starts after the search has ended do nothing.
+     *
+     * @param initialState The initial board state
+     * @param heuristic    The heuristic guiding the rollouts
+     * @param executor     The executor running the rollouts, or null to
+     *                     create a pool for each search
+     * @param threads      The number of rollout threads
+     * @param maxTreeSize  The maximum number of nodes in the tree
+     */
+    public MonteCarloSolver(BoardState initialState, Heuristic heuristic, Executor executor, int threads,
+            int maxTreeSize) {
+        super(initialState);
+        this.heuristic = heuristic;
+        this.executor = executor;
+        this.threads = Math.max(1, threads);
+        this.maxTreeSize = Math.max(1, maxTreeSize);
+    }
+
+    /**
+     * Not supported: the tree is cheap to regrow and rollouts are random.
+     *
+     * @return False
+     */
+    @Override
+    public boolean supportsCheckpoints() {
+        return false;
+    }
+
+    /**
+     * Not supported: a recorder is written by one thread, and the rollouts
+     * run on several.
+     *
+     * @return False
+     */
+    @Override
+    public boolean supportsTracing() {
+        return false;
+    }
+
+    /**
+     * Runs rollouts until the timeout and returns the shortest solution
+     * found.
+     *
+     * @return The solution as a string of moves
+     * @throws NoSolutionException If no rollout solved the level before the
+     *                             timeout, or the push graph has no solution
+     */
+    @Override
+    public String search() throws NoSolutionException {
+        startTimer();
+        BoardState initialState = currentState;
+        if (initialState.isSolved()) {
+            stopTimer();
+            return "";
+        }
+        levelAnalysis = getLevelAnalysis();
+        score(heuristic, initialState);
+        initialEstimate = Math.max(1, initialState.getCost());
+        // Enough pushes to move every box its estimated distance twice over
+        rolloutLimit = 2 * initialEstimate + 10 * initialState.getBoxCount();
+        root = new Node(null, initialState);
+        inTree = new HashSet<BoardState>();
+        inTree.add(initialState);
+        treeSize = 1;
+        leaves = 1;
+        shortest = null;
+        failure = null;
+        rollouts.reset();
+
+        running = true;
+        ExecutorService pool = executor == null ? Executors.newFixedThreadPool(threads) : null;
+        Executor workers = pool != null ? pool : executor;
+        SplittableRandom seeds = new SplittableRandom();
+        for (int i = 0; i < threads; i++) {
+            SplittableRandom random = seeds.split();
+            workers.execute(() -> runWorker(random));
+        }
+        try {
+            // Workers stop the search when the tree is exhausted or they fail
+            while (running) {
+                checkDeadline();
+                try {
+                    Thread.sleep(POLL_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    getCancellationToken().cancel();
+                }
+            }
+        } catch (NoSolutionException e) {
+            // The timeout ends the search; a solution found by then is kept
+            stopWorkers(pool);
+            if (shortest != null)
+                return finish();
+            throw e;
+        }
+        stopWorkers(pool);
+        stopTimer();
+        if (shortest != null)
+            return finish();
+        throw new NoSolutionException();
+    }
+
+    /**
+     * Makes the shortest solution the final state.
+     *
+     * @return The solution as a string of moves
+     */
+    private String finish() {
+        currentState = shortest;
+        return backtrackMoves(shortest);
+    }
+
+    /**
+     * Stops the workers and waits for those running, rethrowing the failure
+     * of any worker that failed.
+     *
+     * @param pool The pool created for this search, or null if the rollouts
+     *             run on the executor supplied by the caller
+     */
+    private void stopWorkers(ExecutorService pool) {
+        Throwable failed;
+        try {
+            synchronized (this) {
+                running = false;
+                while (activeWorkers > 0)
+                    wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (pool != null)
+                pool.shutdownNow();
+        }
+        synchronized (this) {
+            failed = failure;
+        }
+        if (failed instanceof RuntimeException)
+            throw (RuntimeException) failed;
+        if (failed instanceof Error)
+            throw (Error) failed;
+    }
+
+    /**
+     * Runs rollouts from selected leaves until the search stops or the tree
+     * is exhausted.
+     *
+     * @param random The random numbers of this worker
+     */
+    private void runWorker(SplittableRandom random) {
+        synchronized (this) {
+            // Started by a busy executor after the search ended
+            if (!running)
+                return;
+            activeWorkers++;
+        }
+        try {
+            PushGenerator pushes = new PushGenerator(root.state.getTopology());
+            while (running) {
+                Node leaf = select(pushes, random);
+                if (leaf == null) {
+                    running = false;
+                    break;
+                }
+                double reward = rollout(leaf.state, pushes, random);
+                backpropagate(leaf, reward);
+                rollouts.increment();
+            }
+        } catch (RuntimeException | Error e) {
+            synchronized (this) {
+                if (failure == null)
+                    failure = e;
+            }
+            running = false;
+        } finally {
+            synchronized (this) {
+                activeWorkers--;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Walks down the tree by UCT, expanding the leaf it reaches if the leaf
+     * was visited before and the tree has room. Visits are counted on the
+     * way down.
+     *
+     * @param pushes The push generator of the calling worker
+     * @param random The random numbers of the calling worker
+     * @return The node to run a rollout from, or null if the whole tree is
+     *         exhausted
+     */
+    private synchronized Node select(PushGenerator pushes, SplittableRandom random) {
+        if (root.exhausted)
+            return null;
+        Node node = root;
+        while (true) {
+            node.visits++;
+            if (node.children == null) {
+                if (node.visits == 1 || treeSize >= maxTreeSize || node.state.isSolved())
+                    return node;
+                expand(node, pushes);
+                if (node.exhausted)
+                    return node;
+            }
+            Node child = bestChild(node, random);
+            if (child == null) {
+                exhaust(node);
+                return node;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Adds the pushes of a node as its children, leaving out deadlocks and
+     * states already elsewhere in the tree.
+     */
+    private void expand(Node node, PushGenerator pushes) {
+        metrics.expanded();
+        ArrayList<BoardState> successors = pushes.pushes(node.state);
+        metrics.generated(successors.size());
+        List<Node> children = new ArrayList<Node>(successors.size());
+        for (BoardState successor : successors) {
+            if (isDeadlocked(successor, levelAnalysis))
+                continue;
+            if (!inTree.add(successor)) {
+                metrics.duplicate();
+                continue;
+            }
+            successor.setParent(node.state);
+            Node child = new Node(node, successor);
+            children.add(child);
+            if (successor.isSolved()) {
+                record(successor);
+                child.exhausted = true;
+            }
+        }
+        // Scored here, under the lock, so rollouts only read the estimates
+        List<BoardState> states = new ArrayList<BoardState>(children.size());
+        for (Node child : children)
+            states.add(child.state);
+        scoreAll(heuristic, states);
+        node.children = children.toArray(new Node[0]);
+        treeSize += node.children.length;
+        leaves += node.children.length - 1;
+        metrics.fringe(leaves);
+        if (node.children.length == 0)
+            exhaust(node);
+    }
+
+    /**
+     * Picks the child with the highest UCT value, or a random unvisited
+     * child if there is one.
+     *
+     * @return The child, or null if every child is exhausted
+     */
+    private static Node bestChild(Node node, SplittableRandom random) {
+        Node best = null;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        int unvisited = 0;
+        double logVisits = Math.log(node.visits);
+        for (Node child : node.children) {
+            if (child.exhausted)
+                continue;
+            if (child.visits == 0) {
+                // Reservoir sampling among the unvisited children
+                if (random.nextInt(++unvisited) == 0)
+                    best = child;
+                continue;
+            }
+            if (unvisited > 0)
+                continue;
+            double value = child.value / child.visits + EXPLORATION * Math.sqrt(logVisits / child.visits);
+            if (value > bestValue) {
+                bestValue = value;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Marks a node exhausted, and each ancestor whose children are now all
+     * exhausted.
+     */
+    private static void exhaust(Node node) {
+        for (Node n = node; n != null; n = n.parent) {
+            if (n != node) {
+                for (Node child : n.children) {
+                    if (!child.exhausted)
+                        return;
+                }
+            }
+            n.exhausted = true;
+        }
+    }
+
+    /**
+     * Adds the reward of a rollout to a node and its ancestors, whose visits
+     * were already counted by the selection.
+     */
+    private synchronized void backpropagate(Node node, double reward) {
+        for (Node n = node; n != null; n = n.parent)
+            n.value += reward;
+    }
+
+    /**
+     * Plays random pushes from a state until it is solved, no push is left
+     * or the rollout is too long.
+     *
+     * @param start  The state to start from, already scored
+     * @param pushes The push generator of the calling worker
+     * @param random The random numbers of the calling worker
+     * @return The reward, between 0 and 1
+     */
+    private double rollout(BoardState start, PushGenerator pushes, SplittableRandom random) {
+        BoardState state = start;
+        int bestEstimate = start.getCost();
+        Set<BoardState> seen = new HashSet<BoardState>();
+        seen.add(start);
+        for (int step = 0; step < rolloutLimit && !state.isSolved() && running; step++) {
+            ArrayList<BoardState> successors = pushes.pushes(state);
+            ArrayList<BoardState> candidates = new ArrayList<BoardState>(successors.size());
+            for (BoardState successor : successors) {
+                if (!isDeadlocked(successor, levelAnalysis) && seen.add(successor)) {
+                    // Set before scoring, which may keep it as the best partial state
+                    successor.setParent(state);
+                    candidates.add(successor);
+                }
+            }
+            metrics.generated(successors.size());
+            if (candidates.isEmpty())
+                break;
+            scoreAll(heuristic, candidates);
+            state = choose(candidates, random);
+            bestEstimate = Math.min(bestEstimate, state.getCost());
+        }
+        if (state.isSolved()) {
+            synchronized (this) {
+                record(state);
+            }
+            return 1;
+        }
+        return 0.9 * Math.max(0, 1 - (double) bestEstimate / initialEstimate);
+    }
+
+    /**
+     * Picks a random push with probability RANDOM_PUSH, and otherwise one
+     * of the pushes the heuristic scores lowest.
+     */
+    private static BoardState choose(List<BoardState> candidates, SplittableRandom random) {
+        if (random.nextDouble() < RANDOM_PUSH)
+            return candidates.get(random.nextInt(candidates.size()));
+        BoardState best = null;
+        int ties = 0;
+        for (BoardState candidate : candidates) {
+            if (best == null || candidate.getCost() < best.getCost()) {
+                best = candidate;
+                ties = 1;
+            } else if (candidate.getCost() == best.getCost() && random.nextInt(++ties) == 0) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Keeps the best partial state under its own lock, as rollouts score
+     * states on several threads.
+     */
+    @Override
+    protected void offerPartial(BoardState state, int estimate) {
+        synchronized (partialLock) {
+            super.offerPartial(state, estimate);
+        }
+    }
+
+    /**
+     * Keeps a solved state if its solution is the shortest so far. Must hold
+     * the lock.
+     */
+    private void record(BoardState solved) {
+        if (shortest == null || solved.getDepth() < shortest.getDepth())
+            shortest = solved;
+    }
+
+    /**
+     * @return The number of rollouts run by the last search
+     */
+    public long getRollouts() {
+        return rollouts.sum();
+    }
+
+    /**
+     * @return The rollouts per second of the last search
+     */
+    public long getRolloutsPerSecond() {
+        return rollouts.sum() * 1000 / Math.max(1, getElapsedTimeMillis());
+    }
+
+    /**
+     * Gets the number of nodes in the search tree.
+     *
+     * @return The size of the tree
+     */
+    @Override
+    public int getNodesExplored() {
+        return treeSize;
+    }
+
+    /**
+     * Gets the number of leaves of the search tree.
+     *
+     * @return The number of leaves
+     */
+    @Override
+    public int getFringeLength() {
+        return leaves;
+    }
+
+    /**
+     * Gets the number of nodes in the search tree.
+     *
+     * @return The size of the tree
+     */
+    @Override
+    public int getVisitedLength() {
+        return treeSize;
+    }
+
+    /**
+     * A state in the search tree with its visit statistics.
+     */
+    private static class Node {
+        final Node parent;
+        final BoardState state;
+        Node[] children;
+        int visits;
+        double value;
+        boolean exhausted;
+
+        Node(Node parent, BoardState state) {
+            this.parent = parent;
+            this.state = state;
+        }
+    }
+}
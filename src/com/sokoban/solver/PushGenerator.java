@@ -0,0 +1,199 @@
+package com.sokoban.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.sokoban.model.BoardState;
+import com.sokoban.model.Direction;
+import com.sokoban.model.LevelTopology;
+
+/**
+ * Generates the successors of a state at the level of pushes: every state
+ * reachable by walking the player to a box without pushing anything and
+ * then pushing it one cell. Each successor carries the walk and the push as
+ * its macro moves, so solutions made of pushes backtrack to full move
+ * strings.
+ *
+ * The flood fill of the player's region reuses arrays stamped with a
+ * generation counter, so nothing proportional to the level is allocated per
+ * call, and stops as soon as it has reached every cell next to a box. A
+ * generator is not thread-safe; use one per thread.
+ */
+public final class PushGenerator {
+    private final LevelTopology topology;
+    // Cells reached by the current flood fill hold the current generation
+    private final int[] stamp;
+    // Cells a push can start from hold the current generation
+    private final int[] target;
+    // Direction of the step into each reached cell
+    private final int[] via;
+    private final int[] queue;
+    private int generation;
+    private int player;
+
+    /**
+     * Creates a generator for states of a level.
+     *
+     * @param topology The topology of the level
+     */
+    public PushGenerator(LevelTopology topology) {
+        this.topology = topology;
+        stamp = new int[topology.size()];
+        target = new int[topology.size()];
+        via = new int[topology.size()];
+        queue = new int[topology.size()];
+    }
+
+    /**
+     * Finds the cells the player can reach without pushing a box. The result
+     * is read with {@link #isReachable} and {@link #appendWalk} until the
+     * next call.
+     *
+     * @param state The board state
+     */
+    public void reach(BoardState state) {
+        nextGeneration();
+        fill(state, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Flood fills the player's region breadth-first, stopping early once a
+     * number of marked cells have been reached.
+     *
+     * @param state   The board state
+     * @param targets The number of cells marked with the current generation
+     *                in target to stop after
+     */
+    private void fill(BoardState state, int targets) {
+        player = state.getPlayerCell();
+        stamp[player] = generation;
+        if (target[player] == generation)
+            targets--;
+        queue[0] = player;
+        int tail = 1;
+        for (int head = 0; head < tail && targets > 0; head++) {
+            int cell = queue[head];
+            for (int d = 0; d < 4; d++) {
+                int next = topology.neighbour(d, cell);
+                if (next != LevelTopology.NONE && stamp[next] != generation && !state.hasBox(next)) {
+                    stamp[next] = generation;
+                    via[next] = d;
+                    queue[tail++] = next;
+                    if (target[next] == generation)
+                        targets--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts a new generation of the stamps.
+     */
+    private void nextGeneration() {
+        if (++generation == 0) {
+            Arrays.fill(stamp, 0);
+            Arrays.fill(target, 0);
+            generation = 1;
+        }
+    }
+
+    /**
+     * @param cell The cell index
+     * @return True if the last flood fill reached the cell
+     */
+    public boolean isReachable(int cell) {
+        return stamp[cell] == generation;
+    }
+
+    /**
+     * Appends the shortest walk of the last flood fill from the player to a
+     * reachable cell.
+     *
+     * @param cell  The reachable cell
+     * @param moves The moves to append to
+     */
+    public void appendWalk(int cell, StringBuilder moves) {
+        int start = moves.length();
+        while (cell != player) {
+            int d = via[cell];
+            moves.append(Direction.directionToChar(Direction.fromIndex(d)));
+            cell = topology.neighbour(opposite(d), cell);
+        }
+        // The walk was appended backwards from the cell
+        for (int i = start, j = moves.length() - 1; i < j; i++, j--) {
+            char c = moves.charAt(i);
+            moves.setCharAt(i, moves.charAt(j));
+            moves.setCharAt(j, c);
+        }
+    }
+
+    /**
+     * Generates every push of a state. The successors are new states whose
+     * parent is not set. Afterwards {@link #isReachable} is only meaningful
+     * for cells next to boxes.
+     *
+     * @param state The board state
+     * @return The states after each push
+     */
+    public ArrayList<BoardState> pushes(BoardState state) {
+        // Only the cells next to boxes matter, so the fill can stop once it
+        // has found them all, long before it covers a large open level
+        nextGeneration();
+        int targets = 0;
+        for (int i = 0; i < state.getBoxCount(); i++) {
+            for (int d = 0; d < 4; d++) {
+                int cell = topology.neighbour(d, state.getBoxCell(i));
+                if (cell != LevelTopology.NONE && target[cell] != generation && !state.hasBox(cell)) {
+                    target[cell] = generation;
+                    targets++;
+                }
+            }
+        }
+        fill(state, targets);
+        ArrayList<BoardState> successors = new ArrayList<BoardState>();
+        StringBuilder moves = new StringBuilder();
+        for (int i = 0; i < state.getBoxCount(); i++) {
+            int box = state.getBoxCell(i);
+            for (int d = 0; d < 4; d++) {
+                int stand = topology.neighbour(opposite(d), box);
+                int to = topology.neighbour(d, box);
+                if (stand == LevelTopology.NONE || to == LevelTopology.NONE || !isReachable(stand)
+                        || state.hasBox(to))
+                    continue;
+                moves.setLength(0);
+                appendWalk(stand, moves);
+                moves.append(Direction.directionToChar(Direction.fromIndex(d)));
+                successors.add(state.withCells(box, movedBoxes(state, i, to), Direction.fromIndex(d),
+                        state.getDepth() + moves.length(), moves.toString(), 1));
+            }
+        }
+        return successors;
+    }
+
+    /**
+     * Copies the box cells of a state with one box moved, keeping them
+     * sorted.
+     */
+    private static int[] movedBoxes(BoardState state, int index, int to) {
+        int[] boxes = state.getBoxCells();
+        int i = index;
+        while (i > 0 && boxes[i - 1] > to) {
+            boxes[i] = boxes[i - 1];
+            i--;
+        }
+        while (i < boxes.length - 1 && boxes[i + 1] < to) {
+            boxes[i] = boxes[i + 1];
+            i++;
+        }
+        boxes[i] = to;
+        return boxes;
+    }
+
+    /**
+     * @param direction A direction index
+     * @return The index of the opposite direction
+     */
+    static int opposite(int direction) {
+        return (direction + 2) & 3;
+    }
+}
@@ -0,0 +1,388 @@
+package com.sokoban.solver;
+
+import java.awt.Point;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import com.sokoban.model.BoardState;
+import com.sokoban.model.Direction;
+
+/**
+ * Binary snapshot of a queue-based search: the visited set, the fringe and
+ * the parent link of every state, so that a search stopped by its timeout
+ * can carry on in a later run.
+ *
+ * States are written straight from the solver's collections through a
+ * buffered stream, so writing a checkpoint of a large search needs no copy
+ * of it in memory. A state is stored as its player cell and its sorted box
+ * cells (cell indices of the level's topology), delta-encoded as
+ * variable-length integers. A state's parent differs
+ * from it in the player cell and at most one box, so the parent is stored as
+ * that difference; on load, parent links are resolved by looking the parent
+ * positions up among the visited states.
+ *
+ * Layout: magic, version, CRC-32 of the level, solver class, box count,
+ * previously seen and macro move counters, then the visited states and the
+ * fringe, each as a count followed by records. A record holds the player,
+ * boxes, parent, direction, depth, cost and macro moves of a state; fringe
+ * records add a solver-specific tag.
+ */
+final class SearchCheckpoint {
+    private static final int MAGIC = 0x534F4B43; // "SOKC"
+    private static final int VERSION = 2;
+
+    // Parent encodings; a value >= 0 is the index of the one box that moved
+    private static final int NO_PARENT = -1;
+    private static final int SAME_BOXES = -2;
+    private static final int ALL_BOXES = -3;
+
+    private SearchCheckpoint() {
+    }
+
+    /**
+     * Writes a checkpoint of a search. The file is written next to the
+     * target and moved into place, so an interrupted write leaves the
+     * previous checkpoint intact.
+     *
+     * @param solver The solver, between two expansions
+     * @param file   The checkpoint file
+     * @throws IOException If the file cannot be written
+     */
+    static void write(AbstractSolver solver, Path file) throws IOException {
+        BoardState level = solver.getInitialState();
+        int boxCount = level.getBoxCount();
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeLong(checksum(level));
+                out.writeUTF(solver.getClass().getName());
+                writeVarInt(out, boxCount);
+                writeVarInt(out, solver.previouslySeen);
+                writeVarInt(out, solver.getMacroMovesApplied());
+
+                int[] cells = new int[boxCount];
+                int[] parentCells = new int[boxCount];
+                writeVarInt(out, solver.visited.size());
+                for (BoardState state : solver.visited)
+                    writeState(out, state, cells, parentCells);
+                writeVarInt(out, solver.queue.size());
+                for (BoardState state : solver.queue) {
+                    writeState(out, state, cells, parentCells);
+                    writeVarInt(out, solver.checkpointTag(state));
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Restores a search from a checkpoint, replacing the solver's visited
+     * set and fringe.
+     *
+     * @param solver The solver, created for the same level as the checkpoint
+     * @param file   The checkpoint file
+     * @throws IOException If the file cannot be read or does not belong to
+     *                     this level and solver
+     */
+    static void read(AbstractSolver solver, Path file) throws IOException {
+        BoardState level = solver.getInitialState();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException(file + " is not a search checkpoint");
+            int version = in.readUnsignedShort();
+            if (version != VERSION)
+                throw new IOException("Unsupported checkpoint version " + version);
+            if (in.readLong() != checksum(level))
+                throw new IOException("Checkpoint was written for a different level");
+            String solverName = in.readUTF();
+            if (!solverName.equals(solver.getClass().getName()))
+                throw new IOException("Checkpoint was written by " + solverName);
+            int boxCount = readVarInt(in);
+            if (boxCount != level.getBoxCount())
+                throw new IOException("Checkpoint was written for a different level");
+            int previouslySeen = readVarInt(in);
+            int macroMovesApplied = readVarInt(in);
+
+            // Parent positions of each state, resolved once every visited
+            // state has been read
+            List<BoardState> children = new ArrayList<BoardState>();
+            List<int[]> parents = new ArrayList<int[]>();
+            // Visited states by position. BoardState itself is not used as
+            // the key because it compares by cost, which confuses the tree
+            // bins HashMap builds for colliding hashes.
+            int visitedCount = readVarInt(in);
+            Map<Positions, BoardState> visited = new HashMap<Positions, BoardState>(visitedCount * 4 / 3 + 1);
+            for (int i = 0; i < visitedCount; i++) {
+                int[] positions = new int[boxCount + 1];
+                BoardState state = readState(in, level, positions, children, parents);
+                visited.put(new Positions(positions), state);
+            }
+            int queueCount = readVarInt(in);
+            List<BoardState> queue = new ArrayList<BoardState>(queueCount);
+            int[] tags = new int[queueCount];
+            int[] positions = new int[boxCount + 1];
+            for (int i = 0; i < queueCount; i++) {
+                queue.add(readState(in, level, positions, children, parents));
+                tags[i] = readVarInt(in);
+            }
+
+            for (int i = 0; i < children.size(); i++) {
+                BoardState parent = visited.get(new Positions(parents.get(i)));
+                if (parent == null)
+                    throw new IOException("Checkpoint is missing the parent of a state");
+                children.get(i).setParent(parent);
+            }
+
+            solver.visited.clear();
+            solver.visited.addAll(visited.values());
+            solver.queue.clear();
+            for (int i = 0; i < queue.size(); i++) {
+                solver.queue.add(queue.get(i));
+                solver.restoreTag(queue.get(i), tags[i]);
+            }
+            solver.previouslySeen = previouslySeen;
+            solver.restoreMacroMovesApplied(macroMovesApplied);
+        } catch (EOFException e) {
+            throw new IOException("Checkpoint " + file + " is truncated");
+        }
+    }
+
+    /**
+     * Writes one state record.
+     *
+     * @param out         The output
+     * @param state       The state
+     * @param cells       Scratch space for the state's box cells
+     * @param parentCells Scratch space for the parent's box cells
+     * @throws IOException If the record cannot be written
+     */
+    private static void writeState(DataOutput out, BoardState state, int[] cells, int[] parentCells)
+            throws IOException {
+        writeVarInt(out, state.getPlayerCell());
+        boxCells(state, cells);
+        writeCells(out, cells);
+
+        BoardState parent = state.getParent();
+        if (parent == null) {
+            writeVarInt(out, NO_PARENT);
+        } else {
+            boxCells(parent, parentCells);
+            int moved = -1;
+            int differences = 0;
+            // A box keeps its rank unless it moved past another box, so a
+            // single moved box usually differs at a single index
+            for (int i = 0; i < cells.length; i++) {
+                if (cells[i] != parentCells[i]) {
+                    moved = i;
+                    differences++;
+                }
+            }
+            if (differences == 0) {
+                writeVarInt(out, SAME_BOXES);
+            } else if (differences == 1) {
+                writeVarInt(out, moved);
+                writeVarInt(out, parentCells[moved]);
+            } else {
+                writeVarInt(out, ALL_BOXES);
+                writeCells(out, parentCells);
+            }
+            writeVarInt(out, parent.getPlayerCell());
+        }
+
+        Point direction = state.getDirectionTaken();
+        out.writeByte(direction == null ? 0 : Direction.directionToChar(direction));
+        writeVarInt(out, state.getDepth());
+        writeVarInt(out, state.getCost());
+        String macroMoves = state.getMacroMoves();
+        if (macroMoves == null) {
+            writeVarInt(out, 0);
+        } else {
+            byte[] bytes = macroMoves.getBytes(StandardCharsets.US_ASCII);
+            writeVarInt(out, bytes.length);
+            out.write(bytes);
+            writeVarInt(out, state.getMacroPushes());
+        }
+    }
+
+    /**
+     * Reads one state record.
+     *
+     * @param in        The input
+     * @param level     The initial state of the level
+     * @param positions Filled with the player cell and sorted box cells
+     * @param children  The states whose parents are still to be resolved
+     * @param parents   The parent positions of those states
+     * @return The state, without its parent link
+     * @throws IOException If the record cannot be read
+     */
+    private static BoardState readState(DataInput in, BoardState level, int[] positions,
+            List<BoardState> children, List<int[]> parents) throws IOException {
+        int boxCount = positions.length - 1;
+        int player = readVarInt(in);
+        int[] cells = readCells(in, boxCount);
+        positions[0] = player;
+        System.arraycopy(cells, 0, positions, 1, boxCount);
+
+        int[] parent = null;
+        int encoding = readVarInt(in);
+        if (encoding != NO_PARENT) {
+            parent = new int[boxCount + 1];
+            if (encoding == ALL_BOXES) {
+                System.arraycopy(readCells(in, boxCount), 0, parent, 1, boxCount);
+            } else {
+                System.arraycopy(cells, 0, parent, 1, boxCount);
+                if (encoding >= 0) {
+                    if (encoding >= boxCount)
+                        throw new IOException("Corrupt checkpoint record");
+                    parent[encoding + 1] = readVarInt(in);
+                    Arrays.sort(parent, 1, parent.length);
+                } else if (encoding != SAME_BOXES) {
+                    throw new IOException("Corrupt checkpoint record");
+                }
+            }
+            parent[0] = readVarInt(in);
+        }
+
+        int direction = in.readUnsignedByte();
+        int depth = readVarInt(in);
+        int cost = readVarInt(in);
+        int macroLength = readVarInt(in);
+        String macroMoves = null;
+        int macroPushes = 0;
+        if (macroLength > 0) {
+            byte[] bytes = new byte[macroLength];
+            in.readFully(bytes);
+            macroMoves = new String(bytes, StandardCharsets.US_ASCII);
+            macroPushes = readVarInt(in);
+        }
+
+        BoardState state;
+        try {
+            state = level.withCells(player, cells,
+                    direction == 0 ? null : Direction.charToDirection((char) direction), depth, macroMoves,
+                    macroPushes);
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt checkpoint record");
+        }
+        state.setCost(cost);
+        if (parent != null) {
+            children.add(state);
+            parents.add(parent);
+        }
+        return state;
+    }
+
+    /**
+     * Writes sorted cells as the first cell followed by the gaps between
+     * consecutive cells.
+     */
+    private static void writeCells(DataOutput out, int[] cells) throws IOException {
+        int previous = 0;
+        for (int cell : cells) {
+            writeVarInt(out, cell - previous);
+            previous = cell;
+        }
+    }
+
+    /**
+     * Reads cells written by {@link #writeCells}.
+     */
+    private static int[] readCells(DataInput in, int count) throws IOException {
+        int[] cells = new int[count];
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous += readVarInt(in);
+            cells[i] = previous;
+        }
+        return cells;
+    }
+
+    /**
+     * Fills an array with the sorted box cells of a state.
+     */
+    private static void boxCells(BoardState state, int[] cells) throws IOException {
+        if (state.getBoxCount() != cells.length)
+            throw new IOException("State has " + state.getBoxCount() + " boxes, expected " + cells.length);
+        for (int i = 0; i < cells.length; i++)
+            cells[i] = state.getBoxCell(i);
+    }
+
+    /**
+     * Computes the CRC32 of the text of a level.
+     */
+    private static long checksum(BoardState level) {
+        CRC32 crc = new CRC32();
+        crc.update(level.toString().getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    /**
+     * Writes an int as a zigzag-encoded variable-length integer, one byte
+     * for small values of either sign.
+     */
+    private static void writeVarInt(DataOutput out, int value) throws IOException {
+        int zigzag = (value << 1) ^ (value >> 31);
+        while ((zigzag & ~0x7F) != 0) {
+            out.writeByte((zigzag & 0x7F) | 0x80);
+            zigzag >>>= 7;
+        }
+        out.writeByte(zigzag);
+    }
+
+    /**
+     * Reads an int written by {@link #writeVarInt}.
+     */
+    private static int readVarInt(DataInput in) throws IOException {
+        int zigzag = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            zigzag |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+        throw new IOException("Corrupt checkpoint record");
+    }
+
+    /**
+     * The player cell followed by the sorted box cells of a state.
+     */
+    private static final class Positions {
+        private final int[] cells;
+
+        Positions(int[] cells) {
+            this.cells = cells;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Positions && Arrays.equals(cells, ((Positions) obj).cells);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(cells);
+        }
+    }
+}
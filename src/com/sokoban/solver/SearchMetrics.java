@@ -0,0 +1,412 @@
+package com.sokoban.solver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import com.sokoban.jfr.ExpansionBatchEvent;
+import com.sokoban.util.DeadlockDetector;
+
+/**
+ * Counters and timings of a single search.
+ *
+ * Counters are LongAdders, so they are cheap to update from the search thread
+ * and safe to read from another thread while the search runs. Time spent in
+ * heuristics, deadlock detection and hashing is estimated by timing every
+ * 16th call and scaling up, which keeps System.nanoTime out of most calls.
+ * Prune counts and phase timings may also be updated from several threads at
+ * once, as the Monte Carlo rollouts do.
+ *
+ * A nodes/sec sample is taken about once per sampling interval while the
+ * search runs; an optional listener is called with every sample to report
+ * progress.
+ */
+public class SearchMetrics {
+    /**
+     * The phases of a search whose time is measured.
+     */
+    public enum Phase {
+        HEURISTIC, DEADLOCK, HASHING
+    }
+
+    // Every (SAMPLE_MASK + 1)th call of a phase is timed
+    private static final int SAMPLE_MASK = 15;
+    // Expansions between checks of the clock for nodes/sec samples
+    private static final int TICK_MASK = 1023;
+    // Expansions per JFR expansion batch event
+    private static final int BATCH_MASK = 4095;
+
+    private final LongAdder generated = new LongAdder();
+    private final LongAdder expanded = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder[] deadlockPrunes;
+    private final LongAdder[] phaseNanos;
+    private final AtomicIntegerArray phaseCalls;
+    private final LongAccumulator peakFringe = new LongAccumulator(Long::max, 0);
+    private final List<Sample> series = Collections.synchronizedList(new ArrayList<Sample>());
+
+    private long sampleIntervalMillis = 1000;
+    private Consumer<SearchMetrics> progressListener;
+    private volatile long startMillis;
+    private volatile long endMillis;
+    private long lastSampleMillis;
+    private long lastSampleExpanded;
+    private int ticks;
+    private int lastFringe;
+
+    // JFR event of the current expansion batch and the counts at its start
+    private ExpansionBatchEvent batch;
+    private long batchExpanded;
+    private long batchGenerated;
+    private long batchDuplicates;
+    private long batchPrunes;
+
+    /**
+     * Creates empty metrics.
+     */
+    public SearchMetrics() {
+        deadlockPrunes = new LongAdder[DeadlockDetector.Type.values().length];
+        for (int i = 0; i < deadlockPrunes.length; i++)
+            deadlockPrunes[i] = new LongAdder();
+        phaseNanos = new LongAdder[Phase.values().length];
+        for (int i = 0; i < phaseNanos.length; i++)
+            phaseNanos[i] = new LongAdder();
+        phaseCalls = new AtomicIntegerArray(phaseNanos.length);
+    }
+
+    /**
+     * Reports progress periodically while the search runs.
+     *
+     * @param intervalMillis The time between reports in milliseconds
+     * @param listener       Called from the search thread with these metrics
+     */
+    public void setProgressListener(long intervalMillis, Consumer<SearchMetrics> listener) {
+        this.sampleIntervalMillis = Math.max(1, intervalMillis);
+        this.progressListener = listener;
+    }
+
+    /**
+     * Marks the start of the search.
+     */
+    void start() {
+        startMillis = lastSampleMillis = System.currentTimeMillis();
+        endMillis = 0;
+        beginBatch();
+    }
+
+    /**
+     * Marks the end of the search and takes a final sample.
+     */
+    void end() {
+        endMillis = System.currentTimeMillis();
+        sample(endMillis);
+        commitBatch();
+    }
+
+    /**
+     * Counts generated successor states.
+     *
+     * @param count The number of states generated
+     */
+    void generated(int count) {
+        generated.add(count);
+    }
+
+    /**
+     * Counts an expanded state and takes a nodes/sec sample when one is due.
+     */
+    void expanded() {
+        expanded.increment();
+        if ((++ticks & TICK_MASK) == 0) {
+            long now = System.currentTimeMillis();
+            if (now - lastSampleMillis >= sampleIntervalMillis)
+                sample(now);
+            if ((ticks & BATCH_MASK) == 0) {
+                commitBatch();
+                beginBatch();
+            }
+        }
+    }
+
+    /**
+     * Counts a state that was found to be a duplicate.
+     */
+    void duplicate() {
+        duplicates.increment();
+    }
+
+    /**
+     * Counts a state pruned by a deadlock detector.
+     *
+     * @param type The kind of deadlock found
+     */
+    void deadlockPruned(DeadlockDetector.Type type) {
+        deadlockPrunes[type.ordinal()].increment();
+    }
+
+    /**
+     * Records the fringe size, keeping the largest.
+     *
+     * @param size The current fringe size
+     */
+    void fringe(int size) {
+        lastFringe = size;
+        peakFringe.accumulate(size);
+    }
+
+    /**
+     * Starts timing a call of a phase, if this call is sampled.
+     *
+     * @param phase The phase
+     * @return The start time to pass to {@link #stopTimer}, or 0 if the call
+     *         is not timed
+     */
+    long startTimer(Phase phase) {
+        return (phaseCalls.incrementAndGet(phase.ordinal()) & SAMPLE_MASK) == 0 ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Stops timing a call of a phase.
+     *
+     * @param phase The phase
+     * @param start The value returned by {@link #startTimer}
+     */
+    void stopTimer(Phase phase, long start) {
+        if (start != 0)
+            phaseNanos[phase.ordinal()].add((System.nanoTime() - start) * (SAMPLE_MASK + 1));
+    }
+
+    /**
+     * Starts a JFR expansion batch event.
+     */
+    private void beginBatch() {
+        batch = new ExpansionBatchEvent();
+        if (batch.isEnabled()) {
+            batchExpanded = expanded.sum();
+            batchGenerated = generated.sum();
+            batchDuplicates = duplicates.sum();
+            batchPrunes = totalDeadlockPrunes();
+            batch.begin();
+        }
+    }
+
+    /**
+     * Commits the current JFR expansion batch event with the counts since
+     * it began.
+     */
+    private void commitBatch() {
+        if (batch == null || !batch.shouldCommit())
+            return;
+        batch.expanded = expanded.sum() - batchExpanded;
+        batch.generated = generated.sum() - batchGenerated;
+        batch.duplicates = duplicates.sum() - batchDuplicates;
+        batch.deadlockPrunes = totalDeadlockPrunes() - batchPrunes;
+        batch.fringe = lastFringe;
+        batch.commit();
+    }
+
+    /**
+     * @return The number of states pruned by all deadlock detectors
+     */
+    private long totalDeadlockPrunes() {
+        long total = 0;
+        for (LongAdder prunes : deadlockPrunes)
+            total += prunes.sum();
+        return total;
+    }
+
+    /**
+     * Takes a nodes/sec sample and reports progress.
+     *
+     * @param now The current time in milliseconds
+     */
+    private void sample(long now) {
+        long count = expanded.sum();
+        long interval = Math.max(1, now - lastSampleMillis);
+        series.add(new Sample(now - startMillis, count, (count - lastSampleExpanded) * 1000 / interval));
+        lastSampleMillis = now;
+        lastSampleExpanded = count;
+        if (progressListener != null)
+            progressListener.accept(this);
+    }
+
+    /**
+     * @return The number of successor states generated
+     */
+    public long getGenerated() {
+        return generated.sum();
+    }
+
+    /**
+     * @return The number of states expanded
+     */
+    public long getExpanded() {
+        return expanded.sum();
+    }
+
+    /**
+     * @return The number of states found to be duplicates
+     */
+    public long getDuplicates() {
+        return duplicates.sum();
+    }
+
+    /**
+     * Gets the number of states pruned by a deadlock detector.
+     *
+     * @param type The kind of deadlock
+     * @return The number of pruned states
+     */
+    public long getDeadlockPrunes(DeadlockDetector.Type type) {
+        return deadlockPrunes[type.ordinal()].sum();
+    }
+
+    /**
+     * Gets the estimated time spent in a phase.
+     *
+     * @param phase The phase
+     * @return The time in milliseconds
+     */
+    public long getPhaseMillis(Phase phase) {
+        return phaseNanos[phase.ordinal()].sum() / 1000000;
+    }
+
+    /**
+     * @return The largest fringe size during the search
+     */
+    public int getPeakFringe() {
+        return (int) peakFringe.get();
+    }
+
+    /**
+     * @return The time since the start of the search, or its duration once
+     *         it has ended, in milliseconds
+     */
+    public long getElapsedMillis() {
+        if (startMillis == 0)
+            return 0;
+        return (endMillis != 0 ? endMillis : System.currentTimeMillis()) - startMillis;
+    }
+
+    /**
+     * @return The nodes/sec samples taken so far
+     */
+    public List<Sample> getSeries() {
+        synchronized (series) {
+            return new ArrayList<Sample>(series);
+        }
+    }
+
+    /**
+     * @return The latest nodes/sec rate, or 0 before the first sample
+     */
+    public long getNodesPerSecond() {
+        synchronized (series) {
+            return series.isEmpty() ? 0 : series.get(series.size() - 1).getNodesPerSecond();
+        }
+    }
+
+    /**
+     * Formats a one-line progress report.
+     *
+     * @return The progress line
+     */
+    public String toProgressString() {
+        return String.format(Locale.ROOT, "%.1fs: expanded %d, generated %d, duplicates %d, peak fringe %d, %d nodes/s",
+                getElapsedMillis() / 1000.0, getExpanded(), getGenerated(), getDuplicates(), getPeakFringe(),
+                getNodesPerSecond());
+    }
+
+    /**
+     * Exports the metrics as a JSON object.
+     *
+     * @return The JSON text
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"elapsedMillis\":").append(getElapsedMillis());
+        sb.append(",\"generated\":").append(getGenerated());
+        sb.append(",\"expanded\":").append(getExpanded());
+        sb.append(",\"duplicates\":").append(getDuplicates());
+        sb.append(",\"peakFringe\":").append(getPeakFringe());
+        sb.append(",\"deadlockPrunes\":{");
+        String delim = "";
+        for (DeadlockDetector.Type type : DeadlockDetector.Type.values()) {
+            sb.append(delim).append('"').append(jsonName(type.name())).append("\":").append(getDeadlockPrunes(type));
+            delim = ",";
+        }
+        sb.append("},\"phaseMillis\":{");
+        delim = "";
+        for (Phase phase : Phase.values()) {
+            sb.append(delim).append('"').append(jsonName(phase.name())).append("\":").append(getPhaseMillis(phase));
+            delim = ",";
+        }
+        sb.append("},\"series\":[");
+        delim = "";
+        for (Sample sample : getSeries()) {
+            sb.append(delim).append("{\"millis\":").append(sample.getMillis())
+                    .append(",\"expanded\":").append(sample.getExpanded())
+                    .append(",\"nodesPerSec\":").append(sample.getNodesPerSecond()).append('}');
+            delim = ",";
+        }
+        return sb.append("]}").toString();
+    }
+
+    /**
+     * Converts an enum name such as DEAD_SQUARE to camel case.
+     */
+    private static String jsonName(String name) {
+        StringBuilder sb = new StringBuilder();
+        boolean upper = false;
+        for (char c : name.toLowerCase(Locale.ROOT).toCharArray()) {
+            if (c == '_') {
+                upper = true;
+            } else {
+                sb.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A nodes/sec sample.
+     */
+    public static class Sample {
+        private final long millis;
+        private final long expanded;
+        private final long nodesPerSecond;
+
+        Sample(long millis, long expanded, long nodesPerSecond) {
+            this.millis = millis;
+            this.expanded = expanded;
+            this.nodesPerSecond = nodesPerSecond;
+        }
+
+        /**
+         * @return The time since the start of the search in milliseconds
+         */
+        public long getMillis() {
+            return millis;
+        }
+
+        /**
+         * @return The number of states expanded so far
+         */
+        public long getExpanded() {
+            return expanded;
+        }
+
+        /**
+         * @return The expansion rate since the previous sample
+         */
+        public long getNodesPerSecond() {
+            return nodesPerSecond;
+        }
+    }
+}
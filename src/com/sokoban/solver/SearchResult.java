@@ -0,0 +1,141 @@
+package com.sokoban.solver;
+
+import com.sokoban.model.BoardState;
+
+/**
+ * The outcome of a search: the solution if one was found, otherwise why the
+ * search stopped and the most promising state it reached, with the search
+ * statistics either way.
+ */
+public class SearchResult {
+    /**
+     * How a search ended.
+     */
+    public enum Status {
+        SOLVED, NO_SOLUTION, TIMEOUT, CANCELLED
+    }
+
+    private final Status status;
+    private final String message;
+    private final String solution;
+    private final BoardState bestState;
+    private final int bestEstimate;
+    private final String bestMoves;
+    private final int nodesExplored;
+    private final int fringe;
+    private final long elapsedMillis;
+    private final SearchMetrics metrics;
+
+    /**
+     * Constructs a search result.
+     *
+     * @param status        How the search ended
+     * @param message       Why the search stopped, or null
+     * @param solution      The comma delimited solution, or null
+     * @param bestState     The solved state, or the state with the lowest
+     *                      estimate if unsolved
+     * @param bestEstimate  The estimate of the best state, 0 if solved
+     * @param bestMoves     The comma delimited moves to the best state, or
+     *                      null if they are not known
+     * @param nodesExplored The number of nodes explored
+     * @param fringe        The final fringe length
+     * @param elapsedMillis The search time in milliseconds
+     * @param metrics       The detailed search metrics
+     */
+    SearchResult(Status status, String message, String solution, BoardState bestState, int bestEstimate,
+            String bestMoves, int nodesExplored, int fringe, long elapsedMillis, SearchMetrics metrics) {
+        this.status = status;
+        this.message = message;
+        this.solution = solution;
+        this.bestState = bestState;
+        this.bestEstimate = bestEstimate;
+        this.bestMoves = bestMoves;
+        this.nodesExplored = nodesExplored;
+        this.fringe = fringe;
+        this.elapsedMillis = elapsedMillis;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return How the search ended
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return True if a solution was found
+     */
+    public boolean isSolved() {
+        return status == Status.SOLVED;
+    }
+
+    /**
+     * @return Why the search stopped, or null if it was solved or exhausted
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return The comma delimited solution, or null if none was found
+     */
+    public String getSolution() {
+        return solution;
+    }
+
+    /**
+     * Gets the solved state, or for an unsolved search the state with the
+     * lowest heuristic estimate seen. Solvers without a heuristic estimate by
+     * the number of boxes off their goals.
+     *
+     * @return The best state, or null if the search stopped before any
+     *         state was estimated
+     */
+    public BoardState getBestState() {
+        return bestState;
+    }
+
+    /**
+     * @return The estimate of the best state, 0 if solved
+     */
+    public int getBestEstimate() {
+        return bestEstimate;
+    }
+
+    /**
+     * @return The comma delimited moves from the initial state to the best
+     *         state, or null if they are not known
+     */
+    public String getBestMoves() {
+        return bestMoves;
+    }
+
+    /**
+     * @return The number of nodes explored
+     */
+    public int getNodesExplored() {
+        return nodesExplored;
+    }
+
+    /**
+     * @return The fringe length when the search ended
+     */
+    public int getFringe() {
+        return fringe;
+    }
+
+    /**
+     * @return The search time in milliseconds
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return The detailed search metrics
+     */
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+}
@@ -0,0 +1,451 @@
+package com.sokoban.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.sokoban.model.BoardState;
+import com.sokoban.model.Direction;
+import com.sokoban.model.LevelTopology;
+import com.sokoban.util.DeadlockDetector;
+import com.sokoban.util.LevelAnalysis;
+
+/**
+ * Shortens a solution found by a fast, suboptimal solver.
+ *
+ * The solution is replayed and cut at every push. A window of consecutive
+ * pushes is then replaced by the sequence with the fewest moves, and then
+ * fewest pushes, that leads from the state before the window to exactly the
+ * state after it. Each window is searched by a uniform-cost search over
+ * pushes (see {@link PushGenerator}), bounded by the moves of the segment it
+ * may replace. At first only the boxes the window pushes may be pushed,
+ * which keeps the searches small on levels with many boxes; once that finds
+ * nothing shorter, the windows are searched again with every box. The last
+ * window may end in any solved state.
+ *
+ * Windows of a pass do not overlap and are searched in parallel. Passes
+ * alternate between two offsets, so every boundary falls inside some window,
+ * and the windows double in size once a pass finds nothing shorter. The
+ * optimizer stops when unrestricted windows spanning the whole solution find
+ * nothing shorter, or when its time budget runs out.
+ */
+public final class SolutionOptimizer {
+    private static final int DEFAULT_WINDOW = 4;
+    private static final int DEFAULT_WINDOW_NODES = 1 << 16;
+
+    private final BoardState level;
+    private final LevelAnalysis analysis;
+    private final int threads;
+    private final int windowNodes;
+
+    /**
+     * Creates an optimizer for a level with a thread per processor.
+     *
+     * @param level    The initial board state of the level
+     * @param analysis The analysis of the level, used to prune deadlocks
+     */
+    public SolutionOptimizer(BoardState level, LevelAnalysis analysis) {
+        this(level, analysis, Runtime.getRuntime().availableProcessors(), DEFAULT_WINDOW_NODES);
+    }
+
+    /**
+     * Creates an optimizer for a level.
+     *
+     * @param level       The initial board state of the level
+     * @param analysis    The analysis of the level, used to prune deadlocks
+     * @param threads     The number of windows searched at once
+     * @param windowNodes The number of states a window search may expand
+     *                    before it gives up
+     */
+    public SolutionOptimizer(BoardState level, LevelAnalysis analysis, int threads, int windowNodes) {
+        this.level = level;
+        this.analysis = analysis;
+        this.threads = Math.max(1, threads);
+        this.windowNodes = Math.max(1, windowNodes);
+    }
+
+    /**
+     * Shortens a solution.
+     *
+     * @param solution     The solution, as moves (u, r, d, l) with or without
+     *                     comma delimiters
+     * @param budgetMillis The time to spend
+     * @return The result, with the original solution if nothing shorter was
+     *         found
+     * @throws IllegalArgumentException If the moves are not a solution of
+     *                                  the level
+     */
+    public Result optimize(String solution, long budgetMillis) {
+        long start = System.nanoTime();
+        long deadline = start + budgetMillis * 1000000;
+        String moves = solution.replace(",", "").replace(" ", "");
+        List<String> segments = split(moves);
+        int pushesBefore = segments.size();
+
+        int passes = 0;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            int window = DEFAULT_WINDOW;
+            int unimproved = 0;
+            boolean restricted = true;
+            while (System.nanoTime() - deadline < 0 && !segments.isEmpty()) {
+                int offset = unimproved % 2 == 0 ? 0 : window / 2;
+                boolean improved = pass(pool, segments, window, offset, restricted, deadline);
+                passes++;
+                if (improved) {
+                    unimproved = 0;
+                    continue;
+                }
+                // Both offsets found nothing shorter: try longer windows
+                if (++unimproved < 2)
+                    continue;
+                unimproved = 0;
+                if (window < segments.size()) {
+                    window *= 2;
+                } else if (restricted) {
+                    // Start over letting every box be pushed
+                    restricted = false;
+                    window = DEFAULT_WINDOW;
+                } else {
+                    break;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        StringBuilder optimized = new StringBuilder();
+        for (String segment : segments)
+            optimized.append(segment);
+        return new Result(optimized.toString(), moves.length(), pushesBefore, segments.size(), passes,
+                (System.nanoTime() - start) / 1000000);
+    }
+
+    /**
+     * Replays moves and cuts them after every push.
+     *
+     * @param moves The moves without delimiters
+     * @return The segments, each a walk ending in a push. Moves after the
+     *         last push are dropped, as the level is already solved.
+     */
+    private List<String> split(String moves) {
+        List<String> segments = new ArrayList<String>();
+        BoardState state = level;
+        int begin = 0;
+        for (int i = 0; i < moves.length(); i++) {
+            int direction = Direction.toIndex(Direction.charToDirection(moves.charAt(i)));
+            if (!state.canMove(direction))
+                throw new IllegalArgumentException("Illegal move " + (i + 1) + " in solution");
+            boolean push = state.isPush(direction);
+            state = state.getMove(direction);
+            if (push) {
+                segments.add(moves.substring(begin, i + 1));
+                begin = i + 1;
+            }
+        }
+        if (!state.isSolved())
+            throw new IllegalArgumentException("Moves do not solve the level");
+        return segments;
+    }
+
+    /**
+     * Searches one set of non-overlapping windows in parallel and replaces
+     * the segments of every window that was shortened.
+     *
+     * @param pool       The threads to search on
+     * @param segments   The segments of the solution, replaced in place
+     * @param window     The number of pushes per window
+     * @param offset     The push the first full window starts at
+     * @param restricted True to only let the searches push the boxes each
+     *                   window pushes
+     * @param deadline   The time to give up at, in System.nanoTime
+     * @return True if any window was shortened
+     */
+    private boolean pass(ExecutorService pool, List<String> segments, int window, int offset, boolean restricted,
+            long deadline) {
+        // The level and the state after each push
+        List<BoardState> states = new ArrayList<BoardState>(segments.size() + 1);
+        BoardState state = level;
+        states.add(state);
+        for (String segment : segments) {
+            for (int i = 0; i < segment.length(); i++)
+                state = state.getMove(Direction.charToDirection(segment.charAt(i)));
+            states.add(state);
+        }
+
+        List<int[]> bounds = new ArrayList<int[]>();
+        List<Future<List<String>>> searches = new ArrayList<Future<List<String>>>();
+        for (int begin = 0, end = offset > 0 ? offset : window; begin < segments.size();
+                begin = end, end = Math.min(segments.size(), end + window)) {
+            end = Math.min(end, segments.size());
+            int moves = 0;
+            for (int i = begin; i < end; i++)
+                moves += segments.get(i).length();
+            BoardState from = states.get(begin);
+            BoardState to = end == segments.size() ? null : states.get(end);
+            bounds.add(new int[] { begin, end });
+            int[] frozen = restricted ? frozenBoxes(states, begin, end) : new int[0];
+            searches.add(pool.submit(new WindowSearch(from, to, frozen, moves, end - begin, deadline)));
+        }
+
+        List<String> replaced = new ArrayList<String>(segments.size());
+        boolean improved = false;
+        for (int w = 0; w < searches.size(); w++) {
+            int begin = bounds.get(w)[0], end = bounds.get(w)[1];
+            List<String> shorter = get(searches.get(w));
+            if (shorter != null) {
+                replaced.addAll(shorter);
+                improved = true;
+            } else {
+                replaced.addAll(segments.subList(begin, end));
+            }
+        }
+        segments.clear();
+        segments.addAll(replaced);
+        return improved;
+    }
+
+    /**
+     * Finds the boxes a window leaves in place.
+     *
+     * @param states The level and the state after each push
+     * @param begin  The first push of the window
+     * @param end    The push after the window
+     * @return The sorted cells, at the start of the window, of the boxes
+     *         the window does not push
+     */
+    private static int[] frozenBoxes(List<BoardState> states, int begin, int end) {
+        LevelTopology topology = states.get(begin).getTopology();
+        Set<Integer> moved = new HashSet<Integer>();
+        Set<Integer> origins = new HashSet<Integer>();
+        for (int i = begin + 1; i <= end; i++) {
+            // The player steps into the cell the box was pushed from
+            int from = states.get(i).getPlayerCell();
+            int to = topology.neighbour(Direction.toIndex(states.get(i).getDirectionTaken()), from);
+            if (!moved.remove(from))
+                origins.add(from);
+            moved.add(to);
+        }
+        int[] boxes = states.get(begin).getBoxCells();
+        int count = 0;
+        for (int box : boxes) {
+            if (!origins.contains(box))
+                boxes[count++] = box;
+        }
+        return Arrays.copyOf(boxes, count);
+    }
+
+    /**
+     * Waits for a window search.
+     *
+     * @return The shorter segments, or null if none were found
+     */
+    private static List<String> get(Future<List<String>> search) {
+        try {
+            return search.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * A uniform-cost search over pushes for the cheapest way through one
+     * window, ordered by moves and then pushes.
+     */
+    private final class WindowSearch implements Callable<List<String>> {
+        private final BoardState from;
+        private final BoardState to;
+        private final int[] frozen;
+        private final long bound;
+        private final long deadline;
+
+        /**
+         * @param from     The state before the window
+         * @param to       The state after the window, or null for any
+         *                 solved state
+         * @param frozen   The sorted cells of the boxes that may not be
+         *                 pushed
+         * @param moves    The moves of the segments the window may replace
+         * @param pushes   The pushes of those segments
+         * @param deadline The time to give up at, in System.nanoTime
+         */
+        WindowSearch(BoardState from, BoardState to, int[] frozen, int moves, int pushes, long deadline) {
+            this.from = from;
+            this.to = to;
+            this.frozen = frozen;
+            this.bound = key(moves, pushes);
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return The segments of a cheaper way through the window, or null
+         *         if there is none or the search gave up
+         */
+        @Override
+        public List<String> call() {
+            PushGenerator pushes = new PushGenerator(level.getTopology());
+            Map<BoardState, Long> best = new HashMap<BoardState, Long>();
+            PriorityQueue<Step> open = new PriorityQueue<Step>(Comparator.comparingLong((Step s) -> s.key));
+            open.add(new Step(null, from, null, 0, 0));
+            best.put(from, 0L);
+            int expanded = 0;
+            while (!open.isEmpty()) {
+                Step step = open.poll();
+                if (step.key >= bound)
+                    return null;
+                if (step.key > best.get(step.state))
+                    continue;
+                if (to == null ? step.state.isSolved() : step.state.equals(to))
+                    return step.segments();
+                if (++expanded > windowNodes || ((expanded & 0xFF) == 0 && System.nanoTime() - deadline >= 0))
+                    return null;
+                for (BoardState next : pushes.pushes(step.state)) {
+                    // The player ends where the pushed box was
+                    if (Arrays.binarySearch(frozen, next.getPlayerCell()) >= 0
+                            || DeadlockDetector.detect(next, analysis) != null)
+                        continue;
+                    int moves = step.moves + next.getDepth() - step.state.getDepth();
+                    long key = key(moves, step.pushes + 1);
+                    Long known = best.get(next);
+                    if (key >= bound || (known != null && known <= key))
+                        continue;
+                    best.put(next, key);
+                    open.add(new Step(step, next, next.getMacroMoves(), moves, step.pushes + 1));
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Orders costs by moves, then pushes.
+     */
+    private static long key(int moves, int pushes) {
+        return ((long) moves << 32) | pushes;
+    }
+
+    /**
+     * A state reached by a window search with the segment that led to it.
+     */
+    private static final class Step {
+        final Step parent;
+        final BoardState state;
+        final String segment;
+        final int moves;
+        final int pushes;
+        final long key;
+
+        Step(Step parent, BoardState state, String segment, int moves, int pushes) {
+            this.parent = parent;
+            this.state = state;
+            this.segment = segment;
+            this.moves = moves;
+            this.pushes = pushes;
+            this.key = key(moves, pushes);
+        }
+
+        /**
+         * @return The segments from the start of the search to this state
+         */
+        List<String> segments() {
+            List<String> segments = new ArrayList<String>(pushes);
+            for (Step s = this; s.parent != null; s = s.parent)
+                segments.add(0, s.segment);
+            return segments;
+        }
+    }
+
+    /**
+     * The outcome of an optimization.
+     */
+    public static final class Result {
+        private final String moves;
+        private final int movesBefore;
+        private final int pushesBefore;
+        private final int pushesAfter;
+        private final int passes;
+        private final long elapsedMillis;
+
+        Result(String moves, int movesBefore, int pushesBefore, int pushesAfter, int passes, long elapsedMillis) {
+            this.moves = moves;
+            this.movesBefore = movesBefore;
+            this.pushesBefore = pushesBefore;
+            this.pushesAfter = pushesAfter;
+            this.passes = passes;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        /**
+         * @return The optimized moves (u, r, d, l without delimiters)
+         */
+        public String getMoves() {
+            return moves;
+        }
+
+        /**
+         * @return The optimized moves comma delimited, as the solvers
+         *         return solutions
+         */
+        public String getSolution() {
+            return String.join(", ", moves.split(""));
+        }
+
+        /**
+         * @return The number of moves before the optimization
+         */
+        public int getMovesBefore() {
+            return movesBefore;
+        }
+
+        /**
+         * @return The number of moves after the optimization
+         */
+        public int getMovesAfter() {
+            return moves.length();
+        }
+
+        /**
+         * @return The number of pushes before the optimization
+         */
+        public int getPushesBefore() {
+            return pushesBefore;
+        }
+
+        /**
+         * @return The number of pushes after the optimization
+         */
+        public int getPushesAfter() {
+            return pushesAfter;
+        }
+
+        /**
+         * @return The number of passes over the solution
+         */
+        public int getPasses() {
+            return passes;
+        }
+
+        /**
+         * @return The time spent in milliseconds
+         */
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package com.sokoban.solver;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import com.sokoban.model.BoardState;
+import com.sokoban.model.Direction;
+import com.sokoban.util.DeadlockDetector;
+
+/**
+ * Records what a search does, state by state, to a binary trace file for
+ * offline analysis.
+ *
+ * Each record is 32 bytes (big-endian): the 64-bit key of the state, the key
+ * of its parent, its depth g and estimate h as ints, then one byte each for
+ * the kind of record, the move that reached the state and the prune reason,
+ * a padding byte, the number of children as an unsigned short and two more
+ * padding bytes. The file starts with a 16 byte header (magic, version,
+ * record size and sampling rate) and ends with a record of kind
+ * {@link #END} whose key and parent hold the number of records written and
+ * dropped.
+ *
+ * Records are written by the search thread into a ring of preallocated
+ * buffers; a full buffer is handed to a writer thread that flushes it to the
+ * file and returns it to the ring. The search never waits for the disk: if
+ * every buffer is waiting to be written, records are dropped and counted.
+ * With sampling, only every n-th record of each kind is kept.
+ *
+ * A recorder is used by one search thread at a time and must be closed to
+ * flush the last records.
+ */
+public final class TraceRecorder implements AutoCloseable {
+    /** Magic number at the start of a trace file ("SOKT"). */
+    public static final int MAGIC = 0x534F4B54;
+    /** Version of the trace format. */
+    public static final int VERSION = 1;
+    /** Size of the file header in bytes. */
+    public static final int HEADER_SIZE = 16;
+    /** Size of a record in bytes. */
+    public static final int RECORD_SIZE = 32;
+
+    /** A state was expanded; children holds the number of successors. */
+    public static final byte EXPANDED = 1;
+    /** A state was taken from the fringe after it had been explored. */
+    public static final byte DUPLICATE = 2;
+    /** A state was pruned; reason holds the deadlock type + 1. */
+    public static final byte PRUNED = 3;
+    /** The last record of a trace. */
+    public static final byte END = 4;
+
+    private static final int BUFFERS = 8;
+    private static final int BUFFER_RECORDS = 4096;
+    // Each record is held as four longs until the writer serializes it
+    private static final int RECORD_LONGS = RECORD_SIZE / Long.BYTES;
+    // Seed of the state keys, unrelated to the seeds of the hash sets
+    private static final long KEY_SEED = 0x7ACE7ACEL;
+
+    private final FileChannel channel;
+    private final int sampleEvery;
+    private final BlockingQueue<long[]> free = new ArrayBlockingQueue<long[]>(BUFFERS);
+    private final BlockingQueue<long[]> full = new ArrayBlockingQueue<long[]>(BUFFERS + 1);
+    // Records in each full buffer, in the order the buffers were queued
+    private final BlockingQueue<Integer> lengths = new ArrayBlockingQueue<Integer>(BUFFERS + 1);
+    private final Thread writer;
+    private volatile IOException failure;
+
+    private long[] current;
+    private int position;
+    // Keys of the last state and last parent recorded, as consecutive
+    // records are often a state and its child, or siblings
+    private BoardState lastState;
+    private long lastKey;
+    private BoardState lastParent;
+    private long lastParentKey;
+    private final int[] skipped = new int[END + 1];
+    private long written;
+    private long dropped;
+    private boolean closed;
+
+    /**
+     * Opens a trace file and starts its writer thread.
+     *
+     * @param file        The trace file, replaced if it exists
+     * @param sampleEvery Keep one record in this many of each kind; 1 keeps
+     *                    every record
+     * @throws IOException If the file cannot be opened
+     */
+    public TraceRecorder(Path file, int sampleEvery) throws IOException {
+        this.sampleEvery = Math.max(1, sampleEvery);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).putInt(this.sampleEvery);
+        header.flip();
+        while (header.hasRemaining())
+            channel.write(header);
+        for (int i = 0; i < BUFFERS; i++)
+            free.add(new long[BUFFER_RECORDS * RECORD_LONGS]);
+        current = free.poll();
+        writer = new Thread(this::flushLoop, "trace-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Records the expansion of a state.
+     *
+     * @param state    The expanded state
+     * @param estimate The estimated distance to a solution
+     * @param children The number of successors generated
+     */
+    public void expanded(BoardState state, int estimate, int children) {
+        if (sampled(EXPANDED))
+            put(state, estimate, EXPANDED, 0, children);
+    }
+
+    /**
+     * Records a state found to be a duplicate.
+     *
+     * @param state    The state
+     * @param estimate The estimated distance to a solution
+     */
+    public void duplicate(BoardState state, int estimate) {
+        if (sampled(DUPLICATE))
+            put(state, estimate, DUPLICATE, 0, 0);
+    }
+
+    /**
+     * Records a state pruned as a deadlock.
+     *
+     * @param state    The state
+     * @param estimate The estimated distance to a solution
+     * @param type     The deadlock found
+     */
+    public void pruned(BoardState state, int estimate, DeadlockDetector.Type type) {
+        if (sampled(PRUNED))
+            put(state, estimate, PRUNED, type.ordinal() + 1, 0);
+    }
+
+    /**
+     * Checks if the next record of a kind is kept by the sampling.
+     */
+    private boolean sampled(byte kind) {
+        if (sampleEvery == 1)
+            return true;
+        if (++skipped[kind] < sampleEvery)
+            return false;
+        skipped[kind] = 0;
+        return true;
+    }
+
+    /**
+     * Appends a record to the current buffer, handing the buffer to the
+     * writer when it is full. The four longs of a record serialize to the
+     * documented layout.
+     */
+    private void put(BoardState state, int estimate, byte kind, int reason, int children) {
+        if (current == null && (current = free.poll()) == null) {
+            dropped++;
+            return;
+        }
+        BoardState parent = state.getParent();
+        Point move = state.getDirectionTaken();
+        int moveChar = move == null ? 0 : Direction.directionToChar(move) & 0xFF;
+        long[] buffer = current;
+        int i = position;
+        long key = state.stateHash(KEY_SEED);
+        buffer[i] = key;
+        buffer[i + 1] = parentKey(parent);
+        lastState = state;
+        lastKey = key;
+        buffer[i + 2] = (long) state.getDepth() << 32 | (estimate & 0xFFFFFFFFL);
+        buffer[i + 3] = (long) kind << 56 | (long) moveChar << 48 | (long) (reason & 0xFF) << 40
+                | (long) Math.min(children, 0xFFFF) << 16;
+        position = i + RECORD_LONGS;
+        written++;
+        if (position == buffer.length)
+            handOff();
+    }
+
+    /**
+     * Gets the key of a parent, reusing the keys of recent records.
+     */
+    private long parentKey(BoardState parent) {
+        if (parent == null)
+            return 0;
+        if (parent == lastParent)
+            return lastParentKey;
+        lastParentKey = parent == lastState ? lastKey : parent.stateHash(KEY_SEED);
+        lastParent = parent;
+        return lastParentKey;
+    }
+
+    /**
+     * Queues the current buffer for the writer.
+     */
+    private void handOff() {
+        lengths.add(position / RECORD_LONGS);
+        full.add(current);
+        current = null;
+        position = 0;
+    }
+
+    /**
+     * Writes full buffers to the file until the recorder is closed.
+     */
+    private void flushLoop() {
+        ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_RECORDS * RECORD_SIZE);
+        try {
+            while (true) {
+                long[] buffer = full.take();
+                int records = lengths.take();
+                if (buffer.length == 0)
+                    return;
+                bytes.clear();
+                bytes.asLongBuffer().put(buffer, 0, records * RECORD_LONGS);
+                bytes.limit(records * RECORD_SIZE);
+                try {
+                    while (bytes.hasRemaining())
+                        channel.write(bytes);
+                } catch (IOException e) {
+                    // Keep returning buffers so the search is not held up
+                    failure = e;
+                }
+                free.add(buffer);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return The number of records written so far
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * @return The number of records dropped because the writer fell behind
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Flushes the remaining records, writes the end record and closes the
+     * file.
+     *
+     * @throws UncheckedIOException If the trace could not be written
+     */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        if (current != null && position > 0)
+            handOff();
+        current = null;
+        lengths.add(0);
+        full.add(new long[0]);
+        try (FileChannel out = channel) {
+            writer.join();
+            ByteBuffer end = ByteBuffer.allocate(RECORD_SIZE);
+            end.putLong(written).putLong(dropped).putInt(0).putInt(0).put(END);
+            end.clear();
+            while (end.hasRemaining())
+                out.write(end);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            if (failure == null)
+                failure = e;
+        }
+        if (failure != null)
+            throw new UncheckedIOException("Could not write trace", failure);
+    }
+}
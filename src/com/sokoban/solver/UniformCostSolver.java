@@ -10,6 +10,7 @@ import com.sokoban.model.BoardState;
  * This algorithm assigns different costs to different types of moves:
  * - Moving the player costs 1
  * - Pushing a box costs 2
+ * Macro moves cost the sum of the moves they are made of.
  */
 public class UniformCostSolver extends AbstractSolver {
     /**
@@ -31,7 +32,7 @@ public class UniformCostSolver extends AbstractSolver {
     @Override
     protected void searchFunction(ArrayList<BoardState> moves) {
         for (BoardState move : moves) {
-            backtrack.put(move, currentState);
+            recordParent(move, currentState);
             uniformCostFunction(move, currentState.getCost());
             queue.add(move);
         }
@@ -44,9 +45,14 @@ public class UniformCostSolver extends AbstractSolver {
      * @param baseCost The cost of the current state
      */
     private void uniformCostFunction(BoardState state, int baseCost) {
-        if (currentState.nextMoveHas(BoardState.BOX, state.getDirectionTaken()))
+        if (state.getMacroMoves() != null) {
+            int pushes = state.getMacroPushes();
+            int walks = state.getMacroMoves().length() - pushes;
+            state.setCost(baseCost + 2 * pushes + walks);
+        } else if (currentState.nextMoveHas(BoardState.BOX, state.getDirectionTaken())) {
             state.setCost(baseCost + 2);
-        else
+        } else {
             state.setCost(baseCost + 1);
+        }
     }
 }
@@ -0,0 +1,278 @@
+package com.sokoban.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import com.sokoban.jfr.PrecomputationEvent;
+import com.sokoban.model.BoardState;
+import com.sokoban.model.LevelTopology;
+
+/**
+ * Binary sidecar files holding the {@link LevelAnalysis} of a level, so that
+ * repeated solves of a level skip its precomputation.
+ *
+ * A sidecar lives in a directory of sidecars and is named by the SHA-256 of
+ * the level's static layout: the size of the board and the position and goal
+ * flag of every cell of its topology. It is loaded with FileChannel.map and
+ * holds the macro detectors the solvers use with -m and -r, so loading costs
+ * a checksum pass instead of the tunnel scan and the search for each goal
+ * room's packing order. A sidecar that is missing, of another version,
+ * written for another layout or failing its checksum is rebuilt and replaced
+ * atomically.
+ *
+ * Layout (big-endian): a 64 byte header with magic, version, layout hash,
+ * cell and goal counts, the hash of the initial player and box cells and the
+ * CRC-32 of the payload; then one byte of tunnel flags per cell and the goal
+ * rooms, each as its entrance, its cells and its packing order. Goal rooms
+ * depend on where the boxes start, so they are only restored for the same
+ * initial placement and are otherwise recomputed on first use. Dead squares
+ * are not stored, as the topology computes them while the level is parsed.
+ */
+public final class AnalysisSidecar {
+    /** File name suffix of sidecars. */
+    public static final String SUFFIX = ".analysis";
+
+    private static final int MAGIC = 0x534F4B41; // "SOKA"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 64;
+    private static final int HASH_SIZE = 32;
+    private static final long PLACEMENT_SEED = 0x5A1DECA7L;
+
+    // Tunnel flags per cell
+    private static final int VERTICAL_TUNNEL = 1;
+    private static final int HORIZONTAL_TUNNEL = 2;
+
+    private AnalysisSidecar() {
+    }
+
+    /**
+     * Gets the analysis of a level from its sidecar, building the analysis
+     * and writing the sidecar if it is missing, stale or corrupt. If the
+     * sidecar cannot be written, the built analysis is returned anyway.
+     *
+     * @param directory The directory of sidecars, created if needed
+     * @param level     The initial board state of the level
+     * @return The level analysis
+     */
+    public static LevelAnalysis load(Path directory, BoardState level) {
+        byte[] hash = layoutHash(level.getTopology());
+        Path file = directory.resolve(toHex(hash) + SUFFIX);
+        try {
+            return map(file, level, hash);
+        } catch (IOException | RuntimeException e) {
+            // Missing, stale or corrupt: rebuilt below
+        }
+        LevelAnalysis analysis = new LevelAnalysis(level);
+        try {
+            Files.createDirectories(directory);
+            write(file, analysis, hash);
+        } catch (IOException e) {
+            // The analysis is still usable without its sidecar
+        }
+        return analysis;
+    }
+
+    /**
+     * Maps a sidecar and restores the analysis from it.
+     *
+     * @param file  The sidecar file
+     * @param level The initial board state of the level
+     * @param hash  The layout hash of the level
+     * @return The analysis
+     * @throws IOException If the file cannot be read or does not hold a
+     *                     valid analysis of this layout
+     */
+    static LevelAnalysis map(Path file, BoardState level, byte[] hash) throws IOException {
+        PrecomputationEvent event = new PrecomputationEvent();
+        event.begin();
+        LevelTopology topology = level.getTopology();
+        int size = topology.size();
+        int goals = topology.getGoalCount();
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Invalid sidecar size " + channel.size());
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.getInt() != MAGIC)
+            throw new IOException(file + " is not an analysis sidecar");
+        int version = buffer.getInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported sidecar version " + version);
+        byte[] stored = new byte[HASH_SIZE];
+        buffer.get(stored);
+        if (!Arrays.equals(stored, hash) || buffer.getInt() != size || buffer.getInt() != goals)
+            throw new IOException("Sidecar was written for a different level");
+        long placement = buffer.getLong();
+        long checksum = buffer.getLong();
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(HEADER_SIZE));
+        if (crc.getValue() != checksum)
+            throw new IOException("Sidecar checksum mismatch");
+
+        if (HEADER_SIZE + (long) size > buffer.capacity())
+            throw new IOException("Sidecar is truncated");
+        ByteBuffer rest = buffer.duplicate().position(HEADER_SIZE).slice();
+
+        boolean[] vertical = new boolean[size];
+        boolean[] horizontal = new boolean[size];
+        for (int cell = 0; cell < size; cell++) {
+            int flags = rest.get();
+            vertical[cell] = (flags & VERTICAL_TUNNEL) != 0;
+            horizontal[cell] = (flags & HORIZONTAL_TUNNEL) != 0;
+        }
+        GoalRoomMacroDetector goalRooms = null;
+        if (placement == level.stateHash(PLACEMENT_SEED))
+            goalRooms = readRooms(rest, level);
+
+        if (event.shouldCommit()) {
+            event.kind = "Sidecar load";
+            event.cells = size;
+            event.goals = goals;
+            event.commit();
+        }
+        return new LevelAnalysis(level, new TunnelMacroDetector(vertical, horizontal), goalRooms);
+    }
+
+    /**
+     * Reads the goal rooms of a sidecar.
+     */
+    private static GoalRoomMacroDetector readRooms(ByteBuffer in, BoardState level) throws IOException {
+        int count = in.getInt();
+        if (count < 0 || count > level.getTopology().size())
+            throw new IOException("Invalid goal room count " + count);
+        int[] entrances = new int[count];
+        int[][] cells = new int[count][];
+        int[][] orders = new int[count][];
+        for (int i = 0; i < count; i++) {
+            entrances[i] = in.getInt();
+            cells[i] = readCells(in, level);
+            orders[i] = readCells(in, level);
+        }
+        return new GoalRoomMacroDetector(level, entrances, cells, orders);
+    }
+
+    /**
+     * Reads a count followed by that many cells.
+     */
+    private static int[] readCells(ByteBuffer in, BoardState level) throws IOException {
+        int count = in.getInt();
+        if (count < 0 || count > level.getTopology().size())
+            throw new IOException("Invalid cell count " + count);
+        int[] cells = new int[count];
+        for (int i = 0; i < count; i++)
+            cells[i] = in.getInt();
+        return cells;
+    }
+
+    /**
+     * Writes the sidecar of an analysis. The file is written next to the
+     * target and moved into place, so readers never see a partial file.
+     *
+     * @param file     The sidecar file
+     * @param analysis The analysis, whose macro detectors are built if they
+     *                 have not been used yet
+     * @param hash     The layout hash of the level
+     * @throws IOException If the file cannot be written
+     */
+    static void write(Path file, LevelAnalysis analysis, byte[] hash) throws IOException {
+        BoardState level = analysis.getLevel();
+        LevelTopology topology = level.getTopology();
+        int size = topology.size();
+        TunnelMacroDetector tunnels = analysis.getTunnelMacros();
+        GoalRoomMacroDetector goalRooms = analysis.getGoalRoomMacros();
+
+        Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            CRC32 crc = new CRC32();
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                channel.position(HEADER_SIZE);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                        new CheckedOutputStream(Channels.newOutputStream(channel), crc), 1 << 16));
+                for (int cell = 0; cell < size; cell++) {
+                    out.writeByte((tunnels.isVerticalTunnel(cell) ? VERTICAL_TUNNEL : 0)
+                            | (tunnels.isHorizontalTunnel(cell) ? HORIZONTAL_TUNNEL : 0));
+                }
+                out.writeInt(goalRooms.getRoomCount());
+                for (int i = 0; i < goalRooms.getRoomCount(); i++) {
+                    out.writeInt(goalRooms.getEntrance(i));
+                    writeCells(out, goalRooms.getRoomCells(i));
+                    writeCells(out, goalRooms.getPackingOrder(i));
+                }
+                out.flush();
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).put(hash).putInt(size).putInt(topology.getGoalCount())
+                        .putLong(level.stateHash(PLACEMENT_SEED)).putLong(crc.getValue());
+                header.flip();
+                while (header.hasRemaining())
+                    channel.write(header, header.position());
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Writes a count followed by the cells.
+     */
+    private static void writeCells(DataOutputStream out, int[] cells) throws IOException {
+        out.writeInt(cells.length);
+        for (int cell : cells)
+            out.writeInt(cell);
+    }
+
+    /**
+     * Computes the SHA-256 of the static layout of a level.
+     *
+     * @param topology The topology of the level
+     * @return The hash
+     */
+    static byte[] layoutHash(LevelTopology topology) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 12);
+            buffer.putInt(topology.getRows()).putInt(topology.getColumns()).putInt(topology.size());
+            for (int cell = 0; cell < topology.size(); cell++) {
+                if (buffer.remaining() < 9) {
+                    buffer.flip();
+                    digest.update(buffer);
+                    buffer.clear();
+                }
+                buffer.putInt(topology.getRow(cell)).putInt(topology.getColumn(cell))
+                        .put((byte) (topology.isGoal(cell) ? 1 : 0));
+            }
+            buffer.flip();
+            digest.update(buffer);
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Formats bytes as hex.
+     */
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes)
+            sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+}
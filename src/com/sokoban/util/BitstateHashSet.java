@@ -0,0 +1,113 @@
+package com.sokoban.util;
+
+import com.sokoban.model.BoardState;
+
+/**
+ * An approximate set of visited board states (bitstate hashing).
+ * Each state sets k bits of a fixed-size bit table, chosen by double hashing
+ * over the player and box positions, as in a Bloom filter. No states are
+ * stored, so memory use is fixed no matter how many states are added.
+ *
+ * The price is that an unseen state may be reported as seen (a false
+ * positive), which prunes it from the search. The probability of this is
+ * estimated live from the fraction of bits set.
+ */
+public class BitstateHashSet {
+    private static final long SEED_1 = 0x9E3779B97F4A7C15L;
+    private static final long SEED_2 = 0xC2B2AE3D27D4EB4FL;
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashes;
+    private long bitsSet;
+    private long size;
+
+    /**
+     * Creates a bit table of the given size.
+     *
+     * @param bytes  The size of the bit table in bytes
+     * @param hashes The number of hash functions (bits set per state)
+     * @throws IllegalArgumentException If the size or number of hashes is not
+     *                                  positive, or the table is too large
+     */
+    public BitstateHashSet(long bytes, int hashes) {
+        if (bytes < 8 || hashes < 1)
+            throw new IllegalArgumentException("Bitstate table needs at least 8 bytes and 1 hash function");
+        long words = bytes / 8;
+        if (words > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Bitstate table too large: " + bytes + " bytes");
+        this.bits = new long[(int) words];
+        this.bitCount = words * 64;
+        this.hashes = hashes;
+    }
+
+    /**
+     * Adds a state to the set.
+     *
+     * @param state The board state
+     * @return true if the state was not (apparently) in the set before
+     */
+    public boolean add(BoardState state) {
+        long h1 = state.stateHash(SEED_1);
+        long h2 = state.stateHash(SEED_2) | 1;
+        boolean added = false;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            if ((bits[word] & mask) == 0) {
+                bits[word] |= mask;
+                bitsSet++;
+                added = true;
+            }
+        }
+        if (added)
+            size++;
+        return added;
+    }
+
+    /**
+     * Checks if a state is (apparently) in the set.
+     *
+     * @param state The board state
+     * @return true if all bits of the state are set
+     */
+    public boolean contains(BoardState state) {
+        long h1 = state.stateHash(SEED_1);
+        long h2 = state.stateHash(SEED_2) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the number of states added.
+     *
+     * @return The number of states added
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Estimates the probability that an unseen state is reported as seen,
+     * from the fraction of bits currently set.
+     *
+     * @return The estimated false-positive rate
+     */
+    public double getEstimatedFalsePositiveRate() {
+        return Math.pow((double) bitsSet / bitCount, hashes);
+    }
+
+    /**
+     * Gets the fraction of bits set in the table.
+     *
+     * @return The fill ratio between 0 and 1
+     */
+    public double getFillRatio() {
+        return (double) bitsSet / bitCount;
+    }
+}
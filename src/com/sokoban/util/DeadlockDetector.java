@@ -1,16 +1,20 @@
 package com.sokoban.util;
 
-import java.awt.Point;
-import java.util.HashSet;
-import java.util.Set;
-
 import com.sokoban.model.BoardState;
+import com.sokoban.model.LevelTopology;
 
 /**
  * Detects various types of deadlocks in Sokoban puzzles.
  * A deadlock is a state from which the puzzle cannot be solved.
  */
 public class DeadlockDetector {
+    /**
+     * The kinds of deadlock the detector recognizes.
+     */
+    public enum Type {
+        DEAD_SQUARE, CORNER, FREEZE
+    }
+
     /**
      * Checks if the current board state contains any deadlocks.
      *
@@ -18,7 +22,63 @@ public class DeadlockDetector {
      * @return true if a deadlock is detected, false otherwise
      */
     public static boolean hasDeadlock(BoardState state) {
-        return hasCornerDeadlock(state) || hasFreezeDeadlock(state);
+        return detect(state) != null;
+    }
+
+    /**
+     * Checks if the current board state contains any deadlocks, including
+     * boxes on the dead squares of a precomputed level analysis.
+     *
+     * @param state    The board state to check
+     * @param analysis The analysis of the level
+     * @return true if a deadlock is detected, false otherwise
+     */
+    public static boolean hasDeadlock(BoardState state, LevelAnalysis analysis) {
+        return detect(state, analysis) != null;
+    }
+
+    /**
+     * Finds the first kind of deadlock in the current board state, checking
+     * the cheapest detectors first.
+     *
+     * @param state    The board state to check
+     * @param analysis The analysis of the level
+     * @return The kind of deadlock detected, or null if there is none
+     */
+    public static Type detect(BoardState state, LevelAnalysis analysis) {
+        if (hasDeadSquare(state, analysis))
+            return Type.DEAD_SQUARE;
+        return detect(state);
+    }
+
+    /**
+     * Finds the first corner or freeze deadlock in the current board state.
+     *
+     * @param state The board state to check
+     * @return The kind of deadlock detected, or null if there is none
+     */
+    public static Type detect(BoardState state) {
+        if (hasCornerDeadlock(state))
+            return Type.CORNER;
+        if (hasFreezeDeadlock(state))
+            return Type.FREEZE;
+        return null;
+    }
+
+    /**
+     * Detects boxes on dead squares - cells from which no goal can be reached.
+     *
+     * @param state    The board state to check
+     * @param analysis The analysis of the level
+     * @return true if a box is on a dead square, false otherwise
+     */
+    private static boolean hasDeadSquare(BoardState state, LevelAnalysis analysis) {
+        for (int i = 0; i < state.getBoxCount(); i++) {
+            if (analysis.isDeadSquare(state.getBoxCell(i))) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -28,20 +88,20 @@ public class DeadlockDetector {
      * @return true if a corner deadlock is detected, false otherwise
      */
     private static boolean hasCornerDeadlock(BoardState state) {
-        Set<Point> boxes = state.getBoxes();
-        Set<Point> goals = state.getGoals();
+        LevelTopology topology = state.getTopology();
 
-        for (Point box : boxes) {
+        for (int i = 0; i < state.getBoxCount(); i++) {
+            int box = state.getBoxCell(i);
             // Skip boxes that are already on goals
-            if (goals.contains(box)) {
+            if (topology.isGoal(box)) {
                 continue;
             }
 
             // Check if box is in a corner (two adjacent walls)
-            boolean wallUp = state.pointHas(new Point(box.x - 1, box.y), BoardState.WALL);
-            boolean wallDown = state.pointHas(new Point(box.x + 1, box.y), BoardState.WALL);
-            boolean wallLeft = state.pointHas(new Point(box.x, box.y - 1), BoardState.WALL);
-            boolean wallRight = state.pointHas(new Point(box.x, box.y + 1), BoardState.WALL);
+            boolean wallUp = topology.neighbour(LevelTopology.UP, box) == LevelTopology.NONE;
+            boolean wallDown = topology.neighbour(LevelTopology.DOWN, box) == LevelTopology.NONE;
+            boolean wallLeft = topology.neighbour(LevelTopology.LEFT, box) == LevelTopology.NONE;
+            boolean wallRight = topology.neighbour(LevelTopology.RIGHT, box) == LevelTopology.NONE;
 
             if ((wallUp && wallLeft) || (wallUp && wallRight) ||
                     (wallDown && wallLeft) || (wallDown && wallRight)) {
@@ -60,44 +120,46 @@ public class DeadlockDetector {
      * @return true if a freeze deadlock is detected, false otherwise
      */
     private static boolean hasFreezeDeadlock(BoardState state) {
-        Set<Point> boxes = state.getBoxes();
-        Set<Point> goals = state.getGoals();
-        Set<Point> frozenBoxes = new HashSet<>();
+        LevelTopology topology = state.getTopology();
 
-        // First pass: identify boxes that are against walls
-        for (Point box : boxes) {
+        for (int i = 0; i < state.getBoxCount(); i++) {
+            int box = state.getBoxCell(i);
             // Skip boxes that are already on goals
-            if (goals.contains(box)) {
+            if (topology.isGoal(box)) {
                 continue;
             }
 
             // Check if box is against a wall
-            boolean wallUp = state.pointHas(new Point(box.x - 1, box.y), BoardState.WALL);
-            boolean wallDown = state.pointHas(new Point(box.x + 1, box.y), BoardState.WALL);
-            boolean wallLeft = state.pointHas(new Point(box.x, box.y - 1), BoardState.WALL);
-            boolean wallRight = state.pointHas(new Point(box.x, box.y + 1), BoardState.WALL);
-
-            // If box is against a wall and another box or wall in perpendicular direction
+            int up = topology.neighbour(LevelTopology.UP, box);
+            int down = topology.neighbour(LevelTopology.DOWN, box);
+            int left = topology.neighbour(LevelTopology.LEFT, box);
+            int right = topology.neighbour(LevelTopology.RIGHT, box);
+            boolean wallUp = up == LevelTopology.NONE;
+            boolean wallDown = down == LevelTopology.NONE;
+            boolean wallLeft = left == LevelTopology.NONE;
+            boolean wallRight = right == LevelTopology.NONE;
+
+            // If box is against a wall and another box or wall in perpendicular
+            // direction, it is frozen off its goal
             if (wallUp || wallDown) {
-                boolean boxOrWallLeft = wallLeft || boxes.contains(new Point(box.x, box.y - 1));
-                boolean boxOrWallRight = wallRight || boxes.contains(new Point(box.x, box.y + 1));
+                boolean boxOrWallLeft = wallLeft || state.hasBox(left);
+                boolean boxOrWallRight = wallRight || state.hasBox(right);
 
                 if (boxOrWallLeft && boxOrWallRight) {
-                    frozenBoxes.add(box);
+                    return true;
                 }
             }
 
             if (wallLeft || wallRight) {
-                boolean boxOrWallUp = wallUp || boxes.contains(new Point(box.x - 1, box.y));
-                boolean boxOrWallDown = wallDown || boxes.contains(new Point(box.x + 1, box.y));
+                boolean boxOrWallUp = wallUp || state.hasBox(up);
+                boolean boxOrWallDown = wallDown || state.hasBox(down);
 
                 if (boxOrWallUp && boxOrWallDown) {
-                    frozenBoxes.add(box);
+                    return true;
                 }
             }
         }
 
-        // If any box is frozen and not on a goal, it's a deadlock
-        return !frozenBoxes.isEmpty();
+        return false;
     }
 }
@@ -0,0 +1,425 @@
+package com.sokoban.util;
+
+import java.awt.Point;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sokoban.model.BoardState;
+import com.sokoban.model.Direction;
+import com.sokoban.model.LevelTopology;
+
+/**
+ * Detects goal-room macro moves in Sokoban puzzles.
+ * A goal room is an area of the level that contains goals and is connected to
+ * the rest of the level through a single entrance cell. Boxes can only enter
+ * such a room one at a time, so the room is filled in a fixed packing order
+ * that is computed once per level by retrograde analysis: starting from the
+ * full room, boxes are repeatedly taken back out through the entrance, and
+ * the reverse of that order is a valid way to fill the room.
+ *
+ * Pushing a box onto the entrance then becomes a single macro move that
+ * takes the box straight to the next goal in the packing order.
+ */
+public class GoalRoomMacroDetector {
+    private final LevelTopology topology;
+    private final int size;
+    private final List<GoalRoom> rooms;
+    // Room entered through each cell, null if the cell is not an entrance
+    private final GoalRoom[] roomAtEntrance;
+
+    /**
+     * Analyses the level for goal rooms and computes their packing orders.
+     *
+     * @param level The initial board state of the level
+     */
+    public GoalRoomMacroDetector(BoardState level) {
+        topology = level.getTopology();
+        size = topology.size();
+        rooms = new ArrayList<>();
+        roomAtEntrance = new GoalRoom[size];
+
+        for (GoalRoom room : findRooms(level)) {
+            room.packingOrder = computePackingOrder(room);
+            if (room.packingOrder != null) {
+                rooms.add(room);
+                roomAtEntrance[room.entrance] = room;
+            }
+        }
+    }
+
+    /**
+     * Restores a detector from precomputed rooms.
+     *
+     * @param level         The initial board state of the level
+     * @param entrances     The entrance cell of each room
+     * @param roomCells     The cells of each room
+     * @param packingOrders The goals of each room in packing order
+     * @throws IllegalArgumentException If a room refers to a cell outside
+     *                                  the level
+     */
+    GoalRoomMacroDetector(BoardState level, int[] entrances, int[][] roomCells, int[][] packingOrders) {
+        topology = level.getTopology();
+        size = topology.size();
+        rooms = new ArrayList<>();
+        roomAtEntrance = new GoalRoom[size];
+
+        for (int i = 0; i < entrances.length; i++) {
+            GoalRoom room = new GoalRoom(checkCell(entrances[i]), size);
+            for (int cell : roomCells[i])
+                room.cells[checkCell(cell)] = true;
+            for (int goal : packingOrders[i])
+                room.goals.add(checkCell(goal));
+            room.packingOrder = packingOrders[i];
+            rooms.add(room);
+            roomAtEntrance[room.entrance] = room;
+        }
+    }
+
+    /**
+     * Checks that a cell index belongs to the level.
+     */
+    private int checkCell(int cell) {
+        if (cell < 0 || cell >= size)
+            throw new IllegalArgumentException("Cell " + cell + " is outside the level");
+        return cell;
+    }
+
+    /**
+     * Gets the number of goal rooms that have a valid packing order.
+     *
+     * @return The number of goal rooms
+     */
+    public int getRoomCount() {
+        return rooms.size();
+    }
+
+    /**
+     * @param i The room number, from 0 to getRoomCount() - 1
+     * @return The entrance cell of the room
+     */
+    int getEntrance(int i) {
+        return rooms.get(i).entrance;
+    }
+
+    /**
+     * @param i The room number, from 0 to getRoomCount() - 1
+     * @return The cells of the room in ascending order
+     */
+    int[] getRoomCells(int i) {
+        boolean[] cells = rooms.get(i).cells;
+        int count = 0;
+        for (boolean cell : cells)
+            count += cell ? 1 : 0;
+        int[] list = new int[count];
+        count = 0;
+        for (int cell = 0; cell < size; cell++) {
+            if (cells[cell])
+                list[count++] = cell;
+        }
+        return list;
+    }
+
+    /**
+     * @param i The room number, from 0 to getRoomCount() - 1
+     * @return The goals of the room in the order they are filled
+     */
+    int[] getPackingOrder(int i) {
+        return rooms.get(i).packingOrder.clone();
+    }
+
+    /**
+     * Detects if a move pushes a box onto a goal-room entrance and returns the
+     * state with the box pushed to its assigned goal.
+     *
+     * @param state     The current board state
+     * @param direction The direction index of the move
+     * @return The end state after the goal-room macro move, or null if the move
+     *         does not start one
+     */
+    public BoardState detectGoalRoomMacro(BoardState state, int direction) {
+        if (rooms.isEmpty() || !state.canMove(direction) || !state.isPush(direction)) {
+            return null;
+        }
+
+        int outside = topology.neighbour(direction, state.getPlayerCell());
+        int entrance = topology.neighbour(direction, outside);
+        GoalRoom room = roomAtEntrance[entrance];
+        if (room == null || room.cells[outside]) {
+            return null;
+        }
+
+        // The room must hold exactly the first boxes of the packing order
+        int filled = 0;
+        for (int i = 0; i < state.getBoxCount(); i++) {
+            if (room.cells[state.getBoxCell(i)])
+                filled++;
+        }
+        if (filled >= room.packingOrder.length || !room.isPrefixFilled(state, filled)) {
+            return null;
+        }
+
+        List<Point> path = room.pathFor(filled, outside);
+        if (path == null) {
+            return null;
+        }
+
+        List<Point> moves = new ArrayList<>(path.size() + 1);
+        moves.add(Direction.fromIndex(direction));
+        moves.addAll(path);
+        return state.getMacroMove(moves);
+    }
+
+    /**
+     * Finds goal rooms using articulation points of the level graph.
+     * Removing an articulation point separates a part of the level from the
+     * player; such a part with goals and no boxes is a goal room.
+     *
+     * @param level The initial board state
+     * @return The goal rooms found, outermost rooms only
+     */
+    private List<GoalRoom> findRooms(BoardState level) {
+        boolean[] goal = new boolean[size];
+        boolean[] box = new boolean[size];
+        for (int cell = 0; cell < size; cell++) {
+            goal[cell] = topology.isGoal(cell);
+            box[cell] = level.hasBox(cell);
+        }
+
+        // Iterative depth-first search from the player computing discovery
+        // order, low links and subtree sizes (Tarjan)
+        int[] disc = new int[size];
+        int[] low = new int[size];
+        int[] parent = new int[size];
+        int[] subtreeSize = new int[size];
+        int[] preorder = new int[size];
+        int[] nextDirection = new int[size];
+        Arrays.fill(disc, -1);
+
+        int root = level.getPlayerCell();
+        int counter = 0;
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        disc[root] = low[root] = counter;
+        preorder[counter++] = root;
+        parent[root] = -1;
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            int cell = stack.peek();
+            if (nextDirection[cell] < 4) {
+                int next = topology.neighbour(nextDirection[cell]++, cell);
+                if (next == LevelTopology.NONE)
+                    continue;
+                if (disc[next] < 0) {
+                    disc[next] = low[next] = counter;
+                    preorder[counter++] = next;
+                    parent[next] = cell;
+                    stack.push(next);
+                } else if (next != parent[cell]) {
+                    low[cell] = Math.min(low[cell], disc[next]);
+                }
+            } else {
+                stack.pop();
+                subtreeSize[cell] += 1;
+                if (parent[cell] >= 0) {
+                    low[parent[cell]] = Math.min(low[parent[cell]], low[cell]);
+                    subtreeSize[parent[cell]] += subtreeSize[cell];
+                }
+            }
+        }
+
+        // Prefix counts of goals and boxes in discovery order, so that the
+        // contents of any subtree can be counted in constant time
+        int[] goalPrefix = new int[counter + 1];
+        int[] boxPrefix = new int[counter + 1];
+        for (int i = 0; i < counter; i++) {
+            goalPrefix[i + 1] = goalPrefix[i] + (goal[preorder[i]] ? 1 : 0);
+            boxPrefix[i + 1] = boxPrefix[i] + (box[preorder[i]] ? 1 : 0);
+        }
+
+        List<int[]> candidates = new ArrayList<>(); // {entrance, child}
+        for (int i = 1; i < counter; i++) {
+            int child = preorder[i];
+            int entrance = parent[child];
+            if (entrance == root || low[child] < disc[entrance] || goal[entrance])
+                continue;
+            int from = disc[child];
+            int to = from + subtreeSize[child];
+            if (goalPrefix[to] - goalPrefix[from] > 0 && boxPrefix[to] == boxPrefix[from])
+                candidates.add(new int[] { entrance, child });
+        }
+
+        // Subtrees are nested or disjoint, so keeping the largest candidates
+        // first leaves only the outermost rooms
+        Collections.sort(candidates, (a, b) -> Integer.compare(subtreeSize[b[1]], subtreeSize[a[1]]));
+        List<GoalRoom> found = new ArrayList<>();
+        boolean[] covered = new boolean[size];
+        for (int[] candidate : candidates) {
+            int entrance = candidate[0];
+            int child = candidate[1];
+            if (covered[entrance] || covered[child] || roomAtEntrance[entrance] != null)
+                continue;
+            GoalRoom room = new GoalRoom(entrance, size);
+            int from = disc[child];
+            for (int i = from; i < from + subtreeSize[child]; i++) {
+                int cell = preorder[i];
+                room.cells[cell] = true;
+                covered[cell] = true;
+                if (goal[cell])
+                    room.goals.add(cell);
+            }
+            covered[entrance] = true;
+            found.add(room);
+        }
+        return found;
+    }
+
+    /**
+     * Computes the packing order of a room by retrograde analysis.
+     * Starting with every goal of the room filled, a box that can be taken
+     * back out through the entrance is removed until the room is empty.
+     * Removing boxes only frees space, so a greedy removal finds an order
+     * whenever one exists.
+     *
+     * @param room The goal room
+     * @return The goals in the order they should be filled, or null if the
+     *         room cannot be filled through its entrance
+     */
+    private int[] computePackingOrder(GoalRoom room) {
+        List<Integer> remaining = new ArrayList<>(room.goals);
+        int[] order = new int[remaining.size()];
+        for (int k = remaining.size() - 1; k >= 0; k--) {
+            int removed = -1;
+            for (int goal : remaining) {
+                boolean[] obstacles = new boolean[size];
+                for (int other : remaining)
+                    obstacles[other] = other != goal;
+                for (int direction = 0; direction < 4; direction++) {
+                    int outside = topology.neighbour(direction, room.entrance);
+                    if (outside != LevelTopology.NONE && !room.cells[outside]
+                            && findPushPath(room, outside, goal, obstacles) != null) {
+                        removed = goal;
+                        break;
+                    }
+                }
+                if (removed >= 0)
+                    break;
+            }
+            if (removed < 0)
+                return null;
+            order[k] = removed;
+            remaining.remove(Integer.valueOf(removed));
+        }
+        return order;
+    }
+
+    /**
+     * Finds the shortest move sequence that takes a box from the entrance to a
+     * goal, starting with the player on the given cell outside the room.
+     * The player may only walk inside the room, on the entrance and on the
+     * starting cell, so the path does not depend on boxes outside the room.
+     *
+     * @param room      The goal room
+     * @param outside   The player cell outside the room
+     * @param goal      The target goal cell
+     * @param obstacles Cells blocked by boxes already in the room
+     * @return The directions to move, or null if no such path exists
+     */
+    private List<Point> findPushPath(GoalRoom room, int outside, int goal, boolean[] obstacles) {
+        long start = (long) room.entrance * size + outside;
+        Map<Long, Long> previous = new HashMap<>();
+        Map<Long, Point> moveTaken = new HashMap<>();
+        ArrayDeque<Long> queue = new ArrayDeque<>();
+        previous.put(start, -1L);
+        queue.add(start);
+
+        while (!queue.isEmpty()) {
+            long node = queue.poll();
+            int box = (int) (node / size);
+            int player = (int) (node % size);
+            if (box == goal) {
+                List<Point> path = new ArrayList<>();
+                for (long n = node; previous.get(n) >= 0; n = previous.get(n))
+                    path.add(moveTaken.get(n));
+                Collections.reverse(path);
+                return path;
+            }
+            for (int direction = 0; direction < 4; direction++) {
+                int next = topology.neighbour(direction, player);
+                if (!isPlayerCell(room, next, outside) || obstacles[next])
+                    continue;
+                int nextBox = box;
+                if (next == box) {
+                    nextBox = topology.neighbour(direction, box);
+                    if (nextBox == LevelTopology.NONE || !room.cells[nextBox] || obstacles[nextBox])
+                        continue;
+                }
+                long nextNode = (long) nextBox * size + next;
+                if (!previous.containsKey(nextNode)) {
+                    previous.put(nextNode, node);
+                    moveTaken.put(nextNode, Direction.fromIndex(direction));
+                    queue.add(nextNode);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks if the player may stand on a cell during a goal-room macro.
+     *
+     * @param room    The goal room
+     * @param cell    The cell to check
+     * @param outside The player cell outside the room
+     * @return true if the player may stand on the cell
+     */
+    private static boolean isPlayerCell(GoalRoom room, int cell, int outside) {
+        return cell >= 0 && (room.cells[cell] || cell == room.entrance || cell == outside);
+    }
+
+    /**
+     * A goal room with its entrance, cells and packing order.
+     */
+    private class GoalRoom {
+        final int entrance;
+        final boolean[] cells;
+        final List<Integer> goals = new ArrayList<>();
+        int[] packingOrder;
+        // Cached macro paths keyed by number of filled goals and player cell
+        final Map<Long, List<Point>> paths = new HashMap<>();
+
+        GoalRoom(int entrance, int size) {
+            this.entrance = entrance;
+            this.cells = new boolean[size];
+        }
+
+        /**
+         * Checks if the first goals of the packing order hold boxes.
+         */
+        boolean isPrefixFilled(BoardState state, int filled) {
+            for (int k = 0; k < filled; k++) {
+                if (!state.hasBox(packingOrder[k]))
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * Gets the macro path for the next box, computing it on first use.
+         * Synchronized because detectors may be shared between solver threads.
+         */
+        synchronized List<Point> pathFor(int filled, int outside) {
+            long key = (long) filled * size + outside;
+            if (!paths.containsKey(key)) {
+                boolean[] obstacles = new boolean[size];
+                for (int k = 0; k < filled; k++)
+                    obstacles[packingOrder[k]] = true;
+                paths.put(key, findPushPath(this, outside, packingOrder[filled], obstacles));
+            }
+            return paths.get(key);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.sokoban.util;
+
+import java.awt.Point;
+
+import com.sokoban.jfr.PrecomputationEvent;
+import com.sokoban.model.BoardState;
+import com.sokoban.model.LevelTopology;
+
+/**
+ * Per-level precomputation shared between the solvers of a level: the tunnel
+ * and goal-room macro detectors, built on first use, and lookups of the dead
+ * squares held by the level's {@link LevelTopology}.
+ *
+ * A dead square is a cell from which a box can never be pushed to any goal,
+ * even with no other boxes on the board, so any box on a dead square that is
+ * not on a goal is a deadlock.
+ *
+ * Dead squares and tunnels only depend on the static layout, but goal rooms
+ * and their packing order also depend on where the boxes start, so an
+ * analysis belongs to one initial board. An {@link AnalysisSidecar} file
+ * restores the goal rooms only for the same initial placement.
+ *
+ * Instances are immutable once built (the macro detectors are created on
+ * first use) and may be shared between solvers and threads.
+ */
+public class LevelAnalysis {
+    private final BoardState level;
+    private final LevelTopology topology;
+
+    private TunnelMacroDetector tunnelMacros;
+    private GoalRoomMacroDetector goalRoomMacros;
+
+    /**
+     * Analyses a level.
+     *
+     * @param level The initial board state of the level
+     */
+    public LevelAnalysis(BoardState level) {
+        this.level = level;
+        this.topology = level.getTopology();
+    }
+
+    /**
+     * Restores an analysis from precomputed parts.
+     *
+     * @param level          The initial board state of the level
+     * @param tunnelMacros   The tunnel macro detector, or null to create it
+     *                       on first use
+     * @param goalRoomMacros The goal-room macro detector, or null to create
+     *                       it on first use
+     */
+    LevelAnalysis(BoardState level, TunnelMacroDetector tunnelMacros, GoalRoomMacroDetector goalRoomMacros) {
+        this.level = level;
+        this.topology = level.getTopology();
+        this.tunnelMacros = tunnelMacros;
+        this.goalRoomMacros = goalRoomMacros;
+    }
+
+    /**
+     * Checks if a box on a position can never reach any goal.
+     *
+     * @param position The position of the box
+     * @return true if the position is a dead square
+     */
+    public boolean isDeadSquare(Point position) {
+        int cell = topology.cellAt(position.x, position.y);
+        return cell != LevelTopology.NONE && topology.isDead(cell);
+    }
+
+    /**
+     * Checks if a box on a cell can never reach any goal.
+     *
+     * @param cell The cell of the box
+     * @return true if the cell is a dead square
+     */
+    public boolean isDeadSquare(int cell) {
+        return topology.isDead(cell);
+    }
+
+    /**
+     * @return The initial board state of the level
+     */
+    BoardState getLevel() {
+        return level;
+    }
+
+    /**
+     * Gets the tunnel macro detector of the level, creating it on first use.
+     *
+     * @return The tunnel macro detector
+     */
+    public synchronized TunnelMacroDetector getTunnelMacros() {
+        if (tunnelMacros == null) {
+            PrecomputationEvent event = new PrecomputationEvent();
+            event.begin();
+            tunnelMacros = new TunnelMacroDetector(level);
+            commit(event, "Tunnel macros");
+        }
+        return tunnelMacros;
+    }
+
+    /**
+     * Gets the goal-room macro detector of the level, creating it on first use.
+     *
+     * @return The goal-room macro detector
+     */
+    public synchronized GoalRoomMacroDetector getGoalRoomMacros() {
+        if (goalRoomMacros == null) {
+            PrecomputationEvent event = new PrecomputationEvent();
+            event.begin();
+            goalRoomMacros = new GoalRoomMacroDetector(level);
+            commit(event, "Goal-room macros");
+        }
+        return goalRoomMacros;
+    }
+
+    /**
+     * Commits a precomputation event for this level.
+     */
+    private void commit(PrecomputationEvent event, String kind) {
+        if (event.shouldCommit()) {
+            event.kind = kind;
+            event.cells = topology.size();
+            event.goals = topology.getGoalCount();
+            event.commit();
+        }
+    }
+}
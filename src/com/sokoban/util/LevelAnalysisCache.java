@@ -0,0 +1,81 @@
+package com.sokoban.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.sokoban.model.BoardState;
+
+/**
+ * A bounded, thread-safe cache of level analyses, keyed by the run-length
+ * encoded text of the initial board, which stays short for large sparse
+ * levels. Lets a long-running process reuse the macro detectors when the
+ * same level is solved again.
+ */
+public class LevelAnalysisCache {
+    private final Map<String, LevelAnalysis> analyses;
+    private long hits;
+    private long misses;
+
+    /**
+     * Creates a cache holding at most the given number of levels.
+     *
+     * @param capacity The maximum number of levels; the least recently used
+     *                 level is evicted when the cache is full
+     */
+    public LevelAnalysisCache(final int capacity) {
+        analyses = new LinkedHashMap<String, LevelAnalysis>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, LevelAnalysis> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Gets the analysis of a level, computing it if the level is not cached.
+     * The analysis is computed outside the lock, so a slow level does not
+     * block lookups of other levels.
+     *
+     * @param level The initial board state of the level
+     * @return The level analysis
+     */
+    public LevelAnalysis get(BoardState level) {
+        String key = level.toRunLengthString();
+        synchronized (this) {
+            LevelAnalysis analysis = analyses.get(key);
+            if (analysis != null) {
+                hits++;
+                return analysis;
+            }
+            misses++;
+        }
+        LevelAnalysis analysis = new LevelAnalysis(level);
+        synchronized (this) {
+            LevelAnalysis existing = analyses.putIfAbsent(key, analysis);
+            return existing != null ? existing : analysis;
+        }
+    }
+
+    /**
+     * @return The number of levels in the cache
+     */
+    public synchronized int size() {
+        return analyses.size();
+    }
+
+    /**
+     * @return The number of lookups answered from the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return The number of lookups that had to analyse the level
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,304 @@
+package com.sokoban.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates random levels that are guaranteed to be solvable, for measuring
+ * how the solvers scale with board size and box count.
+ *
+ * A level is carved as rectangular rooms joined by one-cell-wide corridors,
+ * with a few extra corridors so the layout has loops. Goals are placed on
+ * room cells with the boxes on them, which is the solved state, and the
+ * player then pulls boxes at random from that state. Every pull is the
+ * reverse of a push, so playing the pulls backwards solves the level.
+ *
+ * The same size, box count and seed always give the same level, as the
+ * generator only draws from a {@link Random} with that seed.
+ */
+public final class LevelGenerator {
+    private static final int MIN_SIZE = 5;
+    private static final int MAX_ROOM_SIZE = 8;
+    // Area per room, so larger levels get more rooms of the same sizes
+    private static final int AREA_PER_ROOM = 64;
+    private static final int PULLS_PER_BOX = 12;
+    private static final int ATTEMPTS = 16;
+
+    private static final int[] ROW_STEP = { -1, 0, 1, 0 };
+    private static final int[] COLUMN_STEP = { 0, 1, 0, -1 };
+
+    private final int width;
+    private final int height;
+    private final int boxes;
+    private final long seed;
+
+    private Random random;
+    private boolean[] floor;
+    private boolean[] room;
+    private boolean[] goal;
+    private boolean[] box;
+    private int player;
+
+    /**
+     * Creates a generator.
+     *
+     * @param width  The number of columns, including the outer walls
+     * @param height The number of rows, including the outer walls
+     * @param boxes  The number of boxes and goals
+     * @param seed   The seed of the random numbers
+     * @throws IllegalArgumentException If the size is below 5x5 or there
+     *                                  are no boxes
+     */
+    public LevelGenerator(int width, int height, int boxes, long seed) {
+        if (width < MIN_SIZE || height < MIN_SIZE)
+            throw new IllegalArgumentException("Level size must be at least " + MIN_SIZE + "x" + MIN_SIZE);
+        if ((long) width * height > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Level too large: " + width + "x" + height);
+        if (boxes < 1)
+            throw new IllegalArgumentException("A level needs at least one box");
+        this.width = width;
+        this.height = height;
+        this.boxes = boxes;
+        this.seed = seed;
+    }
+
+    /**
+     * Generates the level.
+     *
+     * @return The rows of the level, with '#' walls, '.' goals, '$' boxes,
+     *         '*' boxes on goals, '@' or '+' for the player and spaces for
+     *         floor
+     * @throws IllegalArgumentException If the rooms have too few cells for
+     *                                  the boxes
+     */
+    public List<String> generate() {
+        random = new Random(seed);
+        carve();
+        int[] roomCells = cells(room);
+        if (roomCells.length < boxes + 1)
+            throw new IllegalArgumentException("Level too small for " + boxes + " boxes");
+        // A level whose pulls all cancel out starts solved; place again
+        for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+            place(roomCells);
+            pull();
+            if (!isSolved())
+                break;
+        }
+        return render();
+    }
+
+    /**
+     * Carves the rooms and the corridors between them.
+     */
+    private void carve() {
+        floor = new boolean[width * height];
+        room = new boolean[width * height];
+        int rooms = Math.max(1, (width - 2) * (height - 2) / AREA_PER_ROOM);
+        int[] centres = new int[rooms];
+        for (int i = 0; i < rooms; i++) {
+            int roomWidth = 2 + random.nextInt(Math.min(MAX_ROOM_SIZE, width - 2) - 1);
+            int roomHeight = 2 + random.nextInt(Math.min(MAX_ROOM_SIZE, height - 2) - 1);
+            int top = 1 + random.nextInt(height - 1 - roomHeight);
+            int left = 1 + random.nextInt(width - 1 - roomWidth);
+            for (int row = top; row < top + roomHeight; row++) {
+                for (int col = left; col < left + roomWidth; col++) {
+                    floor[row * width + col] = true;
+                    room[row * width + col] = true;
+                }
+            }
+            centres[i] = (top + roomHeight / 2) * width + left + roomWidth / 2;
+        }
+        // A chain through every room keeps the level connected, and extra
+        // corridors between random rooms add loops
+        for (int i = 1; i < rooms; i++)
+            corridor(centres[i - 1], centres[i]);
+        for (int i = 0; i < rooms / 4; i++)
+            corridor(centres[random.nextInt(rooms)], centres[random.nextInt(rooms)]);
+    }
+
+    /**
+     * Carves an L-shaped corridor between two cells.
+     */
+    private void corridor(int from, int to) {
+        int row = from / width, col = from % width;
+        int toRow = to / width, toCol = to % width;
+        boolean horizontalFirst = random.nextBoolean();
+        if (horizontalFirst) {
+            for (; col != toCol; col += Integer.signum(toCol - col))
+                floor[row * width + col] = true;
+        }
+        for (; row != toRow; row += Integer.signum(toRow - row))
+            floor[row * width + col] = true;
+        for (; col != toCol; col += Integer.signum(toCol - col))
+            floor[row * width + col] = true;
+        floor[to] = true;
+    }
+
+    /**
+     * Places the goals with a box on each, and the player, on distinct room
+     * cells.
+     *
+     * @param roomCells The room cells, shuffled in place
+     */
+    private void place(int[] roomCells) {
+        goal = new boolean[width * height];
+        box = new boolean[width * height];
+        // Partial Fisher-Yates shuffle of the cells drawn
+        for (int i = 0; i <= boxes; i++) {
+            int j = i + random.nextInt(roomCells.length - i);
+            int cell = roomCells[j];
+            roomCells[j] = roomCells[i];
+            roomCells[i] = cell;
+            if (i < boxes) {
+                goal[cell] = true;
+                box[cell] = true;
+            } else {
+                player = cell;
+            }
+        }
+    }
+
+    /**
+     * Pulls random boxes from the solved state. A pull needs the player next
+     * to a box and a free cell behind the player; the player steps back and
+     * the box follows.
+     */
+    private void pull() {
+        int pulls = PULLS_PER_BOX * boxes;
+        boolean[] reached = new boolean[width * height];
+        int[] queue = new int[width * height];
+        List<int[]> candidates = new ArrayList<int[]>();
+        for (int n = 0; n < pulls; n++) {
+            // The player can walk anywhere it reaches without moving a box
+            Arrays.fill(reached, false);
+            reached[player] = true;
+            queue[0] = player;
+            int tail = 1;
+            candidates.clear();
+            for (int head = 0; head < tail; head++) {
+                int cell = queue[head];
+                for (int d = 0; d < 4; d++) {
+                    int next = neighbour(cell, d);
+                    if (next < 0 || !floor[next])
+                        continue;
+                    if (box[next]) {
+                        // Standing on cell, the player can pull the box the
+                        // other way if the cell behind it is free
+                        int behind = neighbour(cell, (d + 2) & 3);
+                        if (behind >= 0 && floor[behind] && !box[behind])
+                            candidates.add(new int[] { next, cell, behind });
+                    } else if (!reached[next]) {
+                        reached[next] = true;
+                        queue[tail++] = next;
+                    }
+                }
+            }
+            if (candidates.isEmpty())
+                return;
+            int[] chosen = candidates.get(random.nextInt(candidates.size()));
+            box[chosen[0]] = false;
+            box[chosen[1]] = true;
+            player = chosen[2];
+        }
+    }
+
+    /**
+     * @return The neighbour of a cell in a direction, or -1 past the edge
+     */
+    private int neighbour(int cell, int direction) {
+        int row = cell / width + ROW_STEP[direction];
+        int col = cell % width + COLUMN_STEP[direction];
+        if (row < 0 || row >= height || col < 0 || col >= width)
+            return -1;
+        return row * width + col;
+    }
+
+    /**
+     * @return True if every box is on a goal
+     */
+    private boolean isSolved() {
+        for (int cell = 0; cell < box.length; cell++) {
+            if (box[cell] && !goal[cell])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return The indices of the cells that are set
+     */
+    private static int[] cells(boolean[] set) {
+        int count = 0;
+        for (boolean b : set) {
+            if (b)
+                count++;
+        }
+        int[] cells = new int[count];
+        count = 0;
+        for (int cell = 0; cell < set.length; cell++) {
+            if (set[cell])
+                cells[count++] = cell;
+        }
+        return cells;
+    }
+
+    /**
+     * Renders the level. Every cell that was not carved is a wall, so the
+     * level keeps its full size and has no blank rows.
+     */
+    private List<String> render() {
+        List<String> rows = new ArrayList<String>(height);
+        StringBuilder sb = new StringBuilder(width);
+        for (int row = 0; row < height; row++) {
+            sb.setLength(0);
+            for (int col = 0; col < width; col++) {
+                int cell = row * width + col;
+                if (!floor[cell])
+                    sb.append('#');
+                else if (cell == player)
+                    sb.append(goal[cell] ? '+' : '@');
+                else if (box[cell])
+                    sb.append(goal[cell] ? '*' : '$');
+                else
+                    sb.append(goal[cell] ? '.' : ' ');
+            }
+            rows.add(sb.toString());
+        }
+        return rows;
+    }
+
+    /**
+     * Formats a level in the original input format: the number of columns,
+     * the number of rows and the rows.
+     *
+     * @param rows The rows of the level, all the same length
+     * @return The level text
+     */
+    public static String toOriginalFormat(List<String> rows) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(rows.isEmpty() ? 0 : rows.get(0).length()).append('\n');
+        sb.append(rows.size()).append('\n');
+        for (String row : rows)
+            sb.append(row).append('\n');
+        return sb.toString();
+    }
+
+    /**
+     * Formats a level as an XSB collection entry: a title comment, the rows
+     * and an empty line.
+     *
+     * @param title The title of the level
+     * @param rows  The rows of the level
+     * @return The level text
+     */
+    public static String toXsb(String title, List<String> rows) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("; ").append(title).append('\n');
+        for (String row : rows)
+            sb.append(row).append('\n');
+        sb.append('\n');
+        return sb.toString();
+    }
+}
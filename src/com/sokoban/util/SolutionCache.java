@@ -0,0 +1,393 @@
+package com.sokoban.util;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import com.sokoban.model.BoardState;
+import com.sokoban.model.Direction;
+
+/**
+ * A disk-persisted cache of solutions, keyed by a canonical fingerprint of
+ * the level.
+ *
+ * The fingerprint covers walls, goals, boxes and the player, cropped to the
+ * occupied area and normalized over the 8 rotations and reflections of the
+ * board, so a level is found again even if it is given rotated or mirrored.
+ * Solutions are stored in the canonical orientation and mapped back through
+ * the transform on lookup.
+ *
+ * The file is an append-only log of text records, each ending with a CRC32
+ * of its content and written with a single write followed by a sync. A torn
+ * record left by a crash fails its check and is dropped on the next load.
+ * The cache holds at most a fixed number of levels; the least recently used
+ * level is evicted first, and the log is compacted by rewriting it to a
+ * temporary file that atomically replaces the old one.
+ */
+public class SolutionCache {
+    /** The default maximum number of levels kept. */
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    // Linear parts of the 8 rotations and reflections: row' = a*row + b*col,
+    // col' = c*row + d*col
+    private static final int[][] TRANSFORMS = {
+            { 1, 0, 0, 1 }, { 0, 1, -1, 0 }, { -1, 0, 0, -1 }, { 0, -1, 1, 0 },
+            { 1, 0, 0, -1 }, { -1, 0, 0, 1 }, { 0, 1, 1, 0 }, { 0, -1, -1, 0 }
+    };
+    private static final char SOLUTION = 'S';
+    private static final char TOUCH = 'T';
+
+    private final Path file;
+    private final int maxEntries;
+    // Canonical solutions by fingerprint, least recently used first
+    private final LinkedHashMap<String, String> solutions;
+    private int records;
+
+    /**
+     * Opens a cache file, creating it if needed.
+     *
+     * @param file       The cache file
+     * @param maxEntries The maximum number of levels kept
+     * @throws IOException If the file cannot be read
+     */
+    public SolutionCache(Path file, int maxEntries) throws IOException {
+        this.file = file;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.solutions = new LinkedHashMap<String, String>(16, 0.75f, true);
+        load();
+    }
+
+    /**
+     * Looks up the solution of a level.
+     * The cached moves are replayed on the level before they are returned,
+     * so a damaged entry is never reported as a solution.
+     *
+     * @param level The initial board state of the level
+     * @return The moves (u, r, d, l without delimiters), or null on a miss
+     * @throws IOException If the access cannot be recorded
+     */
+    public synchronized String get(BoardState level) throws IOException {
+        Fingerprint fingerprint = fingerprint(level);
+        String canonical = solutions.get(fingerprint.key);
+        if (canonical == null)
+            return null;
+        String solution = mapMoves(canonical, TRANSFORMS[fingerprint.transform], true);
+        if (replay(level, solution) == null) {
+            solutions.remove(fingerprint.key);
+            return null;
+        }
+        append(TOUCH + " " + fingerprint.key);
+        return solution;
+    }
+
+    /**
+     * Stores the solution of a level, unless a shorter one is already cached.
+     *
+     * @param level    The initial board state of the level
+     * @param solution The moves (u, r, d, l without delimiters)
+     * @throws IOException If the solution cannot be written
+     */
+    public synchronized void put(BoardState level, String solution) throws IOException {
+        Fingerprint fingerprint = fingerprint(level);
+        String canonical = mapMoves(solution, TRANSFORMS[fingerprint.transform], false);
+        String existing = solutions.get(fingerprint.key);
+        if (existing != null && existing.length() <= canonical.length())
+            return;
+        solutions.put(fingerprint.key, canonical);
+        append(SOLUTION + " " + fingerprint.key + " " + canonical);
+        evict();
+        if (records > 2 * maxEntries)
+            compact();
+    }
+
+    /**
+     * Replays moves on a level.
+     *
+     * @param level The initial board state
+     * @param moves The moves (u, r, d, l without delimiters)
+     * @return The final state if every move is legal and it solves the level,
+     *         otherwise null
+     */
+    public static BoardState replay(BoardState level, String moves) {
+        BoardState state = level;
+        for (int i = 0; i < moves.length(); i++) {
+            Point direction = Direction.charToDirection(moves.charAt(i));
+            if (!state.canMove(direction))
+                return null;
+            state = state.getMove(direction);
+        }
+        return state.isSolved() ? state : null;
+    }
+
+    /**
+     * @return The number of levels in the cache
+     */
+    public synchronized int size() {
+        return solutions.size();
+    }
+
+    /**
+     * Computes the canonical fingerprint of a level: the SHA-256 of the
+     * smallest text rendering over all 8 orientations of the cropped board.
+     *
+     * @param level The initial board state
+     * @return The fingerprint and the transform into canonical orientation
+     */
+    static Fingerprint fingerprint(BoardState level) {
+        int rows = level.getRows();
+        int columns = level.getColumns();
+        char[][] cells = new char[rows][columns];
+        int top = rows, bottom = -1, left = columns, right = -1;
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                cells[r][c] = cellChar(level, new Point(r, c));
+                if (cells[r][c] != ' ') {
+                    top = Math.min(top, r);
+                    bottom = Math.max(bottom, r);
+                    left = Math.min(left, c);
+                    right = Math.max(right, c);
+                }
+            }
+        }
+
+        String best = null;
+        int bestTransform = 0;
+        for (int t = 0; t < TRANSFORMS.length; t++) {
+            String rendering = render(cells, top, bottom, left, right, TRANSFORMS[t]);
+            if (best == null || rendering.compareTo(best) < 0) {
+                best = rendering;
+                bestTransform = t;
+            }
+        }
+        return new Fingerprint(sha256(best), bestTransform);
+    }
+
+    /**
+     * Gets the character of a cell, as in the input format.
+     */
+    private static char cellChar(BoardState level, Point p) {
+        if (level.pointHas(p, BoardState.WALL))
+            return '#';
+        boolean goal = level.pointHas(p, BoardState.GOAL);
+        if (level.pointHas(p, BoardState.BOX))
+            return goal ? '*' : '$';
+        if (level.getPlayerPosition().equals(p))
+            return goal ? '+' : '@';
+        return goal ? '.' : ' ';
+    }
+
+    /**
+     * Renders a cropped board in one orientation, with its dimensions first.
+     *
+     * @param cells     The board characters
+     * @param top       The first occupied row
+     * @param bottom    The last occupied row
+     * @param left      The first occupied column
+     * @param right     The last occupied column
+     * @param transform The linear part of the transform
+     * @return The rendering
+     */
+    private static String render(char[][] cells, int top, int bottom, int left, int right, int[] transform) {
+        int height = bottom - top + 1;
+        int width = right - left + 1;
+        boolean swap = transform[0] == 0;
+        int outRows = swap ? width : height;
+        int outColumns = swap ? height : width;
+        // Offsets that move the transformed corners back to row and column 0
+        int rowOffset = -Math.min(0, transform[0] * (height - 1)) - Math.min(0, transform[1] * (width - 1));
+        int colOffset = -Math.min(0, transform[2] * (height - 1)) - Math.min(0, transform[3] * (width - 1));
+
+        char[] out = new char[outRows * outColumns];
+        for (int r = 0; r < height; r++) {
+            for (int c = 0; c < width; c++) {
+                int row = transform[0] * r + transform[1] * c + rowOffset;
+                int col = transform[2] * r + transform[3] * c + colOffset;
+                out[row * outColumns + col] = cells[top + r][left + c];
+            }
+        }
+        StringBuilder sb = new StringBuilder(out.length + outRows + 16);
+        sb.append(outRows).append('x').append(outColumns).append('\n');
+        for (int r = 0; r < outRows; r++)
+            sb.append(out, r * outColumns, outColumns).append('\n');
+        return sb.toString();
+    }
+
+    /**
+     * Maps moves through a transform or its inverse.
+     *
+     * @param moves     The moves (u, r, d, l without delimiters)
+     * @param transform The linear part of the transform
+     * @param inverse   True to apply the inverse transform
+     * @return The mapped moves
+     */
+    private static String mapMoves(String moves, int[] transform, boolean inverse) {
+        // The transforms are orthogonal, so the inverse is the transpose
+        int a = transform[0], b = inverse ? transform[2] : transform[1];
+        int c = inverse ? transform[1] : transform[2], d = transform[3];
+        StringBuilder sb = new StringBuilder(moves.length());
+        for (int i = 0; i < moves.length(); i++) {
+            Point direction = Direction.charToDirection(moves.charAt(i));
+            Point mapped = new Point(a * direction.x + b * direction.y, c * direction.x + d * direction.y);
+            sb.append(Direction.directionToChar(mapped));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Computes the SHA-256 of a string as hex.
+     */
+    private static String sha256(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest)
+                sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Loads the log, replaying records in order. Records that fail their
+     * check are skipped, and a torn record at the end is cut off so that the
+     * next record starts on a fresh line.
+     *
+     * @throws IOException If the file cannot be read
+     */
+    private void load() throws IOException {
+        if (!Files.exists(file))
+            return;
+        byte[] bytes = Files.readAllBytes(file);
+        int start = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != '\n')
+                continue;
+            String line = new String(bytes, start, i - start, StandardCharsets.UTF_8);
+            start = i + 1;
+            String content = checkedContent(line);
+            if (content == null)
+                continue;
+            records++;
+            String[] fields = content.split(" ");
+            if (fields[0].charAt(0) == SOLUTION && fields.length == 3)
+                solutions.put(fields[1], fields[2]);
+            else if (fields[0].charAt(0) == TOUCH && fields.length == 2)
+                solutions.get(fields[1]);
+        }
+        if (start < bytes.length) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(start);
+            }
+        }
+        evict();
+    }
+
+    /**
+     * Strips and verifies the CRC of a record line.
+     *
+     * @param line The record line without its newline
+     * @return The record content, or null if the line is damaged
+     */
+    private static String checkedContent(String line) {
+        int space = line.lastIndexOf(' ');
+        if (space <= 0)
+            return null;
+        String content = line.substring(0, space);
+        return line.substring(space + 1).equals(crc(content)) ? content : null;
+    }
+
+    /**
+     * Computes the CRC32 of a record as hex.
+     */
+    private static String crc(String content) {
+        CRC32 crc = new CRC32();
+        crc.update(content.getBytes(StandardCharsets.UTF_8));
+        return String.format("%08x", crc.getValue());
+    }
+
+    /**
+     * Appends a record to the log with a single write and syncs it to disk.
+     *
+     * @param content The record content
+     * @throws IOException If the record cannot be written
+     */
+    private void append(String content) throws IOException {
+        byte[] line = (content + " " + crc(content) + "\n").getBytes(StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            FileLock lock = channel.lock();
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(line);
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+                channel.force(false);
+            } finally {
+                lock.release();
+            }
+        }
+        records++;
+    }
+
+    /**
+     * Evicts the least recently used levels beyond the size bound.
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, String>> it = solutions.entrySet().iterator();
+        while (solutions.size() > maxEntries && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    /**
+     * Rewrites the log with one record per cached level, in least recently
+     * used order, and atomically replaces the old log with it.
+     *
+     * @throws IOException If the log cannot be rewritten
+     */
+    private void compact() throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> entry : solutions.entrySet()) {
+            String content = SOLUTION + " " + entry.getKey() + " " + entry.getValue();
+            sb.append(content).append(' ').append(crc(content)).append('\n');
+        }
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        records = solutions.size();
+    }
+
+    /**
+     * The canonical fingerprint of a level and the transform that takes the
+     * level into canonical orientation.
+     */
+    static class Fingerprint {
+        final String key;
+        final int transform;
+
+        Fingerprint(String key, int transform) {
+            this.key = key;
+            this.transform = transform;
+        }
+    }
+}
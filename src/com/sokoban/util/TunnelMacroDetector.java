@@ -5,171 +5,115 @@ import java.util.ArrayList;
 import java.util.List;
 
 import com.sokoban.model.BoardState;
+import com.sokoban.model.Direction;
+import com.sokoban.model.LevelTopology;
 
 /**
  * Detects tunnel macro moves in Sokoban puzzles.
  * A tunnel is a narrow passage where a box can only move in one direction.
  * This allows us to skip intermediate states and directly move to the end of
  * the tunnel.
+ *
+ * Tunnel cells only depend on the walls of a level, so they are precomputed
+ * once per level when the detector is created.
  */
 public class TunnelMacroDetector {
+    // Cells whose left and right neighbours are both walls
+    private final boolean[] verticalTunnel;
+    // Cells whose upper and lower neighbours are both walls
+    private final boolean[] horizontalTunnel;
+
     /**
-     * Detects if a move is the start of a tunnel macro move and returns the end
-     * state.
+     * Precomputes the tunnel cells of a level.
      *
-     * @param state     The current board state
-     * @param direction The direction of the move
-     * @return The end state after the tunnel macro move, or null if not a tunnel
-     *         move
+     * @param level Any board state of the level (only walls are used)
      */
-    public static BoardState detectTunnelMacro(BoardState state, Point direction) {
-        // Check if the move involves pushing a box
-        Point newPlayerPos = new Point(state.getPlayerPosition().x + direction.x,
-                state.getPlayerPosition().y + direction.y);
-
-        if (!state.pointHas(newPlayerPos, BoardState.BOX)) {
-            return null; // Not pushing a box, so not a tunnel move
-        }
-
-        Point boxPos = newPlayerPos;
-        Point newBoxPos = new Point(boxPos.x + direction.x, boxPos.y + direction.y);
-
-        // Check if we're entering a tunnel
-        if (!isTunnelEntrance(state, boxPos, direction)) {
-            return null;
-        }
-
-        // Follow the tunnel until we reach the end
-        List<Point> tunnelPath = new ArrayList<>();
-        tunnelPath.add(newBoxPos);
-
-        Point currentPos = newBoxPos;
-        Point tunnelDirection = direction;
-
-        while (true) {
-            // Check if we can continue in the same direction
-            Point nextPos = new Point(currentPos.x + tunnelDirection.x,
-                    currentPos.y + tunnelDirection.y);
-
-            // If next position is a wall or a box, we've reached the end of the tunnel
-            if (state.pointHas(nextPos, BoardState.WALL) ||
-                    state.pointHas(nextPos, BoardState.BOX)) {
-                break;
-            }
-
-            // Check if we're still in a tunnel
-            if (!isTunnelPosition(state, currentPos, tunnelDirection)) {
-                break;
-            }
-
-            // Continue along the tunnel
-            currentPos = nextPos;
-            tunnelPath.add(currentPos);
+    public TunnelMacroDetector(BoardState level) {
+        LevelTopology topology = level.getTopology();
+        int size = topology.size();
+        verticalTunnel = new boolean[size];
+        horizontalTunnel = new boolean[size];
+
+        for (int cell = 0; cell < size; cell++) {
+            verticalTunnel[cell] = topology.neighbour(LevelTopology.LEFT, cell) == LevelTopology.NONE
+                    && topology.neighbour(LevelTopology.RIGHT, cell) == LevelTopology.NONE;
+            horizontalTunnel[cell] = topology.neighbour(LevelTopology.UP, cell) == LevelTopology.NONE
+                    && topology.neighbour(LevelTopology.DOWN, cell) == LevelTopology.NONE;
         }
-
-        // If the tunnel is too short, it's not worth skipping
-        if (tunnelPath.size() <= 1) {
-            return null;
-        }
-
-        // Create the end state after the tunnel macro move
-        return createTunnelEndState(state, boxPos, tunnelPath.get(tunnelPath.size() - 1), direction);
     }
 
     /**
-     * Checks if a position is the entrance to a tunnel.
+     * Restores a detector from precomputed tunnel cells.
      *
-     * @param state     The board state
-     * @param boxPos    The position of the box
-     * @param direction The direction of movement
-     * @return true if this is a tunnel entrance, false otherwise
+     * @param verticalTunnel   The cells whose left and right neighbours are
+     *                         walls
+     * @param horizontalTunnel The cells whose upper and lower neighbours are
+     *                         walls
      */
-    private static boolean isTunnelEntrance(BoardState state, Point boxPos, Point direction) {
-        // Check if the box can only move along the tunnel (walls or boxes on both
-        // sides)
-        Point perpDirection1, perpDirection2;
-
-        if (direction.x == 0) { // Moving vertically
-            perpDirection1 = new Point(1, 0);
-            perpDirection2 = new Point(-1, 0);
-        } else { // Moving horizontally
-            perpDirection1 = new Point(0, 1);
-            perpDirection2 = new Point(0, -1);
-        }
-
-        Point side1 = new Point(boxPos.x + perpDirection1.x, boxPos.y + perpDirection1.y);
-        Point side2 = new Point(boxPos.x + perpDirection2.x, boxPos.y + perpDirection2.y);
-
-        boolean blockedSide1 = state.pointHas(side1, BoardState.WALL) ||
-                state.pointHas(side1, BoardState.BOX);
-        boolean blockedSide2 = state.pointHas(side2, BoardState.WALL) ||
-                state.pointHas(side2, BoardState.BOX);
-
-        return blockedSide1 && blockedSide2;
+    TunnelMacroDetector(boolean[] verticalTunnel, boolean[] horizontalTunnel) {
+        this.verticalTunnel = verticalTunnel;
+        this.horizontalTunnel = horizontalTunnel;
     }
 
     /**
-     * Checks if a position is part of a tunnel.
-     *
-     * @param state     The board state
-     * @param pos       The position to check
-     * @param direction The direction of movement
-     * @return true if this position is part of a tunnel, false otherwise
+     * @param cell The cell index
+     * @return True if a box can only be pushed up or down through the cell
      */
-    private static boolean isTunnelPosition(BoardState state, Point pos, Point direction) {
-        // Similar to isTunnelEntrance, but for positions along the tunnel
-        Point perpDirection1, perpDirection2;
-
-        if (direction.x == 0) { // Moving vertically
-            perpDirection1 = new Point(1, 0);
-            perpDirection2 = new Point(-1, 0);
-        } else { // Moving horizontally
-            perpDirection1 = new Point(0, 1);
-            perpDirection2 = new Point(0, -1);
-        }
-
-        Point side1 = new Point(pos.x + perpDirection1.x, pos.y + perpDirection1.y);
-        Point side2 = new Point(pos.x + perpDirection2.x, pos.y + perpDirection2.y);
-
-        boolean blockedSide1 = state.pointHas(side1, BoardState.WALL) ||
-                state.pointHas(side1, BoardState.BOX);
-        boolean blockedSide2 = state.pointHas(side2, BoardState.WALL) ||
-                state.pointHas(side2, BoardState.BOX);
+    boolean isVerticalTunnel(int cell) {
+        return verticalTunnel[cell];
+    }
 
-        return blockedSide1 && blockedSide2;
+    /**
+     * @param cell The cell index
+     * @return True if a box can only be pushed left or right through the cell
+     */
+    boolean isHorizontalTunnel(int cell) {
+        return horizontalTunnel[cell];
     }
 
     /**
-     * Creates the end state after a tunnel macro move.
+     * Detects if a move is the start of a tunnel macro move and returns the end
+     * state.
      *
-     * @param state         The initial board state
-     * @param initialBoxPos The initial box position
-     * @param finalBoxPos   The final box position
-     * @param direction     The direction of movement
-     * @return The end state after the tunnel macro move
+     * @param state     The current board state
+     * @param direction The direction index of the move
+     * @return The end state after the tunnel macro move, or null if not a tunnel
+     *         move
      */
-    private static BoardState createTunnelEndState(BoardState state, Point initialBoxPos,
-            Point finalBoxPos, Point direction) {
-        // First, make the initial move
-        BoardState newState = state.getMove(direction);
+    public BoardState detectTunnelMacro(BoardState state, int direction) {
+        // Check if the move involves pushing a box
+        if (!state.canMove(direction) || !state.isPush(direction)) {
+            return null; // Not pushing a box, so not a tunnel move
+        }
+
+        LevelTopology topology = state.getTopology();
+        boolean[] tunnel = direction == LevelTopology.LEFT || direction == LevelTopology.RIGHT
+                ? horizontalTunnel
+                : verticalTunnel;
+        int boxPos = topology.neighbour(direction, topology.neighbour(direction, state.getPlayerCell()));
 
-        // Then, simulate pushing the box to the end of the tunnel
-        Point currentBoxPos = new Point(initialBoxPos.x + direction.x,
-                initialBoxPos.y + direction.y);
-        Point playerPos = initialBoxPos;
+        // Keep pushing while the box stays inside the tunnel and off goals
+        int length = 1;
+        while (tunnel[boxPos] && !topology.isGoal(boxPos)) {
+            int nextPos = topology.neighbour(direction, boxPos);
 
-        while (!currentBoxPos.equals(finalBoxPos)) {
-            // Move the player to the current box position
-            playerPos = currentBoxPos;
+            // If next position is a wall or a box, we've reached the end of the tunnel
+            if (nextPos == LevelTopology.NONE || state.hasBox(nextPos)) {
+                break;
+            }
 
-            // Move the box one step further
-            Point nextBoxPos = new Point(currentBoxPos.x + direction.x,
-                    currentBoxPos.y + direction.y);
-            currentBoxPos = nextBoxPos;
+            boxPos = nextPos;
+            length++;
+        }
+
+        // If the tunnel is too short, it's not worth skipping
+        if (length <= 1) {
+            return null;
         }
 
-        // Create a new state with the box at the final position and player behind it
-        return newState; // This is a simplification - in a real implementation, we'd need to create a
-                         // new state
+        List<Point> tunnelPath = new ArrayList<>(length);
+        for (int i = 0; i < length; i++)
+            tunnelPath.add(Direction.fromIndex(direction));
+        return state.getMacroMove(tunnelPath);
     }
 }
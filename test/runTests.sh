@@ -20,6 +20,9 @@ echo "A* (Manhattan) with timeout:"
 java -jar SokobanSolver.jar -am test/TestCase3_Complex.txt -t 5
 echo -e "\nA* (Improved Manhattan) with timeout:"
 java -jar SokobanSolver.jar -ai test/TestCase3_Complex.txt -t 5
+echo -e "\nBFS with checkpoints every 2 seconds, then resumed from the checkpoint:"
+java -jar SokobanSolver.jar -b test/TestCase3_Complex.txt -t 5 -checkpoint test/TestCase3.ckpt -checkpoint-every 2
+java -jar SokobanSolver.jar -b test/TestCase3_Complex.txt -t 5 -resume test/TestCase3.ckpt -checkpoint test/TestCase3.ckpt
 
 echo -e "\n\n===== Running Test Case 4 (Already Solved Puzzle) ====="
 echo "BFS:"
@@ -30,3 +33,56 @@ echo "BFS:"
 java -jar SokobanSolver.jar -b test/TestCase5_EdgeCase.txt
 echo -e "\nDFS:"
 java -jar SokobanSolver.jar -d test/TestCase5_EdgeCase.txt
+
+echo -e "\n\n===== Running Test Case 6 (Large Sparse Level) ====="
+echo "BFS with a 256 MB heap:"
+java -Xmx256m -jar SokobanSolver.jar -b test/TestCase6_Large.txt
+echo -e "\nGreedy BFS (Improved Manhattan) with a 256 MB heap:"
+java -Xmx256m -jar SokobanSolver.jar -gi test/TestCase6_Large.txt
+echo -e "\nMonte Carlo tree search for 5 seconds with a 256 MB heap:"
+java -Xmx256m -jar SokobanSolver.jar -mc test/TestCase6_Large.txt -t 5
+echo -e "\nGreedy BFS (Improved Manhattan) with the solution optimized for 10 seconds:"
+java -Xmx256m -jar SokobanSolver.jar -gi test/TestCase6_Large.txt -opt 10
+
+echo -e "\n\n===== Running Test Case 7 (Many Boxes) ====="
+echo "Greedy BFS (Improved Manhattan):"
+java -jar SokobanSolver.jar -gi test/TestCase7_ManyBoxes.txt -t 10
+echo -e "\nGreedy BFS (Improved Manhattan) with the Vector API:"
+java --add-modules jdk.incubator.vector -jar SokobanSolver.jar -gi test/TestCase7_ManyBoxes.txt -t 10
+echo -e "\nA* (Manhattan):"
+java -jar SokobanSolver.jar -am test/TestCase7_ManyBoxes.txt -t 10
+echo -e "\nA* (Manhattan) with the Vector API:"
+java --add-modules jdk.incubator.vector -jar SokobanSolver.jar -am test/TestCase7_ManyBoxes.txt -t 10
+echo -e "\nEnforced hill climbing:"
+java -jar SokobanSolver.jar -hc test/TestCase7_ManyBoxes.txt -t 10
+echo -e "\nA* (Manhattan) with a search trace, then its summary:"
+java -jar SokobanSolver.jar -am test/TestCase7_ManyBoxes.txt -t 10 -trace test/TestCase7.trace
+java -jar SokobanSolver.jar -trace-summary test/TestCase7.trace
+
+echo -e "\n\n===== Running Test Case 8 (Generated Levels) ====="
+echo "Generating 12 levels:"
+java -jar SokobanSolver.jar -generate -size 16x12,30x20 -boxes 2,4 -count 3 -format txt -o test/generated
+echo -e "\nA* (Improved Manhattan) on every generated level:"
+java -jar SokobanSolver.jar -batch -ai test/generated -t 30
+
+echo -e "\n\n===== Running Test Case 9 (Solver Service) ====="
+echo "One solve over HTTP on localhost, then the service status:"
+java -jar SokobanSolver.jar -serve -p 18642 &
+SERVICE_PID=$!
+sleep 2
+curl -s -X POST --data-binary @test/TestCase1_Simple.txt "http://127.0.0.1:18642/solve?options=-ai&id=testcase1"
+echo
+curl -s http://127.0.0.1:18642/status
+echo
+kill $SERVICE_PID
+
+echo -e "\n\n===== Running Test Case 10 (XSB Collection) ====="
+echo "A* (Improved Manhattan) on every level of the collection:"
+java -jar SokobanSolver.jar -batch -ai test/TestCase10_Collection.xsb -t 10
+
+echo -e "\n\n===== Running Test Case 11 (Solution Cache) ====="
+rm -f test/TestCase11.cache
+echo "A* (Improved Manhattan) filling the cache:"
+java -jar SokobanSolver.jar -ai test/TestCase1_Simple.txt -c test/TestCase11.cache
+echo -e "\nThe mirrored level, answered from the cache:"
+java -jar SokobanSolver.jar -ai test/TestCase11_Mirrored.txt -c test/TestCase11.cache